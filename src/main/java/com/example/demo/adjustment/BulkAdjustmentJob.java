@@ -0,0 +1,460 @@
+package com.example.demo.adjustment;
+
+import com.example.demo.api.AdjustmentRunResponse;
+import com.example.demo.event.WalletTransactionCommittedEvent;
+import com.example.demo.exception.ValidationException;
+import com.example.demo.model.AdjustmentRun;
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.AdjustmentRunRepository;
+import com.example.demo.repository.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies a bulk balance adjustment - a percentage of the balance (e.g. interest) or a flat amount (e.g. a monthly
+ * fee) - to every wallet.
+ * <p>
+ * Going through {@code WalletService} a wallet at a time would take hours for a large population (and the double-submit
+ * guard would reject identical fees). Instead, the wallet id space is split into chunks which are adjusted in parallel
+ * on a dedicated fork-join pool, each chunk in one database transaction: a single locking select of the chunk's
+ * wallets, then JDBC batches updating the wallets and inserting their wallet transactions and outbox events.
+ * <p>
+ * Runs are named, and a name is only ever applied once. Progress is checkpointed in the {@code adjustment_run} table
+ * (as for ledger reconciliation), so an interrupted or failed run resumes from its checkpoint, and each wallet records
+ * the last run applied to it, so a chunk which committed beyond the checkpoint is skipped rather than applied twice.
+ */
+@Component
+public class BulkAdjustmentJob {
+    private static final Logger log = LoggerFactory.getLogger(BulkAdjustmentJob.class);
+
+    // Adjusting a wallet takes two ids - an outbox event id from the sequence shared by the other entities, and a wallet
+    // transaction id from a block of its pooled sequence (each value is the top of a block - see WalletTransaction).
+    private static final String NEXT_IDS_SQL = "select next value for hibernate_sequence from system_range(1, ?)";
+
+    private static final String NEXT_TRANSACTION_ID_BLOCKS_SQL =
+            "select next value for " + WalletTransaction.ID_SEQUENCE + " from system_range(1, ?)";
+
+    // Wallets locked until the chunk commits, so concurrent deposits and withdrawals wait rather than overwrite (the
+    // wallet id column is customer_id - see Wallet).
+    private static final String SELECT_WALLETS_SQL = "select customer_id, balance, version from wallet "
+            + "where customer_id between ? and ? and (last_adjustment_run_id is null or last_adjustment_run_id < ?) "
+            + "order by customer_id for update";
+
+    // Transaction count and version go up together - by one, or by nothing if only the run id is recorded.
+    private static final String UPDATE_WALLET_SQL = "update wallet set balance = balance + ?, "
+            + "transaction_count = transaction_count + ?, version = version + ?, last_adjustment_run_id = ? "
+            + "where customer_id = ?";
+
+    private static final String INSERT_TRANSACTION_SQL = "insert into wallet_transaction "
+            + "(id, wallet_id, amount, timestamp, wallet_version, adjustment_run_id) values (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_OUTBOX_EVENT_SQL = "insert into outbox_event "
+            + "(id, type, wallet_id, transaction_id, amount, balance, created_at) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final BigDecimal MAXIMUM_PERCENTAGE = BigDecimal.valueOf(100);
+
+    private final WalletRepository walletRepository;
+    private final AdjustmentRunRepository adjustmentRunRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int parallelism;
+    private final long chunkSize;
+    private final String scheduledName;
+    private final AdjustmentRun.Type scheduledType;
+    private final BigDecimal scheduledValue;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService launcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-adjustment");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BulkAdjustmentJob(WalletRepository walletRepository,
+                             AdjustmentRunRepository adjustmentRunRepository,
+                             JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             ApplicationEventPublisher eventPublisher,
+                             @Value("${hubpay.adjustment.parallelism:2}") int parallelism,
+                             @Value("${hubpay.adjustment.chunk-size:500}") long chunkSize,
+                             @Value("${hubpay.adjustment.scheduled-name:monthly-fee}") String scheduledName,
+                             @Value("${hubpay.adjustment.scheduled-type:FLAT}") AdjustmentRun.Type scheduledType,
+                             @Value("${hubpay.adjustment.scheduled-value:-1.00}") BigDecimal scheduledValue) {
+        this.walletRepository = walletRepository;
+        this.adjustmentRunRepository = adjustmentRunRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.scheduledName = scheduledName;
+        this.scheduledType = scheduledType;
+        this.scheduledValue = scheduledValue;
+    }
+
+    // Named for the month, so a schedule firing more than once in a month (or a restarted instance) is a no-op.
+    @Scheduled(cron = "${hubpay.adjustment.cron:-}")
+    public void runScheduled() {
+        String name = scheduledName + "-" + YearMonth.now();
+
+        try {
+            if (start(name, scheduledType, scheduledValue) == null) {
+                log.info("Scheduled adjustment {} skipped - a run is already in progress", name);
+            }
+        } catch (ValidationException ex) {
+            log.error("Scheduled adjustment {} not started: {}", name, ex.getMessage());
+        }
+    }
+
+    /**
+     * Starts (or resumes) a named adjustment in the background. Requesting a run which has already completed is a
+     * no-op.
+     *
+     * @param name run name - identifies the adjustment (e.g. 'monthly-fee-2026-10').
+     * @param type percentage of the balance or flat amount.
+     * @param value percentage or amount - negative for fees.
+     * @return the run, or {@code null} if a run is already in progress.
+     * @throws ValidationException if the adjustment is invalid, the name has already been used for a different
+     * adjustment or another run has not completed.
+     */
+    public AdjustmentRunResponse start(String name, AdjustmentRun.Type type, BigDecimal value) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+
+        AdjustmentRun run;
+        try {
+            run = prepareRun(name, type, value);
+        } catch (RuntimeException ex) {
+            running.set(false);
+            throw ex;
+        }
+
+        if (run.getStatus() == AdjustmentRun.Status.COMPLETED) {
+            running.set(false);
+            return toResponse(run);
+        }
+
+        launcher.execute(() -> {
+            try {
+                execute(run);
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return toResponse(run);
+    }
+
+    /**
+     * Runs (or resumes) a named adjustment on the calling thread - see {@link #start}.
+     *
+     * @return the finished (completed or failed) run, or empty if a run is already in progress.
+     */
+    public Optional<AdjustmentRunResponse> run(String name, AdjustmentRun.Type type, BigDecimal value) {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+
+        try {
+            AdjustmentRun run = prepareRun(name, type, value);
+
+            return Optional.of(run.getStatus() == AdjustmentRun.Status.COMPLETED ? toResponse(run) : execute(run));
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Optional<AdjustmentRunResponse> getLatestRun() {
+        return adjustmentRunRepository.findFirstByOrderByIdDesc().map(BulkAdjustmentJob::toResponse);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        launcher.shutdownNow();
+    }
+
+    /**
+     * Calculates the adjustment to a wallet balance.
+     *
+     * @return signed amount to add to the balance (possibly zero) - never more than the balance for a fee.
+     */
+    static BigDecimal adjustmentAmount(AdjustmentRun.Type type, BigDecimal value, BigDecimal balance) {
+        BigDecimal amount = type == AdjustmentRun.Type.PERCENTAGE
+                ? balance.multiply(value).movePointLeft(2).setScale(2, RoundingMode.HALF_EVEN)
+                : value;
+
+        // A fee larger than the balance takes what there is - balances never go below zero.
+        return amount.add(balance).signum() < 0 ? balance.negate() : amount;
+    }
+
+    private AdjustmentRun prepareRun(String name, AdjustmentRun.Type type, BigDecimal value) {
+        validate(name, type, value);
+
+        Optional<AdjustmentRun> existing = adjustmentRunRepository.findByName(name);
+
+        if (existing.isPresent()) {
+            AdjustmentRun run = existing.get();
+
+            if (run.getType() != type || run.getValue().compareTo(value) != 0) {
+                throw new ValidationException("Adjustment run '" + name + "' has already been used for "
+                        + run.getType() + " " + run.getValue().toPlainString());
+            }
+
+            if (run.getStatus() == AdjustmentRun.Status.COMPLETED) {
+                return run;
+            }
+
+            run.setStatus(AdjustmentRun.Status.RUNNING);
+            run.setFinishedAt(null);
+            run.setError(null);
+
+            return adjustmentRunRepository.save(run);
+        }
+
+        // Wallets are skipped if their last run id is this run's or later, so runs must complete in id order.
+        Optional<AdjustmentRun> latest = adjustmentRunRepository.findFirstByOrderByIdDesc();
+
+        if (latest.isPresent() && latest.get().getStatus() != AdjustmentRun.Status.COMPLETED) {
+            throw new ValidationException("Adjustment run '" + latest.get().getName()
+                    + "' has not completed - it must be resumed before another run is started");
+        }
+
+        Long maxWalletId = walletRepository.findMaxId();
+
+        return adjustmentRunRepository.save(
+                new AdjustmentRun(name, type, value, maxWalletId == null ? 0 : maxWalletId));
+    }
+
+    private static void validate(String name, AdjustmentRun.Type type, BigDecimal value) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new ValidationException("Adjustment run name is required");
+        }
+
+        if (type == null || value == null || value.signum() == 0) {
+            throw new ValidationException("Adjustment type and a non-zero value are required");
+        }
+
+        if (type == AdjustmentRun.Type.PERCENTAGE && value.abs().compareTo(MAXIMUM_PERCENTAGE) > 0) {
+            throw new ValidationException("Adjustment percentage must be between -100 and 100");
+        }
+
+        if (type == AdjustmentRun.Type.FLAT && value.scale() > 2) {
+            throw new ValidationException("Adjustment amount must have no more than 2 decimal places");
+        }
+    }
+
+    private AdjustmentRunResponse execute(AdjustmentRun run) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        log.info("Adjustment run {} ({} {} {}) starting after wallet {} (up to wallet {})", run.getId(),
+                run.getName(), run.getType(), run.getValue().toPlainString(), run.getCheckpointWalletId(),
+                run.getMaxWalletId());
+
+        try {
+            Progress progress = new Progress(run);
+
+            if (run.getCheckpointWalletId() < run.getMaxWalletId()) {
+                pool.invoke(new ChunkTask(progress, run.getCheckpointWalletId() + 1, run.getMaxWalletId()));
+            }
+
+            run.setStatus(AdjustmentRun.Status.COMPLETED);
+        } catch (RuntimeException ex) {
+            log.error("Adjustment run {} failed - will resume from wallet {}", run.getId(),
+                    run.getCheckpointWalletId() + 1, ex);
+            run.setStatus(AdjustmentRun.Status.FAILED);
+            run.setError(String.valueOf(ex.getMessage()));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        run.setFinishedAt(LocalDateTime.now());
+        run = adjustmentRunRepository.save(run);
+
+        log.info("Adjustment run {} {} - {} wallets adjusted, total {}", run.getId(), run.getStatus(),
+                run.getWalletsAdjusted(), run.getTotalAmount());
+
+        return toResponse(run);
+    }
+
+    private void adjustChunk(Progress progress, long fromId, long toId) {
+        AdjustmentRun run = progress.run;
+
+        ChunkResult result = transactionTemplate.execute(status -> {
+            List<Object[]> wallets = jdbcTemplate.query(SELECT_WALLETS_SQL,
+                    (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getBigDecimal(2), rs.getLong(3)}, fromId, toId,
+                    run.getId());
+
+            if (wallets.isEmpty()) {
+                return new ChunkResult(0, BigDecimal.ZERO);
+            }
+
+            List<Long> transactionIds = nextTransactionIds(wallets.size());
+            List<Long> outboxIds = jdbcTemplate.queryForList(NEXT_IDS_SQL, Long.class, wallets.size());
+            LocalDateTime timestamp = LocalDateTime.now();
+            List<Object[]> walletUpdates = new ArrayList<>(wallets.size());
+            List<Object[]> transactionInserts = new ArrayList<>(wallets.size());
+            List<Object[]> outboxInserts = new ArrayList<>(wallets.size());
+            List<WalletTransactionCommittedEvent> events = new ArrayList<>(wallets.size());
+            BigDecimal total = BigDecimal.ZERO;
+
+            for (int i = 0; i < wallets.size(); i++) {
+                Long walletId = (Long) wallets.get(i)[0];
+                BigDecimal balance = (BigDecimal) wallets.get(i)[1];
+                BigDecimal amount = adjustmentAmount(run.getType(), run.getValue(), balance);
+
+                // Nothing to apply (e.g. interest on an empty wallet) - only the run id is recorded.
+                if (amount.signum() == 0) {
+                    walletUpdates.add(new Object[]{BigDecimal.ZERO, 0, 0, run.getId(), walletId});
+                    continue;
+                }
+
+                Long transactionId = transactionIds.get(i);
+                BigDecimal newBalance = balance.add(amount);
+
+                walletUpdates.add(new Object[]{amount, 1, 1, run.getId(), walletId});
+                // The wallet version after the update below (see WalletTransaction.walletVersion).
+                long walletVersion = (Long) wallets.get(i)[2] + 1;
+
+                transactionInserts.add(new Object[]{transactionId, walletId, amount, timestamp, walletVersion,
+                        run.getId()});
+                outboxInserts.add(new Object[]{outboxIds.get(i), OutboxEvent.Type.ADJUSTMENT.name(), walletId,
+                        transactionId, amount, newBalance, timestamp});
+                events.add(new WalletTransactionCommittedEvent(walletId, transactionId, walletVersion, amount,
+                        newBalance, timestamp, run.getId()));
+                total = total.add(amount);
+            }
+
+            jdbcTemplate.batchUpdate(UPDATE_WALLET_SQL, walletUpdates);
+
+            if (!transactionInserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, transactionInserts);
+                jdbcTemplate.batchUpdate(INSERT_OUTBOX_EVENT_SQL, outboxInserts);
+            }
+
+            // Delivered to @TransactionalEventListener listeners only once (and if) the chunk commits.
+            events.forEach(eventPublisher::publishEvent);
+
+            return new ChunkResult(events.size(), total);
+        });
+
+        progress.complete(fromId, toId, result);
+    }
+
+    // Reserves whole blocks of wallet transaction ids, as Hibernate's pooled optimizer does (the unused rest of the last
+    // block is skipped). The sequence starts at 1, so the first block may be partial.
+    private List<Long> nextTransactionIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+
+        while (ids.size() < count) {
+            int blocks = (count - ids.size() + WalletTransaction.ID_ALLOCATION_SIZE - 1)
+                    / WalletTransaction.ID_ALLOCATION_SIZE;
+
+            for (long top : jdbcTemplate.queryForList(NEXT_TRANSACTION_ID_BLOCKS_SQL, Long.class, blocks)) {
+                for (long id = Math.max(1, top - WalletTransaction.ID_ALLOCATION_SIZE + 1);
+                     id <= top && ids.size() < count; id++) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    private static AdjustmentRunResponse toResponse(AdjustmentRun run) {
+        return new AdjustmentRunResponse(run.getId(), run.getName(), run.getType().name(), run.getValue(),
+                run.getStatus().name(), run.getStartedAt(), run.getFinishedAt(), run.getMaxWalletId(),
+                run.getCheckpointWalletId(), run.getWalletsAdjusted(), run.getTotalAmount(), run.getError());
+    }
+
+    private static final class ChunkResult {
+        final int walletsAdjusted;
+        final BigDecimal total;
+
+        ChunkResult(int walletsAdjusted, BigDecimal total) {
+            this.walletsAdjusted = walletsAdjusted;
+            this.total = total;
+        }
+    }
+
+    // Tracks completed chunks (which finish out of order) and advances the run's checkpoint past every contiguous one.
+    private final class Progress {
+        private final AdjustmentRun run;
+        // Completed chunks beyond the checkpoint - first wallet id to last wallet id.
+        private final TreeMap<Long, Long> completed = new TreeMap<>();
+
+        Progress(AdjustmentRun run) {
+            this.run = run;
+        }
+
+        synchronized void complete(long fromId, long toId, ChunkResult result) {
+            run.setWalletsAdjusted(run.getWalletsAdjusted() + result.walletsAdjusted);
+            run.setTotalAmount(run.getTotalAmount().add(result.total));
+            completed.put(fromId, toId);
+
+            long checkpoint = run.getCheckpointWalletId();
+            Long next;
+            while ((next = completed.remove(checkpoint + 1)) != null) {
+                checkpoint = next;
+            }
+
+            if (checkpoint != run.getCheckpointWalletId()) {
+                run.setCheckpointWalletId(checkpoint);
+                adjustmentRunRepository.save(run);
+            }
+        }
+    }
+
+    // Splits a wallet id range in half (on chunk boundaries) until it is a single chunk.
+    private final class ChunkTask extends RecursiveAction {
+        private final Progress progress;
+        private final long fromId;
+        private final long toId;
+
+        ChunkTask(Progress progress, long fromId, long toId) {
+            this.progress = progress;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            long chunks = (toId - fromId + chunkSize) / chunkSize;
+
+            if (chunks <= 1) {
+                adjustChunk(progress, fromId, toId);
+                return;
+            }
+
+            long splitId = fromId + (chunks / 2) * chunkSize;
+            invokeAll(new ChunkTask(progress, fromId, splitId - 1), new ChunkTask(progress, splitId, toId));
+        }
+    }
+}
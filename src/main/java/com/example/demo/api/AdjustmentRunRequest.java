@@ -0,0 +1,16 @@
+package com.example.demo.api;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Models an API request object for a bulk balance adjustment run - type is 'PERCENTAGE' (value is a percentage of the
+ * balance) or 'FLAT' (value is an amount), with a negative value for fees.
+ */
+@Data
+public class AdjustmentRunRequest {
+    private String name;
+    private String type;
+    private BigDecimal value;
+}
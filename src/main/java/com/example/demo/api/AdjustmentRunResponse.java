@@ -0,0 +1,29 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Models API response entity for bulk balance adjustment progress.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AdjustmentRunResponse {
+    private Long id;
+    private String name;
+    private String type;
+    private BigDecimal value;
+    private String status;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long maxWalletId;
+    private long checkpointWalletId;
+    private long walletsAdjusted;
+    private BigDecimal totalAmount;
+    private String error;
+}
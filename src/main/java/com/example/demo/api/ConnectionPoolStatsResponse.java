@@ -0,0 +1,35 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Models API response entity for a connection pool sample - the pool's state when sampled, connection checkouts over
+ * the sampling interval (time waiting to acquire a connection, and time holding it), and the latencies of wallet API
+ * operations over the same interval.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConnectionPoolStatsResponse {
+    private LocalDateTime sampledAt;
+    private long intervalMillis;
+    private int maximumPoolSize;
+    private int totalConnections;
+    private int activeConnections;
+    private int idleConnections;
+    private int threadsAwaitingConnection;
+    private long acquisitions;
+    private double acquireMeanMillis;
+    private double acquireMaxMillis;
+    private long acquireTimeouts;
+    private double usageMeanMillis;
+    private double usageMaxMillis;
+    private boolean adaptive;
+    private String lastResize;
+    private List<OperationLatencyResponse> operations;
+}
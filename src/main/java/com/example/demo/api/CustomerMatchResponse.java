@@ -0,0 +1,21 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Models API response entity for a customer found by name search, with their wallet (wallet id and balance are null if
+ * the customer has no wallet).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerMatchResponse {
+    private Long customerId;
+    private String name;
+    private Long walletId;
+    private BigDecimal balance;
+}
@@ -0,0 +1,18 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Models API response entity for customer name prefix search results, in name order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerSearchResponse {
+    private String prefix;
+    private List<CustomerMatchResponse> customers;
+}
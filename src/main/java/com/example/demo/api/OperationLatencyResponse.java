@@ -0,0 +1,22 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Models API response entity for the latency of a wallet API operation over a sampling interval - mean and maximum
+ * total latency, and the mean time spent in each phase (in milliseconds, in the order the phases first occurred).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OperationLatencyResponse {
+    private String operation;
+    private long count;
+    private double meanMillis;
+    private double maxMillis;
+    private Map<String, Double> phaseMeanMillis;
+}
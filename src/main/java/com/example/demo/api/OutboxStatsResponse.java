@@ -0,0 +1,23 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Models API response entity for outbox dispatcher metrics. Lag is the age of the oldest event in a batch when it was
+ * delivered.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxStatsResponse {
+    private long pending;
+    private long batches;
+    private long eventsDispatched;
+    private int lastBatchSize;
+    private double averageBatchSize;
+    private long lastLagMillis;
+    private long maxLagMillis;
+    private long failures;
+}
@@ -0,0 +1,22 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Models API response entity for instance readiness, with a breakdown of where startup time went.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReadinessResponse {
+    private String readinessState;
+    private Map<String, Double> startupPhaseMillis;
+    private int warmUpRounds;
+    private long warmUpIterations;
+    private long warmUpCompileMillis;
+    private boolean warmUpSettled;
+}
@@ -0,0 +1,26 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Models API response entity for ledger reconciliation progress. Discrepancies are listed in the run's report file.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReconciliationRunResponse {
+    private Long id;
+    private String status;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long maxWalletId;
+    private long checkpointWalletId;
+    private long walletsChecked;
+    private long discrepancies;
+    private String reportFile;
+    private String error;
+}
@@ -0,0 +1,24 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Models API response entity for a recent slow request - total latency and its breakdown by phase (in milliseconds,
+ * in the order the phases occurred).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SlowRequestResponse {
+    private String method;
+    private String uri;
+    private int status;
+    private LocalDateTime timestamp;
+    private double totalMillis;
+    private Map<String, Double> phaseMillis;
+}
@@ -0,0 +1,19 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Models API response entity for a wallet's balance as of a point in time.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletBalanceAsOfResponse {
+    private LocalDateTime asOf;
+    private BigDecimal balance;
+}
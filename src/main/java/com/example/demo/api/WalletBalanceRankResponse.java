@@ -0,0 +1,18 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Models API response entity for a wallet in the balance leaderboard.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletBalanceRankResponse {
+    private long walletId;
+    private BigDecimal balance;
+}
@@ -0,0 +1,21 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Models API response entity for a bulk balance lookup - balances keyed by wallet id (the ids were supplied by the
+ * client, so unlike {@link WalletResponse} this exposes nothing new), plus any requested ids that do not exist.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletBalancesResponse {
+    private Map<Long, BigDecimal> balances;
+    private List<Long> notFound;
+}
@@ -0,0 +1,23 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Models API response entity for contention statistics of a single wallet. Lock wait is an upper bound - the true
+ * value lies between {@code lockWaitMillis - lockWaitErrorMillis} and {@code lockWaitMillis}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletContentionResponse {
+    private long walletId;
+    private double lockWaitMillis;
+    private double lockWaitErrorMillis;
+    private long mutations;
+    private int maxInFlight;
+    private int inFlight;
+    private long doubleSubmitRejections;
+    private long conflictRejections;
+}
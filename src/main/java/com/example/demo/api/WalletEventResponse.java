@@ -0,0 +1,21 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Models the data of a 'transaction' server-sent event - a committed wallet transaction and the resulting balance.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletEventResponse {
+    private Long transactionId;
+    private BigDecimal amount;
+    private BigDecimal balance;
+    private LocalDateTime timestamp;
+}
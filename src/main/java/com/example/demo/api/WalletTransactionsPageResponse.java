@@ -7,7 +7,8 @@ import lombok.NoArgsConstructor;
 import java.util.List;
 
 /**
- * Models API response entity for a page of wallet transactions.
+ * Models API response entity for a page of wallet transactions. Totals come from the wallet's transaction counter, so
+ * they cost no extra query.
  */
 @Data
 @AllArgsConstructor
@@ -15,5 +16,8 @@ import java.util.List;
 public class WalletTransactionsPageResponse {
     int pageNumber;
     int pageSize;
+    long totalElements;
+    int totalPages;
+    boolean hasNext;
     List<WalletTransactionResponse> transactions;
 }
@@ -0,0 +1,21 @@
+package com.example.demo.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Models API response entity for a wallet in the transaction volume leaderboard. Volume (the total of deposit and
+ * withdrawal amounts, ignoring sign) is estimated - it may over-state the true value by up to {@code volumeError},
+ * and leaves out any part of the window in which the wallet's volume was too small to be tracked.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletVolumeRankResponse {
+    private long walletId;
+    private BigDecimal volume;
+    private BigDecimal volumeError;
+}
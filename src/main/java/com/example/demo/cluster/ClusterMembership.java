@@ -0,0 +1,148 @@
+package com.example.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Cluster membership for multi-instance deployments - which instance owns which wallets.
+ * <p>
+ * Cluster mode is enabled by setting {@code hubpay.cluster.node-id}. Members are listed in a static membership file
+ * ({@code hubpay.cluster.membership-file}) of {@code nodeId=baseUrl} lines, which is reloaded when it changes; wallets
+ * are assigned to members by a {@link ConsistentHashRing}. Until the file exists (or if it is invalid at startup)
+ * this instance owns every wallet. Readers always see a complete, immutable membership - a reload swaps the
+ * reference, and a file that fails to load is logged and ignored (the previous membership stays in force).
+ * <p>
+ * Ownership is a routing decision, not a lock: wallet mutations still lock the wallet row in the database (see
+ * {@code WalletService}), so instances which briefly disagree about an owner (membership files updated at different
+ * times, or requests in flight on the previous owner during a handoff) cannot corrupt a balance - their mutations of
+ * a wallet wait for each other, exactly as concurrent requests on one instance do.
+ */
+@Component
+public class ClusterMembership {
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final String nodeId;
+    private final Path membershipFile;
+    private final int virtualNodes;
+    private volatile Membership current;
+    // Modified time of the file version last loaded, or that failed to load - each version is only tried (and an
+    // invalid one reported) once.
+    private volatile FileTime loadedModifiedTime;
+
+    public ClusterMembership(@Value("${hubpay.cluster.node-id:}") String nodeId,
+                             @Value("${hubpay.cluster.membership-file:}") String membershipFile,
+                             @Value("${hubpay.cluster.virtual-nodes:128}") int virtualNodes) throws IOException {
+        this.nodeId = nodeId.trim().isEmpty() ? null : nodeId.trim();
+        this.membershipFile = this.nodeId == null || membershipFile.isEmpty() ? null : Paths.get(membershipFile);
+        this.virtualNodes = virtualNodes;
+
+        // Fail fast at startup on an invalid membership file (but a missing one just means this node owns everything).
+        this.current = load();
+    }
+
+    public boolean isEnabled() {
+        return nodeId != null;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Gets the base URL of the member owning a wallet, if it is not this instance.
+     *
+     * @param walletId wallet id.
+     * @return base URL (e.g. {@code http://10.0.0.2:8080}), or {@code null} if this instance owns the wallet (always,
+     * if cluster mode is disabled).
+     */
+    public String ownerUrl(long walletId) {
+        Membership membership = current;
+
+        if (membership.ring == null) {
+            return null;
+        }
+
+        String owner = membership.ring.ownerOf(walletId);
+
+        return owner.equals(nodeId) ? null : membership.urls.get(owner);
+    }
+
+    @Scheduled(initialDelayString = "${hubpay.cluster.reload-interval:PT5S}",
+            fixedDelayString = "${hubpay.cluster.reload-interval:PT5S}")
+    public void reloadIfChanged() {
+        FileTime modifiedTime = null;
+
+        try {
+            modifiedTime = membershipFile != null && Files.exists(membershipFile)
+                    ? Files.getLastModifiedTime(membershipFile) : null;
+
+            if (modifiedTime == null ? loadedModifiedTime != null : !modifiedTime.equals(loadedModifiedTime)) {
+                Membership previous = current;
+                current = load();
+                log.info("Reloaded cluster membership from {} - members {} (previously {})", membershipFile,
+                        current.urls.keySet(), previous.urls.keySet());
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // Not tried again until the file changes.
+            if (modifiedTime != null) {
+                loadedModifiedTime = modifiedTime;
+            }
+            log.error("Unable to reload cluster membership from {} - keeping previous membership: {}",
+                    membershipFile, ex.getMessage());
+        }
+    }
+
+    private Membership load() throws IOException {
+        if (membershipFile == null || !Files.exists(membershipFile)) {
+            loadedModifiedTime = null;
+            return new Membership(null, Collections.emptyMap());
+        }
+
+        FileTime modifiedTime = Files.getLastModifiedTime(membershipFile);
+        Properties members = new Properties();
+
+        try (InputStream in = Files.newInputStream(membershipFile)) {
+            members.load(in);
+        }
+
+        if (!members.containsKey(nodeId)) {
+            throw new IllegalArgumentException("Membership file does not list this node (" + nodeId + ")");
+        }
+
+        Map<String, String> urls = new HashMap<>();
+
+        for (String member : members.stringPropertyNames()) {
+            String url = members.getProperty(member).trim();
+            urls.put(member, url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        }
+
+        Membership membership = new Membership(new ConsistentHashRing(urls.keySet(), virtualNodes), urls);
+        loadedModifiedTime = modifiedTime;
+
+        return membership;
+    }
+
+    private static final class Membership {
+        final ConsistentHashRing ring;
+        final Map<String, String> urls;
+
+        Membership(ConsistentHashRing ring, Map<String, String> urls) {
+            this.ring = ring;
+            this.urls = urls;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.demo.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable consistent-hash ring of cluster members. Each member is placed at a number of pseudo-random points
+ * (virtual nodes) derived from its id alone, and a wallet belongs to the member at the first point at or after the
+ * wallet id's hash (wrapping around). Adding or removing a member therefore only moves the wallets in the arcs it
+ * gains or loses - about 1/N of them - and every instance with the same membership computes the same owners.
+ */
+public final class ConsistentHashRing {
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+    private final Set<String> members;
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("Consistent hash ring needs at least one member");
+        }
+
+        this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Collisions (vanishingly rare) resolve by member id order, so every instance agrees.
+                points.merge(hash(member + "#" + i), member, (existing, added) ->
+                        existing.compareTo(added) <= 0 ? existing : added);
+            }
+        }
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Gets the member owning a wallet.
+     *
+     * @param walletId wallet id.
+     * @return member id.
+     */
+    public String ownerOf(long walletId) {
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(walletId));
+
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // FNV-1a, finished with the same mixer as wallet ids (FNV alone spreads similar strings poorly).
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return mix(hash);
+    }
+
+    // SplitMix64 finalizer - sequential wallet ids land far apart on the ring.
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.demo.cluster;
+
+import com.example.demo.api.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Routes single-wallet API requests ({@code /api/wallet/{id}/...}) to the cluster member owning the wallet (see
+ * {@link ClusterMembership}) - a no-op unless cluster mode is enabled.
+ * <p>
+ * Requests for wallets owned by another member are proxied to it, marked with a {@value #FORWARDED_HEADER} header; a
+ * forwarded request is always handled where it lands, so members with different views of the membership cannot forward
+ * a request back and forth. The header carries the forwarding member's id and an HMAC-SHA256 of the request (keyed with
+ * {@code hubpay.cluster.secret}, required once a membership file is configured) - a header which does not verify, e.g.
+ * one sent by a client to bypass routing, is ignored and the request routed as usual. Event streams are redirected
+ * (307) rather than proxied, so that a long-lived subscription does not hold a worker thread on this instance. If no
+ * connection can be made to the owner (e.g. it is down), the request is handled locally - nothing was sent, and the
+ * database remains the arbiter of every balance. A deposit or withdrawal which may have reached the owner is never
+ * re-sent: if the owner fails to answer, the client gets a 504 (outcome unknown), as it would from a load balancer.
+ * <p>
+ * Deposits and withdrawals handled locally are serialized per wallet (striped locks, taken before the database
+ * transaction begins) - with one owner per wallet, concurrent mutations queue here rather than each holding a database
+ * connection while waiting for the wallet's row lock. Every response carries the {@value #NODE_HEADER} of the member
+ * which handled it.
+ */
+@Component
+public class WalletRoutingFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(WalletRoutingFilter.class);
+
+    public static final String FORWARDED_HEADER = "X-Hubpay-Forwarded-By";
+    public static final String NODE_HEADER = "X-Hubpay-Node";
+
+    private static final String WALLET_PATH = "/api/wallet/";
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+    // Hop-by-hop (and recomputed) headers - not copied between the two connections.
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "transfer-encoding", "te", "upgrade", "host", "content-length"));
+
+    private final ClusterMembership membership;
+    private final ObjectMapper objectMapper;
+    private final SecretKeySpec secret;
+    private final ReentrantLock[] walletLocks;
+    private final long lockTimeoutMillis;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public WalletRoutingFilter(ClusterMembership membership, ObjectMapper objectMapper,
+                               @Value("${hubpay.cluster.membership-file:}") String membershipFile,
+                               @Value("${hubpay.cluster.secret:}") String secret,
+                               @Value("${hubpay.cluster.lock-stripes:1024}") int lockStripes,
+                               @Value("${hubpay.cluster.lock-timeout:PT5S}") Duration lockTimeout,
+                               @Value("${hubpay.cluster.connect-timeout:PT1S}") Duration connectTimeout,
+                               @Value("${hubpay.cluster.read-timeout:PT10S}") Duration readTimeout) {
+        this.membership = membership;
+        this.objectMapper = objectMapper;
+        this.secret = secret.isEmpty() ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM);
+        this.walletLocks = new ReentrantLock[lockStripes];
+        this.lockTimeoutMillis = lockTimeout.toMillis();
+        this.connectTimeoutMillis = (int) connectTimeout.toMillis();
+        this.readTimeoutMillis = (int) readTimeout.toMillis();
+
+        for (int i = 0; i < lockStripes; i++) {
+            walletLocks[i] = new ReentrantLock();
+        }
+
+        if (membership.isEnabled() && !membershipFile.isEmpty() && this.secret == null) {
+            throw new IllegalStateException("hubpay.cluster.secret must be set when a membership file is configured");
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !membership.isEnabled() || walletId(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Long walletId = walletId(request);
+        String ownerUrl = isForwarded(request) ? null : membership.ownerUrl(walletId);
+
+        if (ownerUrl != null) {
+            if (request.getRequestURI().endsWith("/events")) {
+                response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+                response.setHeader(HttpHeaders.LOCATION, targetUrl(ownerUrl, request));
+                return;
+            }
+
+            if (forward(ownerUrl, request, response)) {
+                return;
+            }
+        }
+
+        response.setHeader(NODE_HEADER, membership.getNodeId());
+
+        if (!HttpMethod.POST.matches(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ReentrantLock lock = walletLocks[(Long.hashCode(walletId) & 0x7fffffff) % walletLocks.length];
+        boolean locked = false;
+
+        try {
+            // Serialization is an optimization - after the timeout, proceed and queue on the wallet's row lock instead.
+            locked = lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (locked) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Proxies the request to the owner - returns false (nothing sent) if no connection could be made.
+    private boolean forward(String ownerUrl, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(targetUrl(ownerUrl, request)).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod(request.getMethod());
+
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : Collections.list(request.getHeaders(name))) {
+                    connection.addRequestProperty(name, value);
+                }
+            }
+        }
+
+        connection.setRequestProperty(FORWARDED_HEADER, forwardedHeader(request.getMethod(), request.getRequestURI()));
+
+        if (HttpMethod.POST.matches(request.getMethod())) {
+            connection.setDoOutput(true);
+            // Streaming also disables the JDK's silent re-send of a request which failed on a pooled connection - a
+            // deposit is sent at most once.
+            if (request.getContentLengthLong() >= 0) {
+                connection.setFixedLengthStreamingMode(request.getContentLengthLong());
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+        }
+
+        try {
+            connection.connect();
+        } catch (ConnectException | SocketTimeoutException ex) {
+            log.warn("Unable to connect to wallet owner {} - handling {} {} locally", ownerUrl, request.getMethod(),
+                    request.getRequestURI());
+            return false;
+        }
+
+        try {
+            if (connection.getDoOutput()) {
+                try (OutputStream out = connection.getOutputStream()) {
+                    StreamUtils.copy(request.getInputStream(), out);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            response.setStatus(status);
+
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                if (header.getKey() != null && !SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    for (String value : header.getValue()) {
+                        response.addHeader(header.getKey(), value);
+                    }
+                }
+            }
+
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+            if (body != null) {
+                try (InputStream in = body) {
+                    StreamUtils.copy(in, response.getOutputStream());
+                }
+            }
+        } catch (IOException ex) {
+            // A read sent over a stale pooled connection, whose re-send could not connect - the owner is down.
+            if (ex instanceof ConnectException && !connection.getDoOutput() && !response.isCommitted()) {
+                log.warn("Unable to connect to wallet owner {} - handling {} {} locally", ownerUrl,
+                        request.getMethod(), request.getRequestURI());
+                return false;
+            }
+
+            // The owner may or may not have handled the request - never retry it here (a deposit could apply twice).
+            log.warn("Forwarding {} {} to wallet owner {} failed: {}", request.getMethod(), request.getRequestURI(),
+                    ownerUrl, ex.getMessage());
+
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(
+                        HttpStatus.GATEWAY_TIMEOUT.value(), "Wallet owner did not respond - outcome unknown"));
+            }
+        } finally {
+            connection.disconnect();
+        }
+
+        return true;
+    }
+
+    // Header value marking a request forwarded by this member - "nodeId signature".
+    String forwardedHeader(String method, String uri) {
+        return membership.getNodeId() + " " + sign(membership.getNodeId(), method, uri);
+    }
+
+    // Checks for a forwarded header signed by a member (any header is ignored if there is no secret to verify it).
+    private boolean isForwarded(HttpServletRequest request) {
+        String header = request.getHeader(FORWARDED_HEADER);
+        int separator = header == null || secret == null ? -1 : header.indexOf(' ');
+
+        if (separator < 0) {
+            return false;
+        }
+
+        String expected = sign(header.substring(0, separator), request.getMethod(), request.getRequestURI());
+
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                header.substring(separator + 1).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String sign(String nodeId, String method, String uri) {
+        if (secret == null) {
+            return "";
+        }
+
+        try {
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(secret);
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    mac.doFinal((nodeId + "\n" + method + "\n" + uri).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to sign forwarded request", ex);
+        }
+    }
+
+    private static String targetUrl(String ownerUrl, HttpServletRequest request) {
+        String query = request.getQueryString();
+
+        return ownerUrl + request.getRequestURI() + (query == null ? "" : "?" + query);
+    }
+
+    // Wallet id from /api/wallet/{id}[/...] - null for other paths (including bulk lookups) or a non-numeric id.
+    private static Long walletId(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+
+        if (!uri.startsWith(WALLET_PATH)) {
+            return null;
+        }
+
+        int end = uri.indexOf('/', WALLET_PATH.length());
+        String id = uri.substring(WALLET_PATH.length(), end < 0 ? uri.length() : end);
+
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
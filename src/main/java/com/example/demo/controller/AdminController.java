@@ -0,0 +1,173 @@
+package com.example.demo.controller;
+
+import com.example.demo.adjustment.BulkAdjustmentJob;
+import com.example.demo.api.AdjustmentRunRequest;
+import com.example.demo.api.AdjustmentRunResponse;
+import com.example.demo.api.ConnectionPoolStatsResponse;
+import com.example.demo.api.ErrorResponse;
+import com.example.demo.api.OutboxStatsResponse;
+import com.example.demo.api.ReadinessResponse;
+import com.example.demo.api.ReconciliationRunResponse;
+import com.example.demo.api.SlowRequestResponse;
+import com.example.demo.api.WalletBalanceRankResponse;
+import com.example.demo.api.WalletContentionResponse;
+import com.example.demo.api.WalletVolumeRankResponse;
+import com.example.demo.exception.ValidationException;
+import com.example.demo.leaderboard.WalletLeaderboards;
+import com.example.demo.metrics.ConnectionPoolMonitor;
+import com.example.demo.metrics.SlowRequestLog;
+import com.example.demo.metrics.WalletContentionProfiler;
+import com.example.demo.model.AdjustmentRun;
+import com.example.demo.outbox.OutboxDispatcher;
+import com.example.demo.reconciliation.LedgerReconciliationJob;
+import com.example.demo.startup.StartupPhases;
+import com.example.demo.startup.StartupWarmUp;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Operational endpoints. In Production, these would be on a separate management port and/or behind admin auth.
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+    private final SlowRequestLog slowRequestLog;
+    private final WalletContentionProfiler contentionProfiler;
+    private final OutboxDispatcher outboxDispatcher;
+    private final LedgerReconciliationJob reconciliationJob;
+    private final ApplicationAvailability applicationAvailability;
+    private final StartupWarmUp startupWarmUp;
+    private final BulkAdjustmentJob adjustmentJob;
+    private final WalletLeaderboards leaderboards;
+    private final ConnectionPoolMonitor connectionPoolMonitor;
+
+    public AdminController(SlowRequestLog slowRequestLog, WalletContentionProfiler contentionProfiler,
+                           OutboxDispatcher outboxDispatcher, LedgerReconciliationJob reconciliationJob,
+                           ApplicationAvailability applicationAvailability, StartupWarmUp startupWarmUp,
+                           BulkAdjustmentJob adjustmentJob, WalletLeaderboards leaderboards,
+                           ConnectionPoolMonitor connectionPoolMonitor) {
+        this.slowRequestLog = slowRequestLog;
+        this.contentionProfiler = contentionProfiler;
+        this.outboxDispatcher = outboxDispatcher;
+        this.reconciliationJob = reconciliationJob;
+        this.applicationAvailability = applicationAvailability;
+        this.startupWarmUp = startupWarmUp;
+        this.adjustmentJob = adjustmentJob;
+        this.leaderboards = leaderboards;
+        this.connectionPoolMonitor = connectionPoolMonitor;
+    }
+
+    // Load balancer readiness probe - 503 until startup (including warm-up) has finished.
+    @GetMapping("/readiness")
+    public ResponseEntity<ReadinessResponse> readiness() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        ReadinessResponse response = new ReadinessResponse(state.name(), StartupPhases.completedMillis(),
+                startupWarmUp.getRounds(), startupWarmUp.getIterations(), startupWarmUp.getCompileMillis(),
+                startupWarmUp.isSettled());
+
+        return new ResponseEntity<>(response,
+                state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @GetMapping("/slow-requests")
+    public ResponseEntity<List<SlowRequestResponse>> slowRequests() {
+        return new ResponseEntity<>(slowRequestLog.recent(), HttpStatus.OK);
+    }
+
+    @GetMapping("/contention")
+    public ResponseEntity<List<WalletContentionResponse>> contention(@RequestParam(defaultValue = "20") int limit) {
+        return new ResponseEntity<>(contentionProfiler.topWallets(limit), HttpStatus.OK);
+    }
+
+    // Latest sample - 404 until the first sampling interval has passed.
+    @GetMapping("/connection-pool")
+    public ResponseEntity<ConnectionPoolStatsResponse> connectionPool() {
+        ConnectionPoolStatsResponse stats = connectionPoolMonitor.getStats();
+
+        return stats == null ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/leaderboard/balance")
+    public ResponseEntity<List<WalletBalanceRankResponse>> balanceLeaderboard(
+            @RequestParam(defaultValue = "10") int limit) {
+        return new ResponseEntity<>(leaderboards.topBalances(limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/leaderboard/volume")
+    public ResponseEntity<List<WalletVolumeRankResponse>> volumeLeaderboard(
+            @RequestParam(defaultValue = "10") int limit) {
+        return new ResponseEntity<>(leaderboards.topVolumes(limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/outbox")
+    public ResponseEntity<OutboxStatsResponse> outbox() {
+        return new ResponseEntity<>(outboxDispatcher.getStats(), HttpStatus.OK);
+    }
+
+    @GetMapping("/reconciliation")
+    public ResponseEntity<ReconciliationRunResponse> reconciliation() {
+        return reconciliationJob.getLatestRun()
+                .map(run -> new ResponseEntity<>(run, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    // Starts (or resumes) a run in the background - poll GET /reconciliation for progress.
+    @PostMapping("/reconciliation")
+    public ResponseEntity<Void> startReconciliation() {
+        return new ResponseEntity<>(reconciliationJob.start() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT);
+    }
+
+    @GetMapping("/adjustments")
+    public ResponseEntity<AdjustmentRunResponse> adjustments() {
+        return adjustmentJob.getLatestRun()
+                .map(run -> new ResponseEntity<>(run, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    // Starts (or resumes) a named adjustment in the background - poll GET /adjustments for progress. Requesting a run
+    // which has already completed returns it without applying anything.
+    @PostMapping("/adjustments")
+    public ResponseEntity<?> startAdjustment(@RequestBody AdjustmentRunRequest request) {
+        try {
+            AdjustmentRunResponse run = adjustmentJob.start(request.getName(), parseAdjustmentType(request.getType()),
+                    request.getValue());
+
+            if (run == null) {
+                return new ResponseEntity<>(new ErrorResponse(HttpStatus.CONFLICT.value(),
+                        "An adjustment run is already in progress"), HttpStatus.CONFLICT);
+            }
+
+            return new ResponseEntity<>(run,
+                    "COMPLETED".equals(run.getStatus()) ? HttpStatus.OK : HttpStatus.ACCEPTED);
+        } catch (Exception ex) {
+            if (ex instanceof ValidationException) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), ex.getMessage()), HttpStatus.BAD_REQUEST);
+            }
+
+            // Unknown exception - in Production, would probably explicitly log this with full details and/or send
+            // notification (SNS topic?) to trigger an alarm.
+            return new ResponseEntity<>(
+                    new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static AdjustmentRun.Type parseAdjustmentType(String type) {
+        for (AdjustmentRun.Type value : AdjustmentRun.Type.values()) {
+            if (value.name().equalsIgnoreCase(type)) {
+                return value;
+            }
+        }
+
+        throw new ValidationException("Adjustment type must be one of " + Arrays.toString(AdjustmentRun.Type.values()));
+    }
+}
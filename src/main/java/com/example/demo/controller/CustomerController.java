@@ -0,0 +1,66 @@
+package com.example.demo.controller;
+
+import com.example.demo.api.CustomerMatchResponse;
+import com.example.demo.api.CustomerSearchResponse;
+import com.example.demo.api.ErrorResponse;
+import com.example.demo.model.Wallet;
+import com.example.demo.search.CustomerNameIndex;
+import com.example.demo.service.WalletService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/customer")
+public class CustomerController {
+    public static final int MAXIMUM_SEARCH_RESULTS = 100;
+
+    private final CustomerNameIndex customerNameIndex;
+    private final WalletService walletService;
+
+    public CustomerController(CustomerNameIndex customerNameIndex, WalletService walletService) {
+        this.customerNameIndex = customerNameIndex;
+        this.walletService = walletService;
+    }
+
+    // Type-ahead search - names come from the in-memory index, wallets from one bulk lookup of the matches.
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam(value = "prefix", required = false) String prefix,
+                                    @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        try {
+            if (prefix == null || prefix.trim().isEmpty()) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), "A name prefix is required"),
+                        HttpStatus.BAD_REQUEST);
+            }
+
+            if (limit < 1 || limit > MAXIMUM_SEARCH_RESULTS) {
+                return new ResponseEntity<>(new ErrorResponse(HttpStatus.BAD_REQUEST.value(),
+                        "Limit must be between 1 and " + MAXIMUM_SEARCH_RESULTS), HttpStatus.BAD_REQUEST);
+            }
+
+            Map<Long, String> customers = customerNameIndex.search(prefix.trim(), limit);
+            Map<Long, Wallet> wallets = walletService.getWallets(customers.keySet());
+
+            List<CustomerMatchResponse> matches = new ArrayList<>(customers.size());
+            customers.forEach((customerId, name) -> {
+                // Wallet id is the customer id (see Wallet).
+                Wallet wallet = wallets.get(customerId);
+
+                matches.add(new CustomerMatchResponse(customerId, name, wallet == null ? null : wallet.getId(),
+                        wallet == null ? null : wallet.getBalance()));
+            });
+
+            return new ResponseEntity<>(new CustomerSearchResponse(prefix.trim(), matches), HttpStatus.OK);
+        } catch (Exception ex) {
+            // Unknown exception - in Production, would probably explicitly log this with full details and/or send
+            // notification (SNS topic?) to trigger an alarm.
+            return new ResponseEntity<>(
+                    new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -1,29 +1,55 @@
 package com.example.demo.controller;
 
 import com.example.demo.api.*;
+import com.example.demo.event.WalletEventBroadcaster;
 import com.example.demo.exception.ValidationException;
+import com.example.demo.history.BalanceHistory;
 import com.example.demo.model.Wallet;
 import com.example.demo.model.WalletTransaction;
 import com.example.demo.service.WalletService;
+import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/wallet")
 public class WalletController {
     private final WalletService walletService;
+    private final WalletEventBroadcaster walletEventBroadcaster;
+    private final BalanceHistory balanceHistory;
 
-    public WalletController(WalletService walletService) {
+    public WalletController(WalletService walletService, WalletEventBroadcaster walletEventBroadcaster,
+                            BalanceHistory balanceHistory) {
         this.walletService = walletService;
+        this.walletEventBroadcaster = walletEventBroadcaster;
+        this.balanceHistory = balanceHistory;
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> balance(@PathVariable("id") Long id) {
+    public ResponseEntity<?> balance(@PathVariable("id") Long id,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                             String ifNoneMatch) {
         try {
+            // Client's copy is current - answer 304 from the version lookup alone (no entity load or serialization).
+            if (ifNoneMatch != null) {
+                Long version = walletService.getWalletVersion(id);
+
+                if (version != null && etagMatches(ifNoneMatch, etag(version))) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version)).build();
+                }
+            }
+
             Wallet wallet = walletService.getWallet(id);
 
             // As per WalletService contract if 'getWallet' method returns null, it is because no wallet with specified
@@ -33,7 +59,8 @@ public class WalletController {
                         new ErrorResponse(HttpStatus.NOT_FOUND.value(), "Wallet does not exist"), HttpStatus.NOT_FOUND);
             }
 
-            return new ResponseEntity<>(new WalletResponse(wallet.getBalance()), HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag(wallet.getVersion()))
+                    .body(new WalletResponse(wallet.getBalance()));
         } catch (Exception ex) {
             // Unknown exception - in Production, would probably explicitly log this with full details and/or send
             // notification (SNS topic?) to trigger an alarm (on the basis that a truly unknown exception should
@@ -43,16 +70,127 @@ public class WalletController {
         }
     }
 
+    @GetMapping
+    public ResponseEntity<?> balances(@RequestParam("ids") List<Long> ids) {
+        try {
+            if (ids.isEmpty()) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), "At least one wallet id is required"),
+                        HttpStatus.BAD_REQUEST);
+            }
+
+            Map<Long, Wallet> wallets = walletService.getWallets(ids);
+
+            Map<Long, BigDecimal> balances = new LinkedHashMap<>(wallets.size() * 2);
+            wallets.forEach((walletId, wallet) -> balances.put(walletId, wallet.getBalance()));
+
+            List<Long> notFound = ids.stream()
+                    .distinct()
+                    .filter(walletId -> !wallets.containsKey(walletId))
+                    .collect(Collectors.toList());
+
+            return new ResponseEntity<>(new WalletBalancesResponse(balances, notFound), HttpStatus.OK);
+        } catch (Exception ex) {
+            // If exception is a validation exception, too many ids were requested - emit BAD_REQUEST error response.
+            if (ex instanceof ValidationException) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), ex.getMessage()), HttpStatus.BAD_REQUEST);
+            }
+
+            // Unknown exception - in Production, would probably explicitly log this with full details and/or send
+            // notification (SNS topic?) to trigger an alarm (on the basis that a truly unknown exception should
+            // rarely, if ever, happen).
+            return new ResponseEntity<>(
+                    new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Declared as Object so that the return value handler is chosen by runtime type - an SseEmitter for the stream, or
+    // a ResponseEntity for an error response (ResponseEntity<?> would always be serialized as a plain body).
+    @GetMapping("/{id}/events")
+    public Object events(@PathVariable("id") Long id) {
+        try {
+            Wallet wallet = walletService.getWallet(id);
+
+            // As per WalletService contract if 'getWallet' method returns null, it is because no wallet with specified
+            // id was found - emit NOT_FOUND error response.
+            if (wallet == null) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.NOT_FOUND.value(), "Wallet does not exist"), HttpStatus.NOT_FOUND);
+            }
+
+            // The initial balance is read again once subscribed - this one may predate a transaction whose event the
+            // subscription would miss.
+            SseEmitter emitter = walletEventBroadcaster.subscribe(id, () -> walletService.getWallet(id));
+
+            if (emitter == null) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many event subscribers"),
+                        HttpStatus.SERVICE_UNAVAILABLE);
+            }
+
+            return emitter;
+        } catch (Exception ex) {
+            // Unknown exception - in Production, would probably explicitly log this with full details and/or send
+            // notification (SNS topic?) to trigger an alarm (on the basis that a truly unknown exception should
+            // rarely, if ever, happen).
+            return new ResponseEntity<>(
+                    new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/{id}/balance")
+    public ResponseEntity<?> balanceAsOf(@PathVariable("id") Long id,
+                                         @RequestParam("asOf") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                 LocalDateTime asOf) {
+        try {
+            BigDecimal balance = balanceHistory.getBalanceAsOf(id, asOf);
+
+            // As per BalanceHistory contract if 'getBalanceAsOf' method returns null, it is because no wallet with
+            // specified id was found - emit NOT_FOUND error response.
+            if (balance == null) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.NOT_FOUND.value(), "Wallet does not exist"), HttpStatus.NOT_FOUND);
+            }
+
+            return new ResponseEntity<>(new WalletBalanceAsOfResponse(asOf, balance), HttpStatus.OK);
+        } catch (Exception ex) {
+            // If exception is a validation exception, the requested history is no longer retained - emit BAD_REQUEST
+            // error response.
+            if (ex instanceof ValidationException) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), ex.getMessage()), HttpStatus.BAD_REQUEST);
+            }
+
+            // Unknown exception - in Production, would probably explicitly log this with full details and/or send
+            // notification (SNS topic?) to trigger an alarm (on the basis that a truly unknown exception should
+            // rarely, if ever, happen).
+            return new ResponseEntity<>(
+                    new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @GetMapping("/{id}/transactions")
     public ResponseEntity<?> transactions(@PathVariable("id") Long id,
                                           @RequestParam(defaultValue = "0") int pageNumber,
-                                          @RequestParam(defaultValue = "10") int pageSize) {
+                                          @RequestParam(defaultValue = "10") int pageSize,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                  String ifNoneMatch) {
         try {
-            List<WalletTransaction> transactions = walletService.pageWalletTransactions(id, pageNumber, pageSize);
+            // Version read before the page itself - so the ETag can only ever be older than the page it is sent with,
+            // never newer (which could wrongly produce a 304).
+            Long version = walletService.getWalletVersion(id);
+
+            // Client's copy is current - answer 304 from the version lookup alone (no entity load or serialization).
+            if (version != null && ifNoneMatch != null && etagMatches(ifNoneMatch, etag(version))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version)).build();
+            }
+
+            Page<WalletTransaction> transactions = walletService.pageWalletTransactions(id, pageNumber, pageSize);
 
             // As per WalletService contract if 'pageWalletTransactions' method returns null, it is because no wallet
             // with specified id was found - emit NOT_FOUND error response.
-            if (transactions == null) {
+            if (version == null || transactions == null) {
                 return new ResponseEntity<>(
                         new ErrorResponse(HttpStatus.NOT_FOUND.value(), "Wallet does not exist"), HttpStatus.NOT_FOUND);
             }
@@ -62,10 +200,11 @@ public class WalletController {
                     .map(tx -> new WalletTransactionResponse(tx.getId(), tx.getAmount(), tx.getTimestamp()))
                     .collect(Collectors.toList());
 
-            WalletTransactionsPageResponse pageResponse =
-                    new WalletTransactionsPageResponse(pageNumber, pageSize, walletTransactions);
+            WalletTransactionsPageResponse pageResponse = new WalletTransactionsPageResponse(pageNumber, pageSize,
+                    transactions.getTotalElements(), transactions.getTotalPages(), transactions.hasNext(),
+                    walletTransactions);
 
-            return new ResponseEntity<>(pageResponse, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag(version)).body(pageResponse);
         } catch (Exception ex) {
             // Unknown exception - in Production, would probably explicitly log this with full details and/or send
             // notification (SNS topic?) to trigger an alarm (on the basis that a truly unknown exception should
@@ -78,6 +217,14 @@ public class WalletController {
     @PostMapping("/{id}/deposit")
     public ResponseEntity<?> deposit(@PathVariable("id") Long id, @RequestBody WalletFundsRequest request) {
         try {
+            // Reject invalid amounts up front - no transaction is started and no exception is thrown for these.
+            ValidationException rejection = walletService.validateDeposit(request.getAmount());
+
+            if (rejection != null) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), rejection.getMessage()), HttpStatus.BAD_REQUEST);
+            }
+
             Wallet wallet = walletService.addFunds(id, request.getAmount());
 
             // As per WalletService contract if 'addFunds' method returns null, it is because no wallet with specified
@@ -107,6 +254,14 @@ public class WalletController {
     @PostMapping("/{id}/withdraw")
     public ResponseEntity<?> withdraw(@PathVariable("id") Long id, @RequestBody WalletFundsRequest request) {
         try {
+            // Reject invalid amounts up front - no transaction is started and no exception is thrown for these.
+            ValidationException rejection = walletService.validateWithdrawal(request.getAmount());
+
+            if (rejection != null) {
+                return new ResponseEntity<>(
+                        new ErrorResponse(HttpStatus.BAD_REQUEST.value(), rejection.getMessage()), HttpStatus.BAD_REQUEST);
+            }
+
             Wallet wallet = walletService.withdrawFunds(id, request.getAmount());
 
             // As per WalletService contract if 'withdrawFunds' method returns null, it is because no wallet with
@@ -132,4 +287,22 @@ public class WalletController {
                     new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    // Strong ETag for a wallet version - balance and transaction pages are fully determined by it.
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // True if an If-None-Match header lists the ETag (or is '*') - weak comparison, as RFC 7232 requires here.
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+
+            if (trimmed.equals("*") || (trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed).equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,54 @@
+package com.example.demo.event;
+
+/**
+ * Bounded single-subscriber event buffer. When full, the oldest event is overwritten (a slow consumer loses old
+ * events rather than holding up publishers or growing without bound) and the loss is counted so the consumer can be
+ * told about it.
+ */
+final class EventRing<T> {
+    private final Object[] slots;
+    private int head;
+    private int size;
+    private long dropped;
+
+    EventRing(int capacity) {
+        this.slots = new Object[capacity];
+    }
+
+    synchronized void offer(T event) {
+        if (size == slots.length) {
+            // Overwrite oldest.
+            slots[head] = event;
+            head = (head + 1) % slots.length;
+            dropped++;
+        } else {
+            slots[(head + size) % slots.length] = event;
+            size++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized T poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        T event = (T) slots[head];
+        slots[head] = null;
+        head = (head + 1) % slots.length;
+        size--;
+
+        return event;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Number of events dropped since the last call.
+    synchronized long takeDropped() {
+        long result = dropped;
+        dropped = 0;
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.demo.event;
+
+import com.example.demo.api.WalletEventResponse;
+import com.example.demo.api.WalletResponse;
+import com.example.demo.model.Wallet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Fans committed wallet transactions out to server-sent event subscribers.
+ * <p>
+ * The commit path only appends the event to each subscriber's bounded {@link EventRing} - it never blocks on a
+ * subscriber's connection. A small dispatcher pool drains each ring into its {@link SseEmitter}; a subscriber that
+ * cannot keep up loses its oldest events and is sent an 'overflow' event with the number lost (the latest balance is
+ * always in the most recent event, so clients need only refresh their history). Events are queued in wallet version
+ * order - a transaction event which arrives after a later one (concurrent commits) is dropped, like an overflowed one.
+ */
+@Component
+public class WalletEventBroadcaster {
+    // Heartbeat marker queued in subscriber rings (events are only turned into SSE frames when sent, as an
+    // SseEventBuilder cannot be shared between emitters).
+    private static final Object HEARTBEAT = new Object();
+
+    private final ConcurrentHashMap<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService dispatcher;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long emitterTimeoutMillis;
+
+    public WalletEventBroadcaster(@Value("${hubpay.events.buffer-size:64}") int bufferSize,
+                                  @Value("${hubpay.events.max-subscribers:10000}") int maxSubscribers,
+                                  @Value("${hubpay.events.dispatch-threads:4}") int dispatchThreads,
+                                  @Value("${hubpay.events.timeout:PT30M}") Duration timeout) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.emitterTimeoutMillis = timeout.toMillis();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes to a wallet's events. The current balance is sent immediately as a 'balance' event, followed by a
+     * 'transaction' event for every committed transaction.
+     * <p>
+     * The balance is read once the subscriber is registered, so a transaction committed meanwhile is either included in
+     * it or sent after it. A balance read before a transaction whose event has already been queued is not sent - that
+     * event carries the later balance.
+     *
+     * @param walletId wallet id.
+     * @param currentWallet reads the wallet (its balance and version) - called after registering.
+     * @return the emitter to return from the controller, or {@code null} if the subscriber limit has been reached.
+     */
+    public SseEmitter subscribe(Long walletId, Supplier<Wallet> currentWallet) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(walletId, emitter, bufferSize);
+
+        // Add (and remove, below) inside compute so that a wallet's set is never dropped while being added to.
+        subscribers.compute(walletId, (id, walletSubscribers) -> {
+            Set<Subscriber> updated = walletSubscribers == null ? ConcurrentHashMap.newKeySet() : walletSubscribers;
+            updated.add(subscriber);
+            return updated;
+        });
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(ex -> unsubscribe(subscriber));
+
+        Wallet wallet;
+
+        try {
+            wallet = currentWallet.get();
+        } catch (RuntimeException ex) {
+            unsubscribe(subscriber);
+            throw ex;
+        }
+
+        if (wallet != null) {
+            subscriber.enqueueBalance(wallet.getBalance(), wallet.getVersion());
+        }
+
+        return emitter;
+    }
+
+    @TransactionalEventListener
+    public void onTransactionCommitted(WalletTransactionCommittedEvent event) {
+        Set<Subscriber> walletSubscribers = subscribers.get(event.getWalletId());
+
+        if (walletSubscribers == null) {
+            return;
+        }
+
+        for (Subscriber subscriber : walletSubscribers) {
+            subscriber.enqueueTransaction(event);
+        }
+    }
+
+    // Keeps idle connections open through proxies, and detects clients which have gone away.
+    @Scheduled(fixedDelayString = "${hubpay.events.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        for (Set<Subscriber> walletSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : walletSubscribers) {
+                subscriber.enqueue(HEARTBEAT);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+
+        for (Set<Subscriber> walletSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : walletSubscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toSseEvent(Object event) {
+        if (event instanceof WalletTransactionCommittedEvent) {
+            WalletTransactionCommittedEvent committed = (WalletTransactionCommittedEvent) event;
+
+            return SseEmitter.event()
+                    .id(String.valueOf(committed.getTransactionId()))
+                    .name("transaction")
+                    .data(new WalletEventResponse(committed.getTransactionId(), committed.getAmount(),
+                            committed.getBalance(), committed.getTimestamp()), MediaType.APPLICATION_JSON);
+        } else if (event instanceof WalletResponse) {
+            return SseEmitter.event().name("balance").data(event, MediaType.APPLICATION_JSON);
+        }
+
+        return SseEmitter.event().comment("heartbeat");
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.walletId, (id, walletSubscribers) -> {
+            if (walletSubscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return walletSubscribers.isEmpty() ? null : walletSubscribers;
+        });
+    }
+
+    private final class Subscriber {
+        private final Long walletId;
+        private final SseEmitter emitter;
+        private final EventRing<Object> ring;
+        // Set while a drain task is queued or running, so at most one task per subscriber is ever in flight.
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // Highest wallet version of the transaction events queued (guarded by this subscriber's monitor).
+        private long queuedVersion = -1;
+
+        Subscriber(Long walletId, SseEmitter emitter, int bufferSize) {
+            this.walletId = walletId;
+            this.emitter = emitter;
+            this.ring = new EventRing<>(bufferSize);
+        }
+
+        // Commit callbacks run after the wallet's row lock is released, so two commits of a wallet may get here out of
+        // order - the earlier one is dropped, as the event already queued carries a later balance.
+        synchronized void enqueueTransaction(WalletTransactionCommittedEvent event) {
+            if (event.getWalletVersion() <= queuedVersion) {
+                return;
+            }
+
+            queuedVersion = event.getWalletVersion();
+            enqueue(event);
+        }
+
+        // Skipped if a later transaction has already been queued.
+        synchronized void enqueueBalance(BigDecimal balance, long version) {
+            if (version >= queuedVersion) {
+                enqueue(new WalletResponse(balance));
+            }
+        }
+
+        void enqueue(Object event) {
+            ring.offer(event);
+
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    // Shutting down.
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                do {
+                    long dropped = ring.takeDropped();
+
+                    if (dropped > 0) {
+                        emitter.send(SseEmitter.event().name("overflow").data(dropped));
+                    }
+
+                    Object event;
+                    while ((event = ring.poll()) != null) {
+                        emitter.send(toSseEvent(event));
+                    }
+
+                    draining.set(false);
+
+                    // Re-check after releasing - an event may have arrived between the last poll and the release.
+                } while (!ring.isEmpty() && draining.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException ex) {
+                // Client has gone away (or emitter already completed).
+                draining.set(false);
+                unsubscribe(this);
+                emitter.completeWithError(ex);
+            }
+        }
+    }
+}
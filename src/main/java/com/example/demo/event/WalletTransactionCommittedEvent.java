@@ -0,0 +1,68 @@
+package com.example.demo.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Published by {@code WalletService} for every deposit or withdrawal, and by {@code BulkAdjustmentJob} for every
+ * balance adjustment. Listeners should use {@code @TransactionalEventListener} so that they only see transactions
+ * which have actually been committed.
+ */
+public final class WalletTransactionCommittedEvent {
+    private final Long walletId;
+    private final Long transactionId;
+    private final long walletVersion;
+    private final BigDecimal amount;
+    private final BigDecimal balance;
+    private final LocalDateTime timestamp;
+    private final Long adjustmentRunId;
+
+    public WalletTransactionCommittedEvent(Long walletId, Long transactionId, long walletVersion, BigDecimal amount,
+                                           BigDecimal balance, LocalDateTime timestamp) {
+        this(walletId, transactionId, walletVersion, amount, balance, timestamp, null);
+    }
+
+    public WalletTransactionCommittedEvent(Long walletId, Long transactionId, long walletVersion, BigDecimal amount,
+                                           BigDecimal balance, LocalDateTime timestamp, Long adjustmentRunId) {
+        this.walletId = walletId;
+        this.transactionId = transactionId;
+        this.walletVersion = walletVersion;
+        this.amount = amount;
+        this.balance = balance;
+        this.timestamp = timestamp;
+        this.adjustmentRunId = adjustmentRunId;
+    }
+
+    public Long getWalletId() {
+        return walletId;
+    }
+
+    public Long getTransactionId() {
+        return transactionId;
+    }
+
+    // Wallet version after the transaction (see Wallet.version) - listeners run on the committing threads, so events for
+    // one wallet may arrive out of order; a lower version than one already seen is stale.
+    public long getWalletVersion() {
+        return walletVersion;
+    }
+
+    // Signed transaction amount (negative for withdrawals).
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    // Wallet balance after the transaction.
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    // Bulk adjustment run which applied the transaction (null for deposits and withdrawals).
+    public Long getAdjustmentRunId() {
+        return adjustmentRunId;
+    }
+}
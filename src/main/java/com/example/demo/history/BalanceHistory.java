@@ -0,0 +1,176 @@
+package com.example.demo.history;
+
+import com.example.demo.exception.ValidationException;
+import com.example.demo.metrics.RequestTimings;
+import com.example.demo.model.BalanceCheckpoint;
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.BalanceCheckpointRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.storage.ColdTransactionStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Historical wallet balances - the balance as of a point in time is the balance after every transaction with a
+ * timestamp at or before it.
+ * <p>
+ * A {@link BalanceCheckpoint} is recorded with every Nth deposit or withdrawal of a wallet, so a balance as of any
+ * time is the latest checkpoint at or before it (one index probe) plus the wallet's transactions since - typically
+ * fewer than N, read from the hot table and/or cold storage. The cost does not grow with the length of the history.
+ * (Bulk adjustments do not record checkpoints, so they may add a few transactions to the scan.)
+ * <p>
+ * Checkpoint order matches commit order because a wallet's deposits and withdrawals are serialized on its row lock
+ * (see {@code WalletService}): each takes its timestamp once it holds the lock, never earlier than the wallet's latest
+ * transaction, and ties are broken by the wallet version the transaction produced - a per-wallet sequence, unlike
+ * transaction ids (taken from pooled blocks, so only ordered within a block).
+ */
+@Component
+public class BalanceHistory {
+    // Retries if cold storage compaction or retention changes the tiers while a balance is being read.
+    private static final int MAXIMUM_ATTEMPTS = 3;
+
+    // Lower bound for scans without a checkpoint (predates every transaction).
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final WalletRepository walletRepository;
+    private final WalletTransactionRepository walletTransactionRepository;
+    private final BalanceCheckpointRepository balanceCheckpointRepository;
+    private final ColdTransactionStore coldTransactionStore;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final int checkpointInterval;
+
+    public BalanceHistory(WalletRepository walletRepository,
+                          WalletTransactionRepository walletTransactionRepository,
+                          BalanceCheckpointRepository balanceCheckpointRepository,
+                          ColdTransactionStore coldTransactionStore,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${hubpay.balance-history.checkpoint-interval:100}") int checkpointInterval) {
+        this.walletRepository = walletRepository;
+        this.walletTransactionRepository = walletTransactionRepository;
+        this.balanceCheckpointRepository = balanceCheckpointRepository;
+        this.coldTransactionStore = coldTransactionStore;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Records a balance checkpoint if the transaction is the wallet's Nth since the last. Must be called within the
+     * transaction's own database transaction, after the wallet's balance and transaction count have been updated.
+     *
+     * @param wallet the wallet.
+     * @param transaction the (saved) wallet transaction.
+     */
+    public void recordTransaction(Wallet wallet, WalletTransaction transaction) {
+        if (wallet.getTransactionCount() % checkpointInterval == 0) {
+            balanceCheckpointRepository.save(new BalanceCheckpoint(wallet.getId(), transaction.getWalletVersion(),
+                    transaction.getTimestamp(), wallet.getBalance()));
+            RequestTimings.mark("insert-checkpoint");
+        }
+    }
+
+    /**
+     * Gets a wallet's balance as of a point in time.
+     *
+     * @param walletId id of wallet (for demo - same as customer id).
+     * @param asOf point in time.
+     * @return balance, or {@code null} if no wallet exists with specified id.
+     * @throws ValidationException if the wallet's history before asOf has been dropped by cold storage retention.
+     */
+    public BigDecimal getBalanceAsOf(Long walletId, LocalDateTime asOf) {
+        // As in ledger reconciliation - if compaction advanced the watermark (or retention dropped a segment) between
+        // the hot and cold reads, a transaction could be counted twice or not at all, so read again.
+        for (int attempt = 0; attempt < MAXIMUM_ATTEMPTS; attempt++) {
+            long dropSequence = coldTransactionStore.getDropSequence();
+            LocalDateTime watermark = coldTransactionStore.getWatermark();
+
+            HotBalance hot = readOnlyTransactionTemplate.execute(status -> readHot(walletId, asOf, watermark));
+
+            if (hot == null) {
+                return null;
+            }
+
+            BigDecimal balance = hot.balance;
+
+            if (watermark != null && (hot.afterTimestamp == null || hot.afterTimestamp.isBefore(watermark))) {
+                balance = balance.add(coldTransactionStore.sumAmounts(
+                        hot.wallet, hot.afterTimestamp, hot.afterVersion, asOf, watermark));
+                RequestTimings.mark("cold-query");
+            }
+
+            if (Objects.equals(watermark, coldTransactionStore.getWatermark()) && dropSequence % 2 == 0
+                    && dropSequence == coldTransactionStore.getDropSequence()) {
+                return balance;
+            }
+        }
+
+        throw new IllegalStateException("Cold storage kept changing while reading balance of wallet " + walletId);
+    }
+
+    // Checkpoint (or opening balance) plus hot table transactions since - in one read-only database transaction.
+    private HotBalance readHot(Long walletId, LocalDateTime asOf, LocalDateTime watermark) {
+        Optional<Wallet> walletOpt = walletRepository.findById(walletId);
+        RequestTimings.mark("find-wallet");
+
+        if (!walletOpt.isPresent()) {
+            return null;
+        }
+
+        Wallet wallet = walletOpt.get();
+
+        if (wallet.getHistoryStart() != null && asOf.isBefore(wallet.getHistoryStart())) {
+            throw new ValidationException(
+                    "Balance history before " + wallet.getHistoryStart() + " is no longer retained");
+        }
+
+        Optional<BalanceCheckpoint> checkpoint = balanceCheckpointRepository
+                .findFirstByWalletIdAndTimestampLessThanEqualOrderByTimestampDescWalletVersionDesc(walletId, asOf);
+        RequestTimings.mark("checkpoint-query");
+
+        HotBalance hot = checkpoint.isPresent()
+                ? new HotBalance(wallet, checkpoint.get().getBalance(), checkpoint.get().getTimestamp(),
+                        checkpoint.get().getWalletVersion())
+                : new HotBalance(wallet, orZero(wallet.getOpeningBalance()), null, 0);
+
+        LocalDateTime from = hot.afterTimestamp == null ? HISTORY_START : hot.afterTimestamp;
+
+        if (watermark != null && watermark.isAfter(from)) {
+            from = watermark;
+        }
+
+        if (!from.isAfter(asOf)) {
+            hot.balance = hot.balance.add(walletTransactionRepository.sumAmountsAfter(walletId, from, asOf,
+                    hot.afterTimestamp == null ? HISTORY_START : hot.afterTimestamp, hot.afterVersion));
+            RequestTimings.mark("hot-query");
+        }
+
+        return hot;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+    private static final class HotBalance {
+        final Wallet wallet;
+        final LocalDateTime afterTimestamp;
+        final long afterVersion;
+        BigDecimal balance;
+
+        HotBalance(Wallet wallet, BigDecimal balance, LocalDateTime afterTimestamp, long afterVersion) {
+            this.wallet = wallet;
+            this.balance = balance;
+            this.afterTimestamp = afterTimestamp;
+            this.afterVersion = afterVersion;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.leaderboard;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Bounded top-K of wallets by balance (see WalletLeaderboards). Readers iterate the skip list without locking; updates
+// are serialized on this object.
+final class TopBalances {
+    private static final int RECENT_VERSIONS = 10_000;
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparing((Entry entry) -> entry.balance).reversed().thenComparingLong(entry -> entry.walletId);
+
+    private final int capacity;
+    private final ConcurrentSkipListSet<Entry> ranked = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Long, Entry> members = new HashMap<>();
+    // Latest version applied per recently updated wallet, members or not. A wallet's commit callbacks can only overtake
+    // one another while in flight together, so a bounded window of recent wallets is enough to spot a stale one.
+    private final Map<Long, Long> appliedVersions = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > RECENT_VERSIONS;
+        }
+    };
+
+    private boolean loaded;
+    // Balances committed while a snapshot is being read (non-null between beginLoad and load/abortLoad).
+    private Map<Long, Entry> committedDuringLoad;
+    // Upper bound on the balance of every wallet not in ranked (null - every wallet is in ranked).
+    private BigDecimal floor;
+
+    TopBalances(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Called before reading a snapshot - the snapshot is read without holding this lock (committing threads must not
+    // be blocked, while holding their connections, on a query which needs a connection of its own).
+    synchronized void beginLoad() {
+        committedDuringLoad = new HashMap<>();
+    }
+
+    synchronized void abortLoad() {
+        committedDuringLoad = null;
+    }
+
+    /**
+     * Replaces the contents with a wallet table snapshot, then re-applies balances committed while it was read.
+     *
+     * @param top up to capacity (wallet id, balance, version) rows, highest balance first.
+     */
+    synchronized void load(List<Object[]> top) {
+        ranked.clear();
+        members.clear();
+        floor = null;
+
+        for (Object[] row : top) {
+            Entry entry = new Entry((Long) row[0], (BigDecimal) row[1], (Long) row[2]);
+            ranked.add(entry);
+            members.put(entry.walletId, entry);
+        }
+
+        // A full snapshot may have left wallets out - none of them can have a higher balance than the last one.
+        if (top.size() >= capacity) {
+            floor = ranked.last().balance;
+        }
+
+        loaded = true;
+
+        if (committedDuringLoad != null) {
+            for (Entry committed : committedDuringLoad.values()) {
+                Entry inSnapshot = members.get(committed.walletId);
+
+                // The snapshot may have been read after the commit.
+                if (inSnapshot == null || committed.version > inSnapshot.version) {
+                    apply(committed);
+                }
+            }
+            committedDuringLoad = null;
+        }
+    }
+
+    /**
+     * Applies a committed balance (ignored until loaded - the snapshot will include it).
+     *
+     * @param version wallet version of the balance - ignored unless later than the one already applied.
+     */
+    synchronized void update(long walletId, BigDecimal balance, long version) {
+        Long applied = appliedVersions.get(walletId);
+        Entry member = members.get(walletId);
+
+        if ((applied != null && version <= applied) || (member != null && version <= member.version)) {
+            return;
+        }
+
+        appliedVersions.put(walletId, version);
+        Entry entry = new Entry(walletId, balance, version);
+
+        if (committedDuringLoad != null) {
+            committedDuringLoad.put(walletId, entry);
+        }
+
+        if (loaded) {
+            apply(entry);
+        }
+    }
+
+    private void apply(Entry entry) {
+        long walletId = entry.walletId;
+        BigDecimal balance = entry.balance;
+        Entry previous = members.remove(walletId);
+
+        if (previous != null) {
+            ranked.remove(previous);
+        }
+
+        // Below the floor, an unknown wallet may outrank it - it leaves (or stays out of) the leaderboard.
+        if (floor != null && balance.compareTo(floor) < 0) {
+            return;
+        }
+
+        ranked.add(entry);
+        members.put(walletId, entry);
+
+        if (ranked.size() > capacity) {
+            Entry evicted = ranked.pollLast();
+            members.remove(evicted.walletId);
+            floor = floor == null ? evicted.balance : floor.max(evicted.balance);
+        }
+    }
+
+    /**
+     * Checks whether the top wallets are known exactly.
+     *
+     * @param limit number of top wallets wanted.
+     * @return {@code false} if a reload is needed (never loaded, or too many leaders dropped below the floor).
+     */
+    synchronized boolean covers(int limit) {
+        return loaded && (floor == null || ranked.size() >= limit);
+    }
+
+    List<Entry> top(int limit) {
+        List<Entry> top = new ArrayList<>(limit);
+
+        for (Entry entry : ranked) {
+            if (top.size() >= limit) {
+                break;
+            }
+            top.add(entry);
+        }
+
+        return top;
+    }
+
+    static final class Entry {
+        final long walletId;
+        final BigDecimal balance;
+        final long version;
+
+        Entry(long walletId, BigDecimal balance, long version) {
+            this.walletId = walletId;
+            this.balance = balance;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.demo.leaderboard;
+
+import com.example.demo.api.WalletBalanceRankResponse;
+import com.example.demo.api.WalletVolumeRankResponse;
+import com.example.demo.cluster.ClusterMembership;
+import com.example.demo.event.WalletTransactionCommittedEvent;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top wallets by balance and by recent transaction volume, maintained incrementally from committed transactions in
+ * bounded memory - neither leaderboard sorts the wallet or transaction tables to answer a query.
+ * <p>
+ * <b>Balance</b> - a skip list of the top {@code balance-capacity} wallets, plus a <i>floor</i>: an upper bound on the
+ * balance of every wallet outside it. A committed balance at or above the floor enters the list (evicting the lowest
+ * entry once full, which raises the floor); a listed wallet whose balance falls below the floor leaves it, as unlisted
+ * wallets may now outrank it. So the list is always exact, but can shrink - it is (re)loaded from the wallet table
+ * with a single top-N query on first use and whenever it holds fewer wallets than requested. Commits of one wallet may
+ * deliver their balances out of order (each on its own committing thread), so a balance older than the wallet's
+ * version already applied is ignored.
+ * <p>
+ * <b>Volume</b> - a ring of panes (hourly, for the default 24 hour window), each a Space-Saving sketch with a fixed
+ * number of counters. The leaderboard merges the panes in the window, so results are estimates - exact for wallets
+ * tracked throughout, with an error bound for those which displaced another wallet. Volume starts from empty at
+ * startup. Bulk adjustments (fees and interest) change balances but are not counted as volume.
+ * <p>
+ * Wallets only reach the leaderboards through committed transactions - a wallet created with an opening balance is
+ * picked up at the next balance reload, or its next transaction.
+ * <p>
+ * In cluster mode each instance only sees its own commits, so neither in-memory leaderboard would be complete - both
+ * are answered from the database instead: a top-N query on the wallet table (walking its balance index), and a sum
+ * grouped by wallet over every transaction in the volume window (a range scan of the timestamp index, so its cost grows
+ * with the window's transaction count). Each answer, for {@code max-limit} wallets, is reused for {@code
+ * hubpay.leaderboard.cluster-cache-ttl} - so results are exact as of when they were read, and may be that far behind.
+ */
+@Component
+public class WalletLeaderboards {
+    private final WalletRepository walletRepository;
+    private final WalletTransactionRepository walletTransactionRepository;
+    private final boolean clustered;
+    private final TopBalances balances;
+    private final WindowedTopVolumes volumes;
+    private final Duration volumeWindow;
+    private final int balanceCapacity;
+    private final int maxLimit;
+    private final Duration clusterCacheTtl;
+    // Serializes balance reloads and cluster mode queries (the lock is never held by committing threads).
+    private final Object reloadLock = new Object();
+    // Cluster mode - latest database answers (null until first asked for).
+    private volatile CachedRanks<WalletBalanceRankResponse> clusterBalances;
+    private volatile CachedRanks<WalletVolumeRankResponse> clusterVolumes;
+
+    public WalletLeaderboards(WalletRepository walletRepository,
+                              WalletTransactionRepository walletTransactionRepository,
+                              ClusterMembership membership,
+                              @Value("${hubpay.leaderboard.balance-capacity:1000}") int balanceCapacity,
+                              @Value("${hubpay.leaderboard.volume-window:PT24H}") Duration volumeWindow,
+                              @Value("${hubpay.leaderboard.volume-panes:24}") int volumePanes,
+                              @Value("${hubpay.leaderboard.volume-capacity-per-pane:1024}") int volumeCapacityPerPane,
+                              @Value("${hubpay.leaderboard.max-limit:100}") int maxLimit,
+                              @Value("${hubpay.leaderboard.cluster-cache-ttl:PT5S}") Duration clusterCacheTtl) {
+        this.walletRepository = walletRepository;
+        this.walletTransactionRepository = walletTransactionRepository;
+        this.clustered = membership.isEnabled();
+        this.balances = new TopBalances(balanceCapacity);
+        this.volumes = new WindowedTopVolumes(volumeWindow.toMillis(), volumePanes, volumeCapacityPerPane);
+        this.volumeWindow = volumeWindow;
+        this.balanceCapacity = balanceCapacity;
+        this.maxLimit = Math.min(maxLimit, balanceCapacity);
+        this.clusterCacheTtl = clusterCacheTtl;
+    }
+
+    @TransactionalEventListener
+    public void onTransactionCommitted(WalletTransactionCommittedEvent event) {
+        // Synthetic wallets (negative ids) only exist during startup warm-up.
+        if (clustered || event.getWalletId() < 0) {
+            return;
+        }
+
+        balances.update(event.getWalletId(), event.getBalance(), event.getWalletVersion());
+
+        if (event.getAdjustmentRunId() == null) {
+            volumes.add(event.getWalletId(), event.getAmount().abs().movePointRight(2).longValue(),
+                    System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Lists the wallets with the highest balances.
+     *
+     * @param limit maximum number of wallets to return (capped at {@code hubpay.leaderboard.max-limit}).
+     * @return wallets, highest balance first (ties by wallet id).
+     */
+    public List<WalletBalanceRankResponse> topBalances(int limit) {
+        int capped = Math.max(1, Math.min(limit, maxLimit));
+
+        if (clustered) {
+            return clusterTopBalances().top(capped);
+        }
+
+        List<WalletBalanceRankResponse> result = new ArrayList<>();
+
+        if (!balances.covers(capped)) {
+            reloadBalances(capped);
+        }
+
+        for (TopBalances.Entry entry : balances.top(capped)) {
+            result.add(new WalletBalanceRankResponse(entry.walletId, entry.balance));
+        }
+
+        return result;
+    }
+
+    /**
+     * Lists the wallets with the highest transaction volume in the window ending now.
+     *
+     * @param limit maximum number of wallets to return (capped at {@code hubpay.leaderboard.max-limit}).
+     * @return wallets, highest volume first.
+     */
+    public List<WalletVolumeRankResponse> topVolumes(int limit) {
+        int capped = Math.max(1, Math.min(limit, maxLimit));
+
+        if (clustered) {
+            return clusterTopVolumes().top(capped);
+        }
+
+        List<WalletVolumeRankResponse> result = new ArrayList<>();
+
+        for (WindowedTopVolumes.Total total : volumes.top(capped, System.currentTimeMillis())) {
+            result.add(new WalletVolumeRankResponse(total.walletId, BigDecimal.valueOf(total.volume, 2),
+                    BigDecimal.valueOf(total.error, 2)));
+        }
+
+        return result;
+    }
+
+    private CachedRanks<WalletBalanceRankResponse> clusterTopBalances() {
+        CachedRanks<WalletBalanceRankResponse> cached = clusterBalances;
+
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        synchronized (reloadLock) {
+            // Another request may have queried while this one waited.
+            if (clusterBalances != cached) {
+                return clusterBalances;
+            }
+
+            List<WalletBalanceRankResponse> ranks = new ArrayList<>();
+
+            for (Object[] row : walletRepository.findTopBalances(PageRequest.of(0, maxLimit))) {
+                ranks.add(new WalletBalanceRankResponse((Long) row[0], (BigDecimal) row[1]));
+            }
+
+            clusterBalances = new CachedRanks<>(ranks, System.currentTimeMillis() + clusterCacheTtl.toMillis());
+            return clusterBalances;
+        }
+    }
+
+    private CachedRanks<WalletVolumeRankResponse> clusterTopVolumes() {
+        CachedRanks<WalletVolumeRankResponse> cached = clusterVolumes;
+
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        synchronized (reloadLock) {
+            // Another request may have queried while this one waited.
+            if (clusterVolumes != cached) {
+                return clusterVolumes;
+            }
+
+            List<WalletVolumeRankResponse> ranks = new ArrayList<>();
+
+            for (Object[] row : walletTransactionRepository.findTopVolumesSince(
+                    LocalDateTime.now().minus(volumeWindow), PageRequest.of(0, maxLimit))) {
+                ranks.add(new WalletVolumeRankResponse((Long) row[0], (BigDecimal) row[1], BigDecimal.ZERO));
+            }
+
+            clusterVolumes = new CachedRanks<>(ranks, System.currentTimeMillis() + clusterCacheTtl.toMillis());
+            return clusterVolumes;
+        }
+    }
+
+    private void reloadBalances(int limit) {
+        synchronized (reloadLock) {
+            // Another request may have reloaded while this one waited.
+            if (balances.covers(limit)) {
+                return;
+            }
+
+            balances.beginLoad();
+
+            try {
+                balances.load(walletRepository.findTopBalances(PageRequest.of(0, balanceCapacity)));
+            } catch (RuntimeException ex) {
+                balances.abortLoad();
+                throw ex;
+            }
+        }
+    }
+
+    // Cluster mode answer for up to max-limit wallets.
+    private static final class CachedRanks<T> {
+        private final List<T> ranks;
+        private final long expiresAtMillis;
+
+        CachedRanks(List<T> ranks, long expiresAtMillis) {
+            this.ranks = ranks;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+
+        List<T> top(int limit) {
+            return new ArrayList<>(ranks.subList(0, Math.min(limit, ranks.size())));
+        }
+    }
+}
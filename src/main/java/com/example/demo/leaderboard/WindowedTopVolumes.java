@@ -0,0 +1,125 @@
+package com.example.demo.leaderboard;
+
+import java.util.*;
+
+// Heavy hitters by transaction volume over a sliding window (see WalletLeaderboards) - a ring of panes, each a
+// Space-Saving sketch with a fixed number of counters. Volumes are in minor units (cents).
+final class WindowedTopVolumes {
+    private final long paneMillis;
+    private final Pane[] panes;
+
+    WindowedTopVolumes(long windowMillis, int paneCount, int capacityPerPane) {
+        this.paneMillis = Math.max(1, windowMillis / paneCount);
+        this.panes = new Pane[paneCount];
+
+        for (int i = 0; i < paneCount; i++) {
+            panes[i] = new Pane(capacityPerPane);
+        }
+    }
+
+    void add(long walletId, long volume, long nowMillis) {
+        long paneStart = nowMillis - nowMillis % paneMillis;
+
+        panes[(int) ((paneStart / paneMillis) % panes.length)].add(paneStart, walletId, volume);
+    }
+
+    /**
+     * Lists the wallets with the highest volume in the window ending now.
+     *
+     * @param limit maximum number of wallets to return.
+     * @return wallets, highest volume first - each an upper bound with its maximum over-estimate.
+     */
+    List<Total> top(int limit, long nowMillis) {
+        long oldestPaneStart = nowMillis - nowMillis % paneMillis - (panes.length - 1) * paneMillis;
+        Map<Long, Total> totals = new HashMap<>();
+
+        for (Pane pane : panes) {
+            pane.addTo(totals, oldestPaneStart);
+        }
+
+        List<Total> top = new ArrayList<>(totals.values());
+        top.sort(Comparator.comparingLong((Total total) -> total.volume).reversed()
+                .thenComparingLong(total -> total.walletId));
+
+        return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+    }
+
+    static final class Total {
+        final long walletId;
+        long volume;
+        long error;
+
+        Total(long walletId) {
+            this.walletId = walletId;
+        }
+    }
+
+    // Space-Saving counters for one pane - a new wallet replaces the wallet with the lowest volume and inherits its
+    // count as an error bound, so a wallet whose volume exceeds 1/capacity of the pane's total is always present.
+    private static final class Pane {
+        private static final Comparator<Counter> BY_VOLUME =
+                Comparator.comparingLong((Counter counter) -> counter.volume).thenComparingLong(c -> c.walletId);
+
+        private final int capacity;
+        private final Map<Long, Counter> counters;
+        private final TreeSet<Counter> byVolume = new TreeSet<>(BY_VOLUME);
+        private long start = Long.MIN_VALUE;
+
+        Pane(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void add(long paneStart, long walletId, long volume) {
+            if (paneStart != start) {
+                // Pane last used a full window ago (or never) - recycle it.
+                counters.clear();
+                byVolume.clear();
+                start = paneStart;
+            }
+
+            Counter counter = counters.get(walletId);
+
+            if (counter != null) {
+                byVolume.remove(counter);
+            } else if (counters.size() < capacity) {
+                counter = new Counter(walletId, 0);
+                counters.put(walletId, counter);
+            } else {
+                Counter min = byVolume.pollFirst();
+                counters.remove(min.walletId);
+
+                counter = new Counter(walletId, min.volume);
+                counters.put(walletId, counter);
+            }
+
+            counter.volume += volume;
+            byVolume.add(counter);
+        }
+
+        synchronized void addTo(Map<Long, Total> totals, long oldestPaneStart) {
+            if (start < oldestPaneStart) {
+                return;
+            }
+
+            for (Counter counter : counters.values()) {
+                Total total = totals.computeIfAbsent(counter.walletId, Total::new);
+                total.volume += counter.volume;
+                total.error += counter.error;
+            }
+        }
+    }
+
+    private static final class Counter {
+        final long walletId;
+        // Over-estimation bound inherited from the evicted counter.
+        final long error;
+        long volume;
+
+        Counter(long walletId, long error) {
+            this.walletId = walletId;
+            this.error = error;
+            this.volume = error;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.ConnectionPoolStatsResponse;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool telemetry, and optional adaptive pool sizing.
+ * <p>
+ * Every connection checkout is recorded through a Hikari metrics tracker: the time spent waiting to acquire the
+ * connection, and the time it was then held (its usage - the statements of a transaction and the work between them).
+ * Every {@code hubpay.connection-pool.sample-interval}, the pool's state (active, idle and total connections, threads
+ * waiting) is sampled together with the interval's checkouts and wallet API operation latencies (see
+ * {@link OperationLatencies}), so that pool starvation can be read next to the requests it slows down.
+ * <p>
+ * In adaptive mode, each sample also resizes the pool within bounds (see {@link PoolSizer}): it grows while requests
+ * wait for connections, gives growth back if connections became slower to use (the database, not the pool, is then
+ * the bottleneck), and shrinks once connections stay idle. Minimum idle is set to the lower bound, so that Hikari
+ * retires surplus idle connections after its idle timeout.
+ */
+@Component
+public class ConnectionPoolMonitor {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPoolMonitor.class);
+
+    private final HikariDataSource dataSource;
+    private final OperationLatencies operationLatencies;
+    private final PoolSizer sizer;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator acquireMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder usages = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAccumulator usageMaxMillis = new LongAccumulator(Math::max, 0);
+
+    private long lastSampleNanos = System.nanoTime();
+    private volatile ConnectionPoolStatsResponse latest;
+
+    public ConnectionPoolMonitor(DataSource dataSource, OperationLatencies operationLatencies,
+                                 @Value("${hubpay.connection-pool.adaptive.enabled:false}") boolean adaptive,
+                                 @Value("${hubpay.connection-pool.adaptive.min-size:10}") int minSize,
+                                 @Value("${hubpay.connection-pool.adaptive.max-size:50}") int maxSize,
+                                 @Value("${hubpay.connection-pool.adaptive.step:5}") int step,
+                                 @Value("${hubpay.connection-pool.adaptive.target-acquire-wait:PT0.005S}")
+                                         Duration targetAcquireWait,
+                                 @Value("${hubpay.connection-pool.adaptive.usage-degradation:1.5}")
+                                         double usageDegradation,
+                                 @Value("${hubpay.connection-pool.adaptive.shrink-after:12}") int shrinkAfter)
+            throws SQLException {
+        this.dataSource = dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class)
+                : null;
+        this.operationLatencies = operationLatencies;
+
+        if (this.dataSource == null) {
+            log.warn("Connection pool is not Hikari - pool telemetry and adaptive sizing are disabled");
+            this.sizer = null;
+            return;
+        }
+
+        // Hikari accepts a metrics tracker once, even if the pool has already started.
+        this.dataSource.setMetricsTrackerFactory((poolName, poolStats) -> new Tracker());
+
+        if (adaptive) {
+            this.sizer = new PoolSizer(this.dataSource.getMaximumPoolSize(), minSize, maxSize, step,
+                    targetAcquireWait.toNanos() / 1_000_000.0, usageDegradation, shrinkAfter);
+            this.dataSource.getHikariConfigMXBean().setMinimumIdle(minSize);
+            this.dataSource.getHikariConfigMXBean().setMaximumPoolSize(sizer.getSize());
+            log.info("Adaptive connection pool sizing enabled - {} connections (bounds {} to {})", sizer.getSize(),
+                    minSize, maxSize);
+        } else {
+            this.sizer = null;
+        }
+    }
+
+    /**
+     * Gets the latest sample.
+     *
+     * @return pool state and checkouts over the latest sampling interval, or {@code null} if not sampled yet (or the
+     * pool is not Hikari).
+     */
+    public ConnectionPoolStatsResponse getStats() {
+        return latest;
+    }
+
+    @Scheduled(initialDelayString = "${hubpay.connection-pool.sample-interval:PT5S}",
+            fixedDelayString = "${hubpay.connection-pool.sample-interval:PT5S}")
+    public synchronized void sample() {
+        if (dataSource == null) {
+            return;
+        }
+
+        long nowNanos = System.nanoTime();
+        long intervalNanos = nowNanos - lastSampleNanos;
+        lastSampleNanos = nowNanos;
+
+        // Pool is started on first use.
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        int total = pool == null ? 0 : pool.getTotalConnections();
+        int active = pool == null ? 0 : pool.getActiveConnections();
+        int idle = pool == null ? 0 : pool.getIdleConnections();
+        int awaiting = pool == null ? 0 : pool.getThreadsAwaitingConnection();
+
+        long acquired = acquisitions.sumThenReset();
+        double acquireMeanMillis = acquired == 0 ? 0 : acquireNanos.sumThenReset() / 1_000_000.0 / acquired;
+        double acquireMaxMillis = acquireMaxNanos.getThenReset() / 1_000_000.0;
+        long used = usages.sumThenReset();
+        double usageMeanMillis = used == 0 ? 0 : (double) usageMillis.sumThenReset() / used;
+        double usageMax = usageMaxMillis.getThenReset();
+
+        if (sizer != null) {
+            int size = sizer.getSize();
+
+            if (sizer.next(acquireMeanMillis, awaiting, usageMeanMillis, idle) != size) {
+                dataSource.getHikariConfigMXBean().setMaximumPoolSize(sizer.getSize());
+                log.info("Resized connection pool {}", sizer.getLastReason());
+            }
+        }
+
+        latest = new ConnectionPoolStatsResponse(LocalDateTime.now(), intervalNanos / 1_000_000,
+                dataSource.getMaximumPoolSize(), total, active, idle, awaiting, acquired, round(acquireMeanMillis),
+                round(acquireMaxMillis), acquireTimeouts.sumThenReset(), round(usageMeanMillis), usageMax,
+                sizer != null, sizer == null ? null : sizer.getLastReason(),
+                Collections.unmodifiableList(operationLatencies.drain()));
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+
+    // Called by Hikari on every checkout (on the borrowing thread) - counters only, no allocation or locking.
+    private final class Tracker implements IMetricsTracker {
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquisitions.increment();
+            acquireNanos.add(elapsedAcquiredNanos);
+            acquireMaxNanos.accumulate(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usages.increment();
+            usageMillis.add(elapsedBorrowedMillis);
+            usageMaxMillis.accumulate(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            acquireTimeouts.increment();
+        }
+    }
+}
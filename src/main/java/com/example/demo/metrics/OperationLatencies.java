@@ -0,0 +1,89 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.OperationLatencyResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latencies of wallet API operations (e.g. {@code POST /api/wallet/{id}/deposit}), with the mean time spent in each
+ * {@link RequestTimings} phase - aggregated per interval, and drained by {@link ConnectionPoolMonitor} at every sample,
+ * so that they are reported next to the connection pool's state over the same interval. The
+ * {@code transaction-begin} phase of deposits and withdrawals is where connection acquisition shows up.
+ */
+@Component
+public class OperationLatencies {
+    private final Map<String, Accumulator> operations = new ConcurrentHashMap<>();
+
+    // Operations are keyed by the matched route pattern, so their number is bounded by the number of endpoints.
+    void record(String operation, RequestTimings timings) {
+        operations.computeIfAbsent(operation, key -> new Accumulator()).add(timings);
+    }
+
+    /**
+     * Takes the latencies recorded since the previous call.
+     *
+     * @return operations with at least one request in the interval, busiest first.
+     */
+    List<OperationLatencyResponse> drain() {
+        List<OperationLatencyResponse> result = new ArrayList<>();
+
+        for (Map.Entry<String, Accumulator> operation : operations.entrySet()) {
+            OperationLatencyResponse latency = operation.getValue().drain(operation.getKey());
+
+            if (latency != null) {
+                result.add(latency);
+            }
+        }
+
+        result.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+
+        return result;
+    }
+
+    private static double toMillis(double nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static final class Accumulator {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+        synchronized void add(RequestTimings timings) {
+            long nanos = timings.getTotalNanos();
+
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+
+            for (Map.Entry<String, Long> phase : timings.getPhaseNanos().entrySet()) {
+                phaseNanos.merge(phase.getKey(), phase.getValue(), Long::sum);
+            }
+        }
+
+        synchronized OperationLatencyResponse drain(String operation) {
+            if (count == 0) {
+                return null;
+            }
+
+            Map<String, Double> phaseMeanMillis = new LinkedHashMap<>();
+            phaseNanos.forEach((phase, nanos) -> phaseMeanMillis.put(phase, toMillis((double) nanos / count)));
+
+            OperationLatencyResponse latency = new OperationLatencyResponse(operation, count,
+                    toMillis((double) totalNanos / count), toMillis(maxNanos), phaseMeanMillis);
+
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+            phaseNanos.clear();
+
+            return latency;
+        }
+    }
+}
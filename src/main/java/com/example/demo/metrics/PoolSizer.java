@@ -0,0 +1,93 @@
+package com.example.demo.metrics;
+
+// Adaptive connection pool sizing policy (see ConnectionPoolMonitor) - decides the pool size once per sample interval
+// from the interval's connection acquire wait and usage (the time each connection was held). Not thread-safe.
+final class PoolSizer {
+    private final int minSize;
+    private final int maxSize;
+    private final int step;
+    private final double targetAcquireMillis;
+    private final double usageDegradation;
+    private final int calmSamplesToShrink;
+
+    private int size;
+    // Mean usage in the interval before the last growth - NaN unless the pool has just grown.
+    private double usageBeforeGrowth = Double.NaN;
+    private int calmSamples;
+    // Intervals left before the pool may grow again (after growth was given back).
+    private int holdSamples;
+    private String lastReason;
+
+    PoolSizer(int initialSize, int minSize, int maxSize, int step, double targetAcquireMillis,
+              double usageDegradation, int calmSamplesToShrink) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.step = step;
+        this.targetAcquireMillis = targetAcquireMillis;
+        this.usageDegradation = usageDegradation;
+        this.calmSamplesToShrink = calmSamplesToShrink;
+        this.size = Math.max(minSize, Math.min(maxSize, initialSize));
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    // Reason for the last change of size (null if the size has never changed).
+    String getLastReason() {
+        return lastReason;
+    }
+
+    /**
+     * Decides the pool size for the next interval.
+     *
+     * @param acquireMeanMillis mean time to acquire a connection in the interval.
+     * @param threadsAwaiting threads waiting for a connection when sampled.
+     * @param usageMeanMillis mean time connections were held in the interval.
+     * @param idleConnections idle connections when sampled.
+     * @return the new size (unchanged if no resize is needed).
+     */
+    int next(double acquireMeanMillis, int threadsAwaiting, double usageMeanMillis, int idleConnections) {
+        boolean starved = threadsAwaiting > 0 || acquireMeanMillis > targetAcquireMillis;
+        double usageBefore = usageBeforeGrowth;
+
+        usageBeforeGrowth = Double.NaN;
+
+        if (holdSamples > 0) {
+            holdSamples--;
+        }
+
+        if (starved) {
+            calmSamples = 0;
+
+            // Connections became slower to use as the pool grew - the database, not the pool, is the bottleneck, and
+            // more connections only add contention there. Give the growth back, and hold the size for a while.
+            if (!Double.isNaN(usageBefore) && usageMeanMillis > usageBefore * usageDegradation) {
+                resize(Math.max(minSize, size - step), String.format(
+                        "usage rose from %.3fms to %.3fms after growth - database saturated",
+                        usageBefore, usageMeanMillis));
+                holdSamples = calmSamplesToShrink;
+            } else if (size < maxSize && holdSamples == 0) {
+                usageBeforeGrowth = usageMeanMillis;
+                resize(Math.min(maxSize, size + step), String.format(
+                        "acquire wait %.3fms, %d threads waiting", acquireMeanMillis, threadsAwaiting));
+            }
+        } else if (idleConnections < step) {
+            calmSamples = 0;
+        } else if (++calmSamples >= calmSamplesToShrink && size > minSize) {
+            // At least a step's worth of connections was idle at every sample - release them.
+            calmSamples = 0;
+            resize(Math.max(minSize, size - step), String.format(
+                    "%d idle connections for %d intervals", idleConnections, calmSamplesToShrink));
+        }
+
+        return size;
+    }
+
+    private void resize(int newSize, String reason) {
+        if (newSize != size) {
+            lastReason = size + " -> " + newSize + ": " + reason;
+            size = newSize;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times every wallet API request and hands slow ones to the {@link SlowRequestLog}. The time between the response
+ * body write starting (see {@link RequestTimingAdvice}) and the filter chain returning is recorded as serialization.
+ * Requests handled here (not forwarded to another cluster member) are also aggregated by route in
+ * {@link OperationLatencies}.
+ */
+@Component
+public class RequestTimingFilter extends OncePerRequestFilter {
+    private final SlowRequestLog slowRequestLog;
+    private final OperationLatencies operationLatencies;
+
+    public RequestTimingFilter(SlowRequestLog slowRequestLog, OperationLatencies operationLatencies) {
+        this.slowRequestLog = slowRequestLog;
+        this.operationLatencies = operationLatencies;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/wallet");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.begin();
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTimings.mark(RequestTimingAdvice.SERIALIZATION_PHASE);
+            RequestTimings.end();
+
+            slowRequestLog.record(request.getMethod(), request.getRequestURI(), response.getStatus(), timings);
+
+            // Route pattern (e.g. /api/wallet/{id}/deposit) - absent if the request never reached a handler.
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+            if (pattern != null) {
+                operationLatencies.record(request.getMethod() + " " + pattern, timings);
+            }
+        }
+    }
+}
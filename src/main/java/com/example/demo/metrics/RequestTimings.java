@@ -0,0 +1,81 @@
+package com.example.demo.metrics;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-request phase timer, bound to the request thread by {@link RequestTimingFilter}.
+ * <p>
+ * Code on the request path calls {@link #mark(String)} at the end of each phase and the time elapsed since the
+ * previous mark is attributed to that phase (repeated phases accumulate). When no request is being timed (e.g. the
+ * service is called by a background job or a test) marks are no-ops, so callers need not check.
+ */
+public final class RequestTimings {
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos;
+    private long lastMarkNanos;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    private RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+        this.lastMarkNanos = startNanos;
+    }
+
+    /**
+     * Ends the current phase.
+     *
+     * @param phase name of the phase which has just completed.
+     */
+    public static void mark(String phase) {
+        RequestTimings timings = CURRENT.get();
+
+        if (timings != null) {
+            timings.record(phase, System.nanoTime());
+        }
+    }
+
+    /**
+     * Ends a phase when the current transaction completes - used to time flush and commit (or rollback), which happen
+     * in the transaction interceptor after the service method has returned.
+     *
+     * @param phase name of the phase ending at transaction completion.
+     */
+    public static void markOnCompletion(String phase) {
+        if (CURRENT.get() != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mark(phase);
+                }
+            });
+        }
+    }
+
+    static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    long getTotalNanos() {
+        return lastMarkNanos - startNanos;
+    }
+
+    Map<String, Long> getPhaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    private void record(String phase, long nowNanos) {
+        phaseNanos.merge(phase, nowNanos - lastMarkNanos, Long::sum);
+        lastMarkNanos = nowNanos;
+    }
+}
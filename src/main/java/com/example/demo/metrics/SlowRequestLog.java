@@ -0,0 +1,82 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.SlowRequestResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a fixed-size ring buffer of the most recent requests slower than a configurable threshold, and writes a
+ * structured (key=value) log line for each of them.
+ */
+@Component
+public class SlowRequestLog {
+    private static final Logger log = LoggerFactory.getLogger(SlowRequestLog.class);
+
+    private final long thresholdNanos;
+    private final SlowRequestResponse[] buffer;
+    private long recorded;
+
+    public SlowRequestLog(@Value("${hubpay.slow-request.threshold:PT0.25S}") Duration threshold,
+                          @Value("${hubpay.slow-request.buffer-size:256}") int bufferSize) {
+        this.thresholdNanos = threshold.toNanos();
+        this.buffer = new SlowRequestResponse[bufferSize];
+    }
+
+    void record(String method, String uri, int status, RequestTimings timings) {
+        long totalNanos = timings.getTotalNanos();
+
+        // Fast path - nothing is allocated for requests under the threshold.
+        if (totalNanos < thresholdNanos) {
+            return;
+        }
+
+        Map<String, Double> phaseMillis = new LinkedHashMap<>();
+        StringBuilder phases = new StringBuilder();
+
+        for (Map.Entry<String, Long> phase : timings.getPhaseNanos().entrySet()) {
+            double millis = toMillis(phase.getValue());
+
+            phaseMillis.put(phase.getKey(), millis);
+            phases.append(' ').append(phase.getKey()).append("_ms=").append(millis);
+        }
+
+        SlowRequestResponse slowRequest = new SlowRequestResponse(
+                method, uri, status, LocalDateTime.now(), toMillis(totalNanos), phaseMillis);
+
+        log.warn("slow_request method={} uri={} status={} total_ms={}{}",
+                method, uri, status, slowRequest.getTotalMillis(), phases);
+
+        synchronized (this) {
+            buffer[(int) (recorded++ % buffer.length)] = slowRequest;
+        }
+    }
+
+    /**
+     * Lists recent slow requests.
+     *
+     * @return slow requests, most recent first (at most the configured buffer size).
+     */
+    public synchronized List<SlowRequestResponse> recent() {
+        int size = (int) Math.min(recorded, buffer.length);
+        List<SlowRequestResponse> result = new ArrayList<>(size);
+
+        for (long i = recorded - 1; i >= recorded - size; i--) {
+            result.add(buffer[(int) (i % buffer.length)]);
+        }
+
+        return result;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
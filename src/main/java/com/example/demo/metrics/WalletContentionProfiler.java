@@ -0,0 +1,218 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.WalletContentionResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-wallet contention statistics for wallet mutations, kept in bounded memory.
+ * <p>
+ * Only wallets with a mutation currently in flight are tracked exactly. Cumulative statistics are kept in a
+ * Space-Saving heavy-hitters sketch weighted by lock wait time: a fixed number of counters per stripe, where a new
+ * wallet replaces the wallet with the least lock wait and inherits its count as an error bound. Any wallet whose lock
+ * wait exceeds 1/capacity of its stripe's total is guaranteed to be present. Wallets are striped by id so that
+ * updates for different wallets rarely contend on the same monitor (every wallet always maps to the same stripe, so
+ * the overall top-K is simply the top-K of the stripes' entries).
+ * <p>
+ * Lock wait is measured around the locking read of the wallet row (see {@code WalletRepository.findForUpdateById}) -
+ * each mutation waits there for the previous mutations of the wallet to commit.
+ */
+@Component
+public class WalletContentionProfiler {
+    private final ConcurrentHashMap<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Stripe[] stripes;
+
+    public WalletContentionProfiler(@Value("${hubpay.contention.stripes:16}") int stripeCount,
+                                    @Value("${hubpay.contention.capacity-per-stripe:64}") int capacityPerStripe) {
+        this.stripes = new Stripe[stripeCount];
+
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(capacityPerStripe);
+        }
+    }
+
+    /**
+     * Tracks a wallet mutation, timing the read which locks the wallet row. Must be called within the mutation's
+     * transaction - the outcome (lock wait, commit or conflict) is recorded when the transaction completes.
+     *
+     * @param walletId id of the wallet being mutated.
+     * @param lockingRead reads (and locks) the wallet.
+     * @return result of the locking read.
+     */
+    public <T> T track(Long walletId, Supplier<T> lockingRead) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return lockingRead.get();
+        }
+
+        int concurrent = inFlight.computeIfAbsent(walletId, id -> new AtomicInteger()).incrementAndGet();
+        long startNanos = System.nanoTime();
+        // Until the read returns, the transaction is waiting for the lock (a lock timeout rolls it back).
+        long[] lockWaitNanos = {-1};
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean commitAttempted;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitAttempted = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                release(walletId);
+
+                // Lock never acquired, or commit attempted but transaction rolled back - lost to a concurrent update.
+                boolean lockFailed = lockWaitNanos[0] < 0;
+                boolean conflict = lockFailed || (commitAttempted && status != STATUS_COMMITTED);
+
+                recordCompletion(walletId, lockFailed ? System.nanoTime() - startNanos : lockWaitNanos[0],
+                        concurrent, status == STATUS_COMMITTED, conflict);
+            }
+        });
+
+        T result = lockingRead.get();
+        lockWaitNanos[0] = System.nanoTime() - startNanos;
+
+        return result;
+    }
+
+    void recordCompletion(Long walletId, long lockWaitNanos, int concurrent, boolean committed, boolean conflict) {
+        stripe(walletId).record(walletId, lockWaitNanos, concurrent, committed, false, conflict);
+    }
+
+    /**
+     * Records a mutation rejected by the double-submit guard.
+     *
+     * @param walletId id of the wallet.
+     */
+    public void recordDoubleSubmit(Long walletId) {
+        stripe(walletId).record(walletId, 0, 0, false, true, false);
+    }
+
+    /**
+     * Lists the most contended wallets, ordered by lock wait time.
+     *
+     * @param limit maximum number of wallets to return (at least one, as for the leaderboards).
+     * @return contention statistics, most contended first.
+     */
+    public List<WalletContentionResponse> topWallets(int limit) {
+        List<WalletContentionResponse> result = new ArrayList<>();
+
+        for (Stripe stripe : stripes) {
+            stripe.snapshot(result);
+        }
+
+        result.sort(Comparator.comparingDouble(WalletContentionResponse::getLockWaitMillis).reversed());
+
+        int capped = Math.min(Math.max(1, limit), result.size());
+        List<WalletContentionResponse> top = new ArrayList<>(result.subList(0, capped));
+
+        for (WalletContentionResponse wallet : top) {
+            AtomicInteger current = inFlight.get(wallet.getWalletId());
+            wallet.setInFlight(current == null ? 0 : current.get());
+        }
+
+        return top;
+    }
+
+    /**
+     * Discards all cumulative statistics (e.g. those gathered from synthetic warm-up traffic).
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private void release(Long walletId) {
+        // Remove counter once no mutation is in flight so the map only ever holds currently active wallets.
+        inFlight.computeIfPresent(walletId, (id, count) -> count.decrementAndGet() == 0 ? null : count);
+    }
+
+    private Stripe stripe(Long walletId) {
+        return stripes[(Long.hashCode(walletId) & 0x7fffffff) % stripes.length];
+    }
+
+    // Space-Saving counters for one stripe of the wallet id space.
+    private static final class Stripe {
+        private final int capacity;
+        private final Map<Long, Counter> counters;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void clear() {
+            counters.clear();
+        }
+
+        synchronized void record(long walletId, long lockWaitNanos, int concurrent, boolean committed,
+                                 boolean doubleSubmit, boolean conflict) {
+            Counter counter = counters.get(walletId);
+
+            if (counter == null) {
+                long inherited = 0;
+
+                if (counters.size() >= capacity) {
+                    // Linear scan is fine for a few dozen counters and happens only when a new wallet is admitted.
+                    Counter min = Collections.min(counters.values(), Comparator.comparingLong(c -> c.lockWaitNanos));
+                    counters.remove(min.walletId);
+                    inherited = min.lockWaitNanos;
+                }
+
+                counter = new Counter(walletId, inherited);
+                counters.put(walletId, counter);
+            }
+
+            counter.lockWaitNanos += lockWaitNanos;
+            counter.maxInFlight = Math.max(counter.maxInFlight, concurrent);
+
+            if (committed) {
+                counter.mutations++;
+            }
+            if (doubleSubmit) {
+                counter.doubleSubmitRejections++;
+            }
+            if (conflict) {
+                counter.conflictRejections++;
+            }
+        }
+
+        synchronized void snapshot(List<WalletContentionResponse> result) {
+            for (Counter counter : counters.values()) {
+                result.add(new WalletContentionResponse(counter.walletId, toMillis(counter.lockWaitNanos),
+                        toMillis(counter.errorNanos), counter.mutations, counter.maxInFlight, 0,
+                        counter.doubleSubmitRejections, counter.conflictRejections));
+            }
+        }
+
+        private static double toMillis(long nanos) {
+            return Math.round(nanos / 1000.0) / 1000.0;
+        }
+    }
+
+    private static final class Counter {
+        final long walletId;
+        // Over-estimation bound inherited from the evicted counter.
+        final long errorNanos;
+        long lockWaitNanos;
+        long mutations;
+        int maxInFlight;
+        long doubleSubmitRejections;
+        long conflictRejections;
+
+        Counter(long walletId, long errorNanos) {
+            this.walletId = walletId;
+            this.errorNanos = errorNanos;
+            this.lockWaitNanos = errorNanos;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A bulk balance adjustment (e.g. a monthly fee or interest payment) applied to every wallet.
+// - the name identifies the run (e.g. 'monthly-fee-2026-10'), so requesting the same adjustment twice applies it once.
+// - every wallet id up to and including checkpointWalletId has been adjusted, so an interrupted or failed run can be
+//   resumed from the checkpoint. Each wallet also records the last run applied to it (see Wallet), so a chunk that
+//   committed beyond the checkpoint is never applied twice.
+@Entity
+@Table(name = "adjustment_run", uniqueConstraints = @UniqueConstraint(name = "uk_adjustment_run_name",
+        columnNames = "name"))
+public class AdjustmentRun {
+    public enum Type {
+        // Value is a percentage of the wallet balance (e.g. 0.25 for 0.25% interest, -1.5 for a 1.5% fee).
+        PERCENTAGE,
+        // Value is an amount (e.g. -2.50 for a 2.50 fee).
+        FLAT
+    }
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    // Always use BigDecimal for financial values (not Double or Float)
+    @Column(name = "adjustment_value", nullable = false)
+    private BigDecimal value;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    // Highest wallet id when the run started - wallets opened since are not adjusted.
+    private long maxWalletId;
+
+    private long checkpointWalletId;
+
+    private long walletsAdjusted;
+
+    private BigDecimal totalAmount;
+
+    @Column(length = 1000)
+    private String error;
+
+    protected AdjustmentRun() {}
+
+    public AdjustmentRun(String name, Type type, BigDecimal value, long maxWalletId) {
+        this.name = name;
+        this.type = type;
+        this.value = value;
+        this.status = Status.RUNNING;
+        this.startedAt = LocalDateTime.now();
+        this.maxWalletId = maxWalletId;
+        this.totalAmount = BigDecimal.ZERO;
+    }
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    public void setValue(BigDecimal value) {
+        this.value = value;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getMaxWalletId() {
+        return maxWalletId;
+    }
+
+    public void setMaxWalletId(long maxWalletId) {
+        this.maxWalletId = maxWalletId;
+    }
+
+    public long getCheckpointWalletId() {
+        return checkpointWalletId;
+    }
+
+    public void setCheckpointWalletId(long checkpointWalletId) {
+        this.checkpointWalletId = checkpointWalletId;
+    }
+
+    public long getWalletsAdjusted() {
+        return walletsAdjusted;
+    }
+
+    public void setWalletsAdjusted(long walletsAdjusted) {
+        this.walletsAdjusted = walletsAdjusted;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
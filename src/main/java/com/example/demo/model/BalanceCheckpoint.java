@@ -0,0 +1,85 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Running balance of a wallet immediately after one of its transactions - recorded every N transactions, so a balance
+// as of any time is the latest checkpoint at or before it plus a short scan of the transactions since (see
+// BalanceHistory.getBalanceAsOf).
+// - checkpoints before a cold storage retention drop are deleted with it (the dropped history is folded into the
+//   wallet's opening balance, so transactions since such a checkpoint can no longer be summed).
+@Entity
+@Table(name = "balance_checkpoint", indexes = {
+        @Index(name = "ix_balance_checkpoint_wallet_timestamp", columnList = "wallet_id, timestamp")
+})
+public class BalanceCheckpoint {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "wallet_id", nullable = false)
+    private Long walletId;
+
+    // Wallet version after the transaction the checkpoint follows (see WalletTransaction.walletVersion) - transactions
+    // with the same timestamp are ordered by it.
+    @Column(nullable = false)
+    private long walletVersion;
+
+    @Column(nullable = false)
+    private LocalDateTime timestamp;
+
+    // Always use BigDecimal for financial values (not Double or Float)
+    @Column(nullable = false)
+    private BigDecimal balance;
+
+    protected BalanceCheckpoint() {}
+
+    public BalanceCheckpoint(Long walletId, long walletVersion, LocalDateTime timestamp, BigDecimal balance) {
+        this.walletId = walletId;
+        this.walletVersion = walletVersion;
+        this.timestamp = timestamp;
+        this.balance = balance;
+    }
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getWalletId() {
+        return walletId;
+    }
+
+    public void setWalletId(Long walletId) {
+        this.walletId = walletId;
+    }
+
+    public long getWalletVersion() {
+        return walletVersion;
+    }
+
+    public void setWalletVersion(long walletVersion) {
+        this.walletVersion = walletVersion;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Catalogue entry for an immutable cold storage segment file holding archived wallet transactions.
+// - the catalogue lives in the database (rather than being inferred from the segment directory) so that publishing a
+//   segment and deleting the archived rows from the hot table can happen in a single database transaction.
+@Entity
+@Table(name = "cold_segment")
+public class ColdSegment {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String fileName;
+
+    // Every wallet transaction with a timestamp before this value lives in cold storage (in this or an older segment).
+    @Column(nullable = false)
+    private LocalDateTime cutoff;
+
+    private int rowCount;
+
+    // CRC32 of the entire segment file - checked by the periodic integrity check.
+    private long checksum;
+
+    private LocalDateTime createdAt;
+
+    protected ColdSegment() {}
+
+    public ColdSegment(String fileName, LocalDateTime cutoff, int rowCount, long checksum) {
+        this.fileName = fileName;
+        this.cutoff = cutoff;
+        this.rowCount = rowCount;
+        this.checksum = checksum;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public LocalDateTime getCutoff() {
+        return cutoff;
+    }
+
+    public void setCutoff(LocalDateTime cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Models a domain event waiting to be dispatched to downstream systems (transactional outbox).
+// - written in the same database transaction as the wallet transaction it describes, so an event exists if and only
+//   if the mutation committed; OutboxDispatcher delivers and then deletes events asynchronously.
+@Entity
+@Table(name = "outbox_event")
+public class OutboxEvent {
+    public enum Type {
+        DEPOSIT,
+        WITHDRAWAL,
+        ADJUSTMENT
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    private Long walletId;
+
+    private Long transactionId;
+
+    // Always use BigDecimal for financial values (not Double or Float)
+    private BigDecimal amount;
+
+    private BigDecimal balance;
+
+    private LocalDateTime createdAt;
+
+    protected OutboxEvent() {}
+
+    public OutboxEvent(Type type, Long walletId, Long transactionId, BigDecimal amount, BigDecimal balance) {
+        this.type = type;
+        this.walletId = walletId;
+        this.transactionId = transactionId;
+        this.amount = amount;
+        this.balance = balance;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getWalletId() {
+        return walletId;
+    }
+
+    public void setWalletId(Long walletId) {
+        this.walletId = walletId;
+    }
+
+    public Long getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(Long transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
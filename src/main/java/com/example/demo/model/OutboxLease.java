@@ -0,0 +1,48 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Lease on outbox dispatch in cluster mode (see OutboxDispatcher) - a single row, so at most one instance dispatches at
+// a time and events are delivered in order. The row is created by the first instance to dispatch.
+@Entity
+@Table(name = "outbox_lease")
+public class OutboxLease {
+    @Id
+    private Long id;
+
+    // Node id of the dispatching instance.
+    @Column(nullable = false)
+    private String owner;
+
+    // The lease may be taken over by another instance after this time.
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    protected OutboxLease() {}
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Progress of a ledger reconciliation run.
+// - every wallet id up to and including checkpointWalletId has been reconciled, so an interrupted or failed run can be
+//   resumed from the checkpoint rather than starting over.
+@Entity
+@Table(name = "reconciliation_run")
+public class ReconciliationRun {
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    // Highest wallet id when the run started - wallets opened since are picked up by the next run.
+    private long maxWalletId;
+
+    private long checkpointWalletId;
+
+    private long walletsChecked;
+
+    private long discrepancies;
+
+    private String reportFile;
+
+    @Column(length = 1000)
+    private String error;
+
+    protected ReconciliationRun() {}
+
+    public ReconciliationRun(long maxWalletId, String reportFile) {
+        this.status = Status.RUNNING;
+        this.startedAt = LocalDateTime.now();
+        this.maxWalletId = maxWalletId;
+        this.reportFile = reportFile;
+    }
+
+    // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getMaxWalletId() {
+        return maxWalletId;
+    }
+
+    public void setMaxWalletId(long maxWalletId) {
+        this.maxWalletId = maxWalletId;
+    }
+
+    public long getCheckpointWalletId() {
+        return checkpointWalletId;
+    }
+
+    public void setCheckpointWalletId(long checkpointWalletId) {
+        this.checkpointWalletId = checkpointWalletId;
+    }
+
+    public long getWalletsChecked() {
+        return walletsChecked;
+    }
+
+    public void setWalletsChecked(long walletsChecked) {
+        this.walletsChecked = walletsChecked;
+    }
+
+    public long getDiscrepancies() {
+        return discrepancies;
+    }
+
+    public void setDiscrepancies(long discrepancies) {
+        this.discrepancies = discrepancies;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -2,23 +2,50 @@ package com.example.demo.model;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 // Models a customer virtual wallet.
 // - assume one wallet per customer for the purposes of this demo.
+// - the wallet id is its customer's id, mapped as a plain column rather than an association, so loading a wallet never
+//   creates a Customer proxy (the foreign key is added by import.sql).
 @Entity
-@Table(name = "wallet")
+@Table(name = "wallet", indexes = {
+        // Top balances (cluster mode leaderboard, and in-memory leaderboard loads) without sorting the table.
+        @Index(name = "ix_wallet_balance", columnList = "balance")
+})
 public class Wallet {
     @Id
+    @Column(name = "customer_id")
     private Long id;
 
-    @OneToOne(fetch = FetchType.LAZY)
-    @MapsId
-    @JoinColumn(name = "customer_id")
-    private Customer customer;
-
     // Always use BigDecimal for financial values (not Double or Float)
     private BigDecimal balance;
 
+    // Balance the wallet was opened with (before any wallet transactions) - the ledger reconciliation baseline. Cold
+    // storage retention adds the total of dropped transactions, i.e. it becomes the balance brought forward.
+    private BigDecimal openingBalance;
+
+    // Number of wallet transactions (hot and cold, less any dropped by retention) - maintained with the balance, so a
+    // page of transactions can report its total without a count query.
+    @Column(nullable = false)
+    private long transactionCount;
+
+    // Version of the balance and transaction history - incremented with every change to either (transactions, bulk
+    // adjustments and cold storage retention drops) and never decremented, unlike transactionCount - so it identifies
+    // what a client has seen (ETags), and orders the wallet's transactions (see WalletTransaction.walletVersion).
+    @Column(nullable = false)
+    private long version;
+
+    // Validation rules tier (e.g. 'PREMIUM') - null means the default validation rules apply.
+    private String tier;
+
+    // Start of the wallet's retained history - set when cold storage retention drops some of its transactions (the
+    // opening balance is then the balance at this time). Null means the full history is retained.
+    private LocalDateTime historyStart;
+
+    // Last bulk adjustment run applied to the wallet (see AdjustmentRun) - null if none has been.
+    private Long lastAdjustmentRunId;
+
     // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
     public Long getId() {
         return id;
@@ -28,14 +55,6 @@ public class Wallet {
         this.id = id;
     }
 
-    public Customer getCustomer() {
-        return customer;
-    }
-
-    public void setCustomer(Customer customer) {
-        this.customer = customer;
-    }
-
     public BigDecimal getBalance() {
         return balance;
     }
@@ -43,4 +62,52 @@ public class Wallet {
     public void setBalance(BigDecimal balance) {
         this.balance = balance;
     }
+
+    public BigDecimal getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public void setOpeningBalance(BigDecimal openingBalance) {
+        this.openingBalance = openingBalance;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(long transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
+
+    public LocalDateTime getHistoryStart() {
+        return historyStart;
+    }
+
+    public void setHistoryStart(LocalDateTime historyStart) {
+        this.historyStart = historyStart;
+    }
+
+    public Long getLastAdjustmentRunId() {
+        return lastAdjustmentRunId;
+    }
+
+    public void setLastAdjustmentRunId(Long lastAdjustmentRunId) {
+        this.lastAdjustmentRunId = lastAdjustmentRunId;
+    }
 }
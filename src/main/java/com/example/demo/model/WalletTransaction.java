@@ -5,11 +5,23 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 // Models a single transaction in a customer's virtual wallet.
+// - rows older than the configured hot age are moved to cold storage (see ColdStorageCompactionJob), so the indexes
+//   below only ever cover recent history.
+// - ids come from a pooled sequence: each round trip reserves a block of ID_ALLOCATION_SIZE ids (the sequence value is
+//   the top of the block), so inserts need no sequence call per row and can be batched. Ids are unique, but only
+//   ordered within a block - order a wallet's transactions by timestamp, then walletVersion.
 @Entity
-@Table(name = "wallet_transaction")
+@Table(name = "wallet_transaction", indexes = {
+        @Index(name = "ix_wallet_transaction_wallet_timestamp", columnList = "wallet_id, timestamp"),
+        @Index(name = "ix_wallet_transaction_timestamp", columnList = "timestamp")
+})
 public class WalletTransaction {
+    public static final String ID_SEQUENCE = "wallet_transaction_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -21,6 +33,15 @@ public class WalletTransaction {
 
     private LocalDateTime timestamp;
 
+    // The wallet's version once this transaction was applied (see Wallet.version) - a per-wallet sequence in commit
+    // order, as a wallet's mutations are serialized on its row. Breaks ties between transactions of a wallet with the
+    // same timestamp.
+    @Column(nullable = false)
+    private long walletVersion;
+
+    // Bulk adjustment run which created the transaction (see AdjustmentRun) - null for deposits and withdrawals.
+    private Long adjustmentRunId;
+
     protected WalletTransaction() {}
 
     /**
@@ -37,6 +58,22 @@ public class WalletTransaction {
         this.timestamp = LocalDateTime.now();
     }
 
+    /**
+     * Constructor for read-only projections (see WalletTransactionRepository) - the transaction is not managed by the
+     * persistence context, and its wallet is not set.
+     *
+     * @param id the transaction id.
+     * @param amount the transaction amount.
+     * @param timestamp the transaction timestamp.
+     * @param adjustmentRunId the bulk adjustment run which created the transaction, if any.
+     */
+    public WalletTransaction(Long id, BigDecimal amount, LocalDateTime timestamp, Long adjustmentRunId) {
+        this.id = id;
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.adjustmentRunId = adjustmentRunId;
+    }
+
     // Explicit getters/setters - using Lombok with JPA/Hibernate entity classes is not a good idea.
     public Long getId() {
         return id;
@@ -69,4 +106,20 @@ public class WalletTransaction {
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
     }
+
+    public long getWalletVersion() {
+        return walletVersion;
+    }
+
+    public void setWalletVersion(long walletVersion) {
+        this.walletVersion = walletVersion;
+    }
+
+    public Long getAdjustmentRunId() {
+        return adjustmentRunId;
+    }
+
+    public void setAdjustmentRunId(Long adjustmentRunId) {
+        this.adjustmentRunId = adjustmentRunId;
+    }
 }
@@ -0,0 +1,170 @@
+package com.example.demo.outbox;
+
+import com.example.demo.api.OutboxStatsResponse;
+import com.example.demo.cluster.ClusterMembership;
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Background dispatcher which drains the transactional outbox in batches (oldest first) to the configured
+ * {@link OutboxSink}, deleting each batch once the sink has accepted it. Downstream latency and failures therefore
+ * only ever delay delivery - they never touch the synchronous deposit/withdrawal path.
+ * <p>
+ * Scheduled dispatch waits until the instance is ready - startup warm-up commits (and then deletes) events for
+ * synthetic wallets, which must never be sent.
+ * <p>
+ * In cluster mode every instance shares the outbox, so only the holder of the dispatch lease (see {@link
+ * com.example.demo.model.OutboxLease}) dispatches - otherwise each instance would deliver the same batches, out of
+ * order. The lease is renewed before every batch and lapses after {@code hubpay.outbox.lease-duration}, when another
+ * instance may take over; it must be longer than the sink ever takes to accept a batch (and than the clock skew
+ * between instances), or a batch could be delivered by both.
+ */
+@Component
+public class OutboxDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private static final long LEASE_ID = 1;
+    private static final String RENEW_LEASE_SQL = "update outbox_lease set owner = ?, expires_at = ? "
+            + "where id = ? and (owner = ? or expires_at < ?)";
+    private static final String INSERT_LEASE_SQL = "insert into outbox_lease (id, owner, expires_at) values (?, ?, ?)";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxSink sink;
+    private final ApplicationAvailability applicationAvailability;
+    private final JdbcTemplate jdbcTemplate;
+    // Node id in cluster mode (dispatch needs the lease), otherwise null.
+    private final String leaseOwner;
+    private final Duration leaseDuration;
+    private final boolean enabled;
+    private final int batchSize;
+
+    // Metrics (only written by the dispatching thread - dispatch is synchronized).
+    private volatile long batches;
+    private volatile long eventsDispatched;
+    private volatile int lastBatchSize;
+    private volatile long lastLagMillis;
+    private volatile long maxLagMillis;
+    private volatile long failures;
+
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository, OutboxSink sink,
+                            ApplicationAvailability applicationAvailability, JdbcTemplate jdbcTemplate,
+                            ClusterMembership membership,
+                            @Value("${hubpay.outbox.enabled:true}") boolean enabled,
+                            @Value("${hubpay.outbox.batch-size:500}") int batchSize,
+                            @Value("${hubpay.outbox.lease-duration:PT30S}") Duration leaseDuration) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.sink = sink;
+        this.applicationAvailability = applicationAvailability;
+        this.jdbcTemplate = jdbcTemplate;
+        this.leaseOwner = membership.isEnabled() ? membership.getNodeId() : null;
+        this.leaseDuration = leaseDuration;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${hubpay.outbox.poll-interval:PT1S}")
+    public void dispatchScheduled() {
+        if (!enabled || applicationAvailability.getReadinessState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+
+        try {
+            dispatch();
+        } catch (Exception ex) {
+            // Batch stays in the outbox and is retried on the next run.
+            log.warn("Outbox dispatch failed - will retry: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Dispatches batches until the outbox is empty (or a batch fails, or the cluster dispatch lease is held by another
+     * instance).
+     *
+     * @return number of events dispatched.
+     * @throws Exception if the sink fails to accept a batch.
+     */
+    public synchronized int dispatch() throws Exception {
+        int dispatched = 0;
+        List<OutboxEvent> batch;
+
+        do {
+            if (!holdLease()) {
+                break;
+            }
+
+            batch = outboxEventRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            try {
+                sink.publish(batch);
+            } catch (Exception ex) {
+                failures++;
+                throw ex;
+            }
+
+            outboxEventRepository.deleteAllByIdInBatch(
+                    batch.stream().map(OutboxEvent::getId).collect(Collectors.toList()));
+
+            recordBatch(batch);
+            dispatched += batch.size();
+        } while (batch.size() == batchSize);
+
+        return dispatched;
+    }
+
+    // Takes or renews the dispatch lease (always held outside cluster mode).
+    private boolean holdLease() {
+        if (leaseOwner == null) {
+            return true;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(leaseDuration);
+
+        if (jdbcTemplate.update(RENEW_LEASE_SQL, leaseOwner, expiresAt, LEASE_ID, leaseOwner, now) > 0) {
+            return true;
+        }
+
+        try {
+            // First dispatch on this database - the lease row does not exist yet (unless another instance has it).
+            return jdbcTemplate.update(INSERT_LEASE_SQL, LEASE_ID, leaseOwner, expiresAt) > 0;
+        } catch (DataIntegrityViolationException ex) {
+            return false;
+        }
+    }
+
+    public OutboxStatsResponse getStats() {
+        long batchCount = batches;
+
+        return new OutboxStatsResponse(outboxEventRepository.count(), batchCount, eventsDispatched, lastBatchSize,
+                batchCount == 0 ? 0 : (double) eventsDispatched / batchCount, lastLagMillis, maxLagMillis, failures);
+    }
+
+    private void recordBatch(List<OutboxEvent> batch) {
+        long lagMillis = Duration.between(batch.get(0).getCreatedAt(), LocalDateTime.now()).toMillis();
+
+        batches++;
+        eventsDispatched += batch.size();
+        lastBatchSize = batch.size();
+        lastLagMillis = lagMillis;
+        maxLagMillis = Math.max(maxLagMillis, lagMillis);
+    }
+}
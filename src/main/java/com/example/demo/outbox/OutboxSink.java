@@ -0,0 +1,20 @@
+package com.example.demo.outbox;
+
+import com.example.demo.model.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Destination for outbox events. Delivery is at-least-once: a batch is re-sent if the dispatcher fails before
+ * deleting it, so consumers should de-duplicate on event id.
+ */
+public interface OutboxSink {
+    /**
+     * Delivers a batch of events. Must not return until the batch is durably accepted - the events are deleted from
+     * the outbox as soon as this method returns.
+     *
+     * @param events events in commit order.
+     * @throws Exception if the batch could not be delivered (it will be retried).
+     */
+    void publish(List<OutboxEvent> events) throws Exception;
+}
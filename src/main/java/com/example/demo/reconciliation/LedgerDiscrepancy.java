@@ -0,0 +1,25 @@
+package com.example.demo.reconciliation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A wallet whose balance does not equal its opening balance plus the total of its wallet transactions (hot and cold).
+ * Written to the reconciliation report as one JSON line per discrepancy.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerDiscrepancy {
+    private Long walletId;
+    private BigDecimal balance;
+    private BigDecimal openingBalance;
+    private BigDecimal transactionTotal;
+    private BigDecimal expectedBalance;
+    private BigDecimal difference;
+    private LocalDateTime detectedAt;
+}
@@ -0,0 +1,379 @@
+package com.example.demo.reconciliation;
+
+import com.example.demo.api.ReconciliationRunResponse;
+import com.example.demo.model.ReconciliationRun;
+import com.example.demo.repository.ReconciliationRunRepository;
+import com.example.demo.repository.WalletLedgerTotals;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.storage.ColdTransactionStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifies, for every wallet, that its balance equals its opening balance plus the total of its wallet transactions
+ * (hot table and cold storage).
+ * <p>
+ * The wallet id space is split into fixed-size chunks which are reconciled in parallel on a dedicated fork-join pool,
+ * each chunk in a short read-only transaction. Discrepancies are streamed to a JSON-lines report file as they are
+ * found. Progress is checkpointed in the {@code reconciliation_run} table as the highest wallet id below which every
+ * chunk is complete, so an interrupted or failed run resumes from its checkpoint. Chunks are rate limited
+ * ({@code hubpay.reconciliation.max-chunks-per-second}) and parallelism is kept small, so a run over production-sized
+ * data holds only a few pool connections and leaves the rest for live traffic.
+ */
+@Component
+public class LedgerReconciliationJob {
+    private static final Logger log = LoggerFactory.getLogger(LedgerReconciliationJob.class);
+
+    // Attempts to read a chunk while cold storage compaction moves its watermark (or retention drops a segment).
+    private static final int MAXIMUM_CHUNK_ATTEMPTS = 3;
+
+    private final WalletRepository walletRepository;
+    private final ReconciliationRunRepository reconciliationRunRepository;
+    private final ColdTransactionStore coldTransactionStore;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+    private final long chunkSize;
+    private final long minimumChunkIntervalNanos;
+    private final Path reportDirectory;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService launcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ledger-reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Throttle - earliest time the next chunk may start (shared by all workers).
+    private final Object throttleLock = new Object();
+    private long nextChunkNanos;
+
+    public LedgerReconciliationJob(WalletRepository walletRepository,
+                                   ReconciliationRunRepository reconciliationRunRepository,
+                                   ColdTransactionStore coldTransactionStore,
+                                   PlatformTransactionManager transactionManager,
+                                   ObjectMapper objectMapper,
+                                   @Value("${hubpay.reconciliation.parallelism:2}") int parallelism,
+                                   @Value("${hubpay.reconciliation.chunk-size:1000}") long chunkSize,
+                                   @Value("${hubpay.reconciliation.max-chunks-per-second:20}") int maxChunksPerSecond,
+                                   @Value("${hubpay.reconciliation.report-directory:./data/reconciliation}")
+                                           String reportDirectory) {
+        this.walletRepository = walletRepository;
+        this.reconciliationRunRepository = reconciliationRunRepository;
+        this.coldTransactionStore = coldTransactionStore;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.minimumChunkIntervalNanos = maxChunksPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxChunksPerSecond : 0;
+        this.reportDirectory = Paths.get(reportDirectory);
+    }
+
+    // Runs on the job's own thread so a long reconciliation never holds up other scheduled tasks.
+    @Scheduled(cron = "${hubpay.reconciliation.cron:-}")
+    public void runScheduled() {
+        if (!start()) {
+            log.info("Scheduled ledger reconciliation skipped - a run is already in progress");
+        }
+    }
+
+    /**
+     * Starts (or resumes) a reconciliation run in the background.
+     *
+     * @return false if a run is already in progress.
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        launcher.execute(() -> {
+            try {
+                execute();
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Runs (or resumes) a reconciliation on the calling thread. An unfinished previous run is resumed from its
+     * checkpoint, otherwise a new run covering every current wallet is started.
+     *
+     * @return the finished (completed or failed) run, or empty if a run is already in progress.
+     */
+    public Optional<ReconciliationRunResponse> run() {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(execute());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Optional<ReconciliationRunResponse> getLatestRun() {
+        return reconciliationRunRepository.findFirstByOrderByIdDesc().map(LedgerReconciliationJob::toResponse);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        launcher.shutdownNow();
+    }
+
+    private ReconciliationRunResponse execute() {
+        ReconciliationRun run = resumeOrCreateRun();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        log.info("Ledger reconciliation run {} starting after wallet {} (up to wallet {})", run.getId(),
+                run.getCheckpointWalletId(), run.getMaxWalletId());
+
+        try (BufferedWriter report = Files.newBufferedWriter(Paths.get(run.getReportFile()), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            Progress progress = new Progress(run, report);
+
+            if (run.getCheckpointWalletId() < run.getMaxWalletId()) {
+                pool.invoke(new ChunkTask(progress, run.getCheckpointWalletId() + 1, run.getMaxWalletId()));
+            }
+
+            run.setStatus(ReconciliationRun.Status.COMPLETED);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Ledger reconciliation run {} failed - will resume from wallet {}", run.getId(),
+                    run.getCheckpointWalletId() + 1, ex);
+            run.setStatus(ReconciliationRun.Status.FAILED);
+            run.setError(String.valueOf(ex.getMessage()));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        run.setFinishedAt(LocalDateTime.now());
+        run = reconciliationRunRepository.save(run);
+
+        log.info("Ledger reconciliation run {} {} - {} wallets checked, {} discrepancies", run.getId(),
+                run.getStatus(), run.getWalletsChecked(), run.getDiscrepancies());
+
+        return toResponse(run);
+    }
+
+    private ReconciliationRun resumeOrCreateRun() {
+        Optional<ReconciliationRun> latest = reconciliationRunRepository.findFirstByOrderByIdDesc();
+
+        try {
+            Files.createDirectories(reportDirectory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        if (latest.isPresent() && latest.get().getStatus() != ReconciliationRun.Status.COMPLETED) {
+            ReconciliationRun run = latest.get();
+            run.setStatus(ReconciliationRun.Status.RUNNING);
+            run.setFinishedAt(null);
+            run.setError(null);
+
+            return reconciliationRunRepository.save(run);
+        }
+
+        Long maxWalletId = walletRepository.findMaxId();
+        ReconciliationRun run = reconciliationRunRepository.save(
+                new ReconciliationRun(maxWalletId == null ? 0 : maxWalletId, null));
+        Path reportFile = reportDirectory.resolve("run-" + run.getId() + ".jsonl");
+        run.setReportFile(reportFile.toString());
+
+        try {
+            // Left over from a re-created database - a new run starts with an empty report (resumed runs append).
+            Files.deleteIfExists(reportFile);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return reconciliationRunRepository.save(run);
+    }
+
+    private void reconcileChunk(Progress progress, long fromId, long toId) {
+        throttle();
+
+        List<WalletLedgerTotals> hotTotals = null;
+        Map<Long, BigDecimal> coldTotals = null;
+
+        // Cold totals cover transactions before the watermark, hot totals those at or after it. If compaction moves
+        // the watermark between the two reads a transaction could be counted twice or not at all - so read again.
+        // Likewise if retention drops a segment (folding its totals into opening balances) during the reads.
+        for (int attempt = 0; attempt < MAXIMUM_CHUNK_ATTEMPTS && hotTotals == null; attempt++) {
+            long dropSequence = coldTransactionStore.getDropSequence();
+            LocalDateTime watermark = coldTransactionStore.getWatermark();
+            Map<Long, BigDecimal> cold = coldTransactionStore.sumAmounts(fromId, toId);
+            List<WalletLedgerTotals> hot = readOnlyTransactionTemplate.execute(
+                    status -> walletRepository.findLedgerTotals(fromId, toId, watermark));
+
+            if (Objects.equals(watermark, coldTransactionStore.getWatermark()) && dropSequence % 2 == 0
+                    && dropSequence == coldTransactionStore.getDropSequence()) {
+                hotTotals = hot;
+                coldTotals = cold;
+            }
+        }
+
+        if (hotTotals == null) {
+            throw new IllegalStateException(
+                    "Cold storage kept changing while reconciling wallets " + fromId + " to " + toId);
+        }
+
+        List<LedgerDiscrepancy> discrepancies = new ArrayList<>();
+
+        for (WalletLedgerTotals totals : hotTotals) {
+            BigDecimal openingBalance = orZero(totals.getOpeningBalance());
+            BigDecimal transactionTotal = orZero(totals.getTransactionTotal())
+                    .add(coldTotals.getOrDefault(totals.getWalletId(), BigDecimal.ZERO));
+            BigDecimal expectedBalance = openingBalance.add(transactionTotal);
+            BigDecimal balance = orZero(totals.getBalance());
+
+            if (balance.compareTo(expectedBalance) != 0) {
+                discrepancies.add(new LedgerDiscrepancy(totals.getWalletId(), balance, openingBalance,
+                        transactionTotal, expectedBalance, balance.subtract(expectedBalance), LocalDateTime.now()));
+            }
+        }
+
+        progress.complete(fromId, toId, hotTotals.size(), discrepancies);
+    }
+
+    // Spaces chunk start times across all workers to at most max-chunks-per-second.
+    private void throttle() {
+        if (minimumChunkIntervalNanos == 0) {
+            return;
+        }
+
+        long startNanos;
+        synchronized (throttleLock) {
+            startNanos = Math.max(System.nanoTime(), nextChunkNanos);
+            nextChunkNanos = startNanos + minimumChunkIntervalNanos;
+        }
+
+        long waitNanos = startNanos - System.nanoTime();
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ledger reconciliation interrupted", ex);
+            }
+        }
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+    private static ReconciliationRunResponse toResponse(ReconciliationRun run) {
+        return new ReconciliationRunResponse(run.getId(), run.getStatus().name(), run.getStartedAt(),
+                run.getFinishedAt(), run.getMaxWalletId(), run.getCheckpointWalletId(), run.getWalletsChecked(),
+                run.getDiscrepancies(), run.getReportFile(), run.getError());
+    }
+
+    // Tracks completed chunks (which finish out of order) and advances the run's checkpoint past every contiguous one.
+    private final class Progress {
+        private final ReconciliationRun run;
+        private final BufferedWriter report;
+        // Completed chunks beyond the checkpoint - first wallet id to last wallet id.
+        private final TreeMap<Long, Long> completed = new TreeMap<>();
+
+        Progress(ReconciliationRun run, BufferedWriter report) {
+            this.run = run;
+            this.report = report;
+        }
+
+        synchronized void complete(long fromId, long toId, int walletsChecked,
+                                   List<LedgerDiscrepancy> discrepancies) {
+            try {
+                for (LedgerDiscrepancy discrepancy : discrepancies) {
+                    report.write(objectMapper.writeValueAsString(discrepancy));
+                    report.newLine();
+                }
+
+                // Flushed before the checkpoint can move past this chunk, so no reported discrepancy is ever lost.
+                report.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            for (LedgerDiscrepancy discrepancy : discrepancies) {
+                log.warn("Ledger discrepancy for wallet {}: balance {} expected {}", discrepancy.getWalletId(),
+                        discrepancy.getBalance(), discrepancy.getExpectedBalance());
+            }
+
+            run.setWalletsChecked(run.getWalletsChecked() + walletsChecked);
+            run.setDiscrepancies(run.getDiscrepancies() + discrepancies.size());
+            completed.put(fromId, toId);
+
+            long checkpoint = run.getCheckpointWalletId();
+            Long next;
+            while ((next = completed.remove(checkpoint + 1)) != null) {
+                checkpoint = next;
+            }
+
+            if (checkpoint != run.getCheckpointWalletId()) {
+                run.setCheckpointWalletId(checkpoint);
+                reconciliationRunRepository.save(run);
+            }
+        }
+    }
+
+    // Splits a wallet id range in half (on chunk boundaries) until it is a single chunk.
+    private final class ChunkTask extends RecursiveAction {
+        private final Progress progress;
+        private final long fromId;
+        private final long toId;
+
+        ChunkTask(Progress progress, long fromId, long toId) {
+            this.progress = progress;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            long chunks = (toId - fromId + chunkSize) / chunkSize;
+
+            if (chunks <= 1) {
+                reconcileChunk(progress, fromId, toId);
+                return;
+            }
+
+            long splitId = fromId + (chunks / 2) * chunkSize;
+            invokeAll(new ChunkTask(progress, fromId, splitId - 1), new ChunkTask(progress, splitId, toId));
+        }
+    }
+}
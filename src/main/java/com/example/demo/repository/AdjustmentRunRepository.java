@@ -0,0 +1,14 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.AdjustmentRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AdjustmentRunRepository extends JpaRepository<AdjustmentRun, Long> {
+    Optional<AdjustmentRun> findByName(String name);
+
+    Optional<AdjustmentRun> findFirstByOrderByIdDesc();
+}
@@ -0,0 +1,15 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.BalanceCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface BalanceCheckpointRepository extends JpaRepository<BalanceCheckpoint, Long> {
+    // Latest checkpoint at or before a time - a single (wallet_id, timestamp) index probe.
+    Optional<BalanceCheckpoint> findFirstByWalletIdAndTimestampLessThanEqualOrderByTimestampDescWalletVersionDesc(
+            Long walletId, LocalDateTime timestamp);
+}
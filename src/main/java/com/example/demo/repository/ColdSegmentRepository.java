@@ -0,0 +1,12 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.ColdSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ColdSegmentRepository extends JpaRepository<ColdSegment, Long> {
+    List<ColdSegment> findAllByOrderByCutoffAsc();
+}
@@ -0,0 +1,22 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Customer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CustomerRepository extends JpaRepository<Customer, Long> {
+    // Customer name index build - ids and names only, a range of ids at a time.
+    @Query("select c.id, c.name from Customer c where c.id between :fromId and :toId")
+    List<Object[]> findNamesBetween(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    @Query("select min(c.id) from Customer c")
+    Long findMinId();
+
+    @Query("select max(c.id) from Customer c")
+    Long findMaxId();
+}
@@ -0,0 +1,14 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    // Oldest first, so events for a wallet are dispatched in commit order.
+    List<OutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+}
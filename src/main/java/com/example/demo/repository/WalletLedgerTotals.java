@@ -0,0 +1,15 @@
+package com.example.demo.repository;
+
+import java.math.BigDecimal;
+
+// Projection of a wallet's balance alongside the total of its (hot) wallet transactions, for ledger reconciliation.
+public interface WalletLedgerTotals {
+    Long getWalletId();
+
+    BigDecimal getBalance();
+
+    BigDecimal getOpeningBalance();
+
+    // Null when the wallet has no matching transactions.
+    BigDecimal getTransactionTotal();
+}
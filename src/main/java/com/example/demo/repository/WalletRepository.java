@@ -1,9 +1,54 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.Wallet;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
+    // Ledger reconciliation - a single statement, so each balance and its transaction total come from one consistent
+    // read. Only transactions at or after the cold storage watermark are summed (all, if the watermark is null).
+    @Query("select w.id as walletId, w.balance as balance, w.openingBalance as openingBalance, "
+            + "sum(t.amount) as transactionTotal "
+            + "from Wallet w left join WalletTransaction t on t.wallet = w "
+            + "and (:watermark is null or t.timestamp >= :watermark) "
+            + "where w.id between :fromId and :toId "
+            + "group by w.id, w.balance, w.openingBalance order by w.id")
+    List<WalletLedgerTotals> findLedgerTotals(@Param("fromId") long fromId, @Param("toId") long toId,
+                                              @Param("watermark") LocalDateTime watermark);
+
+    // Wallet lookup for read paths - loaded read-only, so Hibernate keeps no snapshot of it for dirty checking (never
+    // use it for a wallet which is to be updated).
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true"))
+    @Query("select w from Wallet w where w.id = :id")
+    Optional<Wallet> findReadOnlyById(@Param("id") Long id);
+
+    // Wallet lookup for deposits and withdrawals - select for update, so every mutation of a wallet (on any instance,
+    // including bulk adjustments and retention) waits for the one before it to commit, then reads its balance.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.id = :id")
+    Optional<Wallet> findForUpdateById(@Param("id") Long id);
+
+    // Wallet version for conditional GETs - a scalar lookup by primary key, no entity is loaded.
+    @Query("select w.version from Wallet w where w.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    // Wallet leaderboard snapshot (wallet id, balance, version) - read only when the in-memory leaderboard cannot answer.
+    // Synthetic wallets (negative ids, see StartupWarmUp) are left out.
+    @Query("select w.id, w.balance, w.version from Wallet w where w.id > 0 order by w.balance desc, w.id")
+    List<Object[]> findTopBalances(Pageable pageable);
+
+    @Query("select max(w.id) from Wallet w")
+    Long findMaxId();
 }
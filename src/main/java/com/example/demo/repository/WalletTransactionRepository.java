@@ -4,14 +4,62 @@ import com.example.demo.model.Wallet;
 import com.example.demo.model.WalletTransaction;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface WalletTransactionRepository extends JpaRepository<WalletTransaction, Long> {
-    // For demo purposes, electing to use List response instead of Page or Slice - assuming transactions for a single
-    // wallet are unlikely to be in the hundreds of thousands or millions, a Page response (with the overhead of an
-    // extra count query) would probably be ok.
-    List<WalletTransaction> findAllByWalletOrderByTimestampDesc(Wallet wallet, Pageable pageable);
+    // Pages are returned as a List - WalletService builds the Page from it, taking the total from the wallet's
+    // transaction count, so no count query is run.
+    // Pages are projections into unmanaged WalletTransaction instances - nothing is added to the persistence context,
+    // and there is nothing to dirty check at flush.
+    @Query("select new com.example.demo.model.WalletTransaction(t.id, t.amount, t.timestamp, t.adjustmentRunId) "
+            + "from WalletTransaction t where t.wallet.id = :walletId order by t.timestamp desc, t.walletVersion desc")
+    List<WalletTransaction> findPageByWalletId(@Param("walletId") Long walletId, Pageable pageable);
+
+    // Hot tier queries once cold storage holds everything before the watermark (and the double-submit guard's latest
+    // transaction lookup).
+    @Query("select new com.example.demo.model.WalletTransaction(t.id, t.amount, t.timestamp, t.adjustmentRunId) "
+            + "from WalletTransaction t where t.wallet.id = :walletId and t.timestamp >= :since "
+            + "order by t.timestamp desc, t.walletVersion desc")
+    List<WalletTransaction> findPageByWalletIdSince(@Param("walletId") Long walletId,
+                                                    @Param("since") LocalDateTime since, Pageable pageable);
+
+    long countByWalletAndTimestampGreaterThanEqual(Wallet wallet, LocalDateTime watermark);
+
+    // Velocity limit counters are rebuilt from a wallet's recent withdrawals (amount and time only) - fees applied by
+    // bulk adjustment runs are not withdrawals.
+    @Query("select t.timestamp, t.amount from WalletTransaction t where t.wallet.id = :walletId "
+            + "and t.timestamp >= :since and t.amount < 0 and t.adjustmentRunId is null")
+    List<Object[]> findWithdrawalsSince(@Param("walletId") Long walletId, @Param("since") LocalDateTime since);
+
+    // As-of balance scan - a wallet's transactions after a balance checkpoint (by timestamp, then wallet version) up to
+    // a time. The from bound (the checkpoint's timestamp or the cold watermark, whichever is later) keeps it to an index
+    // range.
+    @Query("select coalesce(sum(t.amount), 0) from WalletTransaction t where t.wallet.id = :walletId "
+            + "and t.timestamp >= :from and t.timestamp <= :to "
+            + "and (t.timestamp > :afterTimestamp or t.walletVersion > :afterVersion)")
+    BigDecimal sumAmountsAfter(@Param("walletId") Long walletId, @Param("from") LocalDateTime from,
+                               @Param("to") LocalDateTime to, @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                               @Param("afterVersion") long afterVersion);
+
+    // Volume leaderboard in cluster mode (see WalletLeaderboards) - deposits and withdrawals in the window, ignoring sign
+    // (and synthetic wallets, see StartupWarmUp).
+    @Query("select t.wallet.id, sum(abs(t.amount)) from WalletTransaction t "
+            + "where t.timestamp >= :since and t.adjustmentRunId is null and t.wallet.id > 0 "
+            + "group by t.wallet.id order by sum(abs(t.amount)) desc, t.wallet.id")
+    List<Object[]> findTopVolumesSince(@Param("since") LocalDateTime since, Pageable pageable);
+
+    // Cold storage compaction.
+    List<WalletTransaction> findAllByTimestampBeforeOrderByTimestampAsc(LocalDateTime cutoff, Pageable pageable);
+
+    @Modifying
+    @Query("delete from WalletTransaction t where t.timestamp < :cutoff")
+    int deleteAllByTimestampBefore(@Param("cutoff") LocalDateTime cutoff);
 }
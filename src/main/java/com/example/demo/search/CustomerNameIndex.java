@@ -0,0 +1,282 @@
+package com.example.demo.search;
+
+import com.example.demo.model.Customer;
+import com.example.demo.repository.CustomerRepository;
+import com.example.demo.startup.StartupPhases;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory customer name index for type-ahead search by name prefix (case-insensitive).
+ * <p>
+ * Names are held in a {@link SortedNames} array, built at startup by loading ranges of customer ids in parallel on a
+ * fork-join pool and merging the sorted ranges. Changes are then applied incrementally: committed customer inserts,
+ * updates and deletes (seen through Hibernate post-commit event listeners) are held in a small map of pending changes
+ * which overrides the sorted names, and are merged into a new sorted array in the background once there are
+ * {@code hubpay.customer-search.max-pending-changes} of them. Searches never query the database.
+ * <p>
+ * Only changes made through JPA entity operations are seen - bulk JPQL or SQL updates of {@code customer} bypass the
+ * listeners.
+ */
+@Component
+public class CustomerNameIndex {
+    private static final Logger log = LoggerFactory.getLogger(CustomerNameIndex.class);
+
+    // Pending change marking a deleted customer.
+    private static final String REMOVED = new String("<removed>");
+
+    private final CustomerRepository customerRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final int buildParallelism;
+    private final long buildChunkSize;
+    private final int maxPendingChanges;
+
+    private volatile SortedNames names = SortedNames.EMPTY;
+    // Customer id to new name (or REMOVED) for changes not yet merged into names.
+    private final ConcurrentHashMap<Long, String> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-index-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CustomerNameIndex(CustomerRepository customerRepository,
+                             EntityManagerFactory entityManagerFactory,
+                             @Value("${hubpay.customer-search.build-parallelism:2}") int buildParallelism,
+                             @Value("${hubpay.customer-search.build-chunk-size:100000}") long buildChunkSize,
+                             @Value("${hubpay.customer-search.max-pending-changes:1024}") int maxPendingChanges) {
+        this.customerRepository = customerRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.buildParallelism = buildParallelism;
+        this.buildChunkSize = buildChunkSize;
+        this.maxPendingChanges = maxPendingChanges;
+    }
+
+    /**
+     * Registers the change listeners, then builds the index - changes committed while it is being built are pending
+     * changes, so none are lost.
+     */
+    @PostConstruct
+    public void init() {
+        ChangeListener listener = new ChangeListener();
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+
+        StartupPhases.start(StartupPhases.CUSTOMER_INDEX);
+
+        try {
+            build();
+        } finally {
+            StartupPhases.end(StartupPhases.CUSTOMER_INDEX);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        merger.shutdownNow();
+    }
+
+    /**
+     * Finds customers whose name starts with a prefix (case-insensitive).
+     *
+     * @param prefix name prefix.
+     * @param limit maximum number of customers to return.
+     * @return customer id to name, in name order (then id order).
+     */
+    public Map<Long, String> search(String prefix, int limit) {
+        SortedNames current = names;
+        List<Map.Entry<Long, String>> matches = new ArrayList<>();
+
+        // Pending changes override the sorted names - so skip changed customers there...
+        int index = current.firstMatch(prefix);
+
+        if (index >= 0) {
+            for (; index < current.size() && matches.size() < limit && current.startsWith(index, prefix); index++) {
+                long customerId = current.id(index);
+
+                if (!pending.containsKey(customerId)) {
+                    matches.add(new AbstractMap.SimpleImmutableEntry<>(customerId, current.name(index)));
+                }
+            }
+        }
+
+        // ...and take their current names from the (small) pending changes instead.
+        pending.forEach((customerId, name) -> {
+            if (name != REMOVED && SortedNames.startsWith(name, prefix)) {
+                matches.add(new AbstractMap.SimpleImmutableEntry<>(customerId, name));
+            }
+        });
+
+        matches.sort((a, b) -> SortedNames.compareNames(a.getValue(), a.getKey(), b.getValue(), b.getKey()));
+
+        Map<Long, String> result = new LinkedHashMap<>();
+
+        for (Map.Entry<Long, String> match : matches.subList(0, Math.min(limit, matches.size()))) {
+            result.put(match.getKey(), match.getValue());
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    int pendingChanges() {
+        return pending.size();
+    }
+
+    // Merges pending changes into a new sorted array. Changes arriving meanwhile stay pending (entries are only
+    // removed if unchanged since they were merged).
+    synchronized void merge() {
+        Map<Long, String> changes = new HashMap<>(pending);
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> renamed = new HashMap<>(changes.size() * 2);
+        changes.forEach((customerId, name) -> renamed.put(customerId, name == REMOVED ? null : name));
+
+        names = names.withChanges(renamed);
+        changes.forEach(pending::remove);
+    }
+
+    private void build() {
+        Long minId = customerRepository.findMinId();
+        Long maxId = customerRepository.findMaxId();
+
+        if (minId == null) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(buildParallelism);
+
+        try {
+            names = pool.invoke(new BuildTask(minId, maxId));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        log.info("Customer name index built - {} customers", names.size());
+    }
+
+    private void changed(Long customerId, String name) {
+        pending.put(customerId, name == null ? REMOVED : name);
+
+        if (pending.size() >= maxPendingChanges && merging.compareAndSet(false, true)) {
+            try {
+                merger.execute(() -> {
+                    try {
+                        merge();
+                    } finally {
+                        merging.set(false);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                // Shutting down.
+                merging.set(false);
+            }
+        }
+    }
+
+    // Loads a customer id range (split in half until it is a single chunk) and returns its sorted names.
+    private final class BuildTask extends RecursiveTask<SortedNames> {
+        private final long fromId;
+        private final long toId;
+
+        BuildTask(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected SortedNames compute() {
+            long chunks = (toId - fromId + buildChunkSize) / buildChunkSize;
+
+            if (chunks <= 1) {
+                Map<Long, String> chunk = new HashMap<>();
+
+                for (Object[] row : customerRepository.findNamesBetween(fromId, toId)) {
+                    chunk.put((Long) row[0], (String) row[1]);
+                }
+
+                return SortedNames.of(chunk);
+            }
+
+            long splitId = fromId + (chunks / 2) * buildChunkSize;
+            BuildTask upper = new BuildTask(splitId, toId);
+            upper.fork();
+
+            return SortedNames.merge(new BuildTask(fromId, splitId - 1).compute(), upper.join());
+        }
+    }
+
+    // Hibernate post-commit listener - only called for changes which have been committed.
+    private final class ChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+            PostCommitDeleteEventListener {
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            changed((Long) event.getId(), ((Customer) event.getEntity()).getName());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            changed((Long) event.getId(), ((Customer) event.getEntity()).getName());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            changed((Long) event.getId(), null);
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+            // Rolled back - nothing to index.
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+            // Rolled back - nothing to index.
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+            // Rolled back - nothing to index.
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.getMappedClass() == Customer.class;
+        }
+
+        // Misspelt predecessor of requiresPostCommitHandling - still abstract in Hibernate 5.6, which calls the other.
+        @Override
+        @Deprecated
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return requiresPostCommitHandling(persister);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.demo.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable array of customer names sorted case-insensitively (then by id), searched by prefix with a binary search.
+ * <p>
+ * Compactly encoded: every name is held in one shared {@code char[]}, with parallel offset and id arrays, so an index
+ * of millions of names is a handful of arrays rather than millions of objects.
+ */
+final class SortedNames {
+    static final SortedNames EMPTY = new SortedNames(new char[0], new int[]{0}, new long[0]);
+
+    // Case-insensitive order - each char folded the same way as String.CASE_INSENSITIVE_ORDER.
+    private static final Comparator<Entry> ENTRY_ORDER = (a, b) -> {
+        int result = compareFolded(a.name, b.name);
+
+        return result != 0 ? result : Long.compare(a.id, b.id);
+    };
+
+    private final char[] chars;
+    // Name i is chars[offsets[i]] to chars[offsets[i + 1] - 1].
+    private final int[] offsets;
+    private final long[] ids;
+
+    private SortedNames(char[] chars, int[] offsets, long[] ids) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.ids = ids;
+    }
+
+    /**
+     * Sorts and packs customer names.
+     *
+     * @param names customer id to name (null names are skipped).
+     * @return sorted names.
+     */
+    static SortedNames of(Map<Long, String> names) {
+        List<Entry> entries = new ArrayList<>(names.size());
+
+        names.forEach((id, name) -> {
+            if (name != null) {
+                entries.add(new Entry(id, name));
+            }
+        });
+
+        entries.sort(ENTRY_ORDER);
+
+        int length = 0;
+        for (Entry entry : entries) {
+            length += entry.name.length();
+        }
+
+        char[] chars = new char[length];
+        int[] offsets = new int[entries.size() + 1];
+        long[] ids = new long[entries.size()];
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            entry.name.getChars(0, entry.name.length(), chars, offsets[i]);
+            offsets[i + 1] = offsets[i] + entry.name.length();
+            ids[i] = entry.id;
+        }
+
+        return new SortedNames(chars, offsets, ids);
+    }
+
+    /**
+     * Merges two sets of sorted names (with no customer in both).
+     */
+    static SortedNames merge(SortedNames a, SortedNames b) {
+        int size = a.size() + b.size();
+        char[] chars = new char[a.chars.length + b.chars.length];
+        int[] offsets = new int[size + 1];
+        long[] ids = new long[size];
+        int i = 0;
+        int j = 0;
+
+        for (int k = 0; k < size; k++) {
+            boolean takeA = j >= b.size() || (i < a.size() && compare(a, i, b, j) <= 0);
+            SortedNames source = takeA ? a : b;
+            int index = takeA ? i++ : j++;
+            int start = source.offsets[index];
+            int length = source.offsets[index + 1] - start;
+
+            System.arraycopy(source.chars, start, chars, offsets[k], length);
+            offsets[k + 1] = offsets[k] + length;
+            ids[k] = source.ids[index];
+        }
+
+        return new SortedNames(chars, offsets, ids);
+    }
+
+    /**
+     * Applies changes - changed customers are removed and re-added with their new name.
+     *
+     * @param changes customer id to new name, or {@code null} if removed.
+     * @return the updated names (this instance is unchanged).
+     */
+    SortedNames withChanges(Map<Long, String> changes) {
+        int kept = 0;
+        int keptLength = 0;
+
+        for (int i = 0; i < size(); i++) {
+            if (!changes.containsKey(ids[i])) {
+                kept++;
+                keptLength += offsets[i + 1] - offsets[i];
+            }
+        }
+
+        char[] keptChars = new char[keptLength];
+        int[] keptOffsets = new int[kept + 1];
+        long[] keptIds = new long[kept];
+        int k = 0;
+
+        for (int i = 0; i < size(); i++) {
+            if (!changes.containsKey(ids[i])) {
+                int length = offsets[i + 1] - offsets[i];
+
+                System.arraycopy(chars, offsets[i], keptChars, keptOffsets[k], length);
+                keptOffsets[k + 1] = keptOffsets[k] + length;
+                keptIds[k++] = ids[i];
+            }
+        }
+
+        return merge(new SortedNames(keptChars, keptOffsets, keptIds), of(changes));
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    long id(int index) {
+        return ids[index];
+    }
+
+    String name(int index) {
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    /**
+     * Finds the first name starting with a prefix (case-insensitive).
+     *
+     * @return index of the first match, or -1 if no name starts with the prefix.
+     */
+    int firstMatch(String prefix) {
+        int low = 0;
+        int high = size();
+
+        // First name not less than the prefix - every name starting with it sorts at or after that point.
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (compareFolded(chars, offsets[mid], offsets[mid + 1], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low < size() && startsWith(low, prefix) ? low : -1;
+    }
+
+    boolean startsWith(int index, String prefix) {
+        int start = offsets[index];
+
+        if (offsets[index + 1] - start < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (fold(chars[start + i]) != fold(prefix.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static boolean startsWith(String name, String prefix) {
+        return name.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    static int compareNames(String a, long aId, String b, long bId) {
+        return ENTRY_ORDER.compare(new Entry(aId, a), new Entry(bId, b));
+    }
+
+    private static int compare(SortedNames a, int i, SortedNames b, int j) {
+        int result = compareFolded(a.chars, a.offsets[i], a.offsets[i + 1], b.chars, b.offsets[j], b.offsets[j + 1]);
+
+        return result != 0 ? result : Long.compare(a.ids[i], b.ids[j]);
+    }
+
+    // Compares a name in a char array with a string (case-insensitively).
+    private static int compareFolded(char[] chars, int start, int end, String other) {
+        int length = Math.min(end - start, other.length());
+
+        for (int i = 0; i < length; i++) {
+            char x = fold(chars[start + i]);
+            char y = fold(other.charAt(i));
+
+            if (x != y) {
+                return x - y;
+            }
+        }
+
+        return (end - start) - other.length();
+    }
+
+    private static int compareFolded(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+
+        for (int i = 0; i < length; i++) {
+            char x = fold(a.charAt(i));
+            char y = fold(b.charAt(i));
+
+            if (x != y) {
+                return x - y;
+            }
+        }
+
+        return a.length() - b.length();
+    }
+
+    private static int compareFolded(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+
+        for (int i = 0; i < length; i++) {
+            char x = fold(a[aStart + i]);
+            char y = fold(b[bStart + i]);
+
+            if (x != y) {
+                return x - y;
+            }
+        }
+
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static final class Entry {
+        final long id;
+        final String name;
+
+        Entry(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
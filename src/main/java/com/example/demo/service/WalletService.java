@@ -1,10 +1,24 @@
 package com.example.demo.service;
 
+import com.example.demo.event.WalletTransactionCommittedEvent;
 import com.example.demo.exception.ValidationException;
+import com.example.demo.history.BalanceHistory;
+import com.example.demo.metrics.RequestTimings;
+import com.example.demo.metrics.WalletContentionProfiler;
+import com.example.demo.model.OutboxEvent;
 import com.example.demo.model.Wallet;
 import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.OutboxEventRepository;
 import com.example.demo.repository.WalletRepository;
 import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.storage.ColdTransactionStore;
+import com.example.demo.validation.FundsOperation;
+import com.example.demo.validation.ValidationRuleSet;
+import com.example.demo.validation.ValidationRules;
+import com.example.demo.validation.VelocityLimits;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
@@ -13,12 +27,12 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 @Service
 public class WalletService {
-    // In Production app, would likely get these min/max amounts from external config source.
+    // Built-in default limits - each can be overridden (globally or per wallet tier) in the external validation rules
+    // file, see ValidationRules.
     public static final BigDecimal MINIMUM_DEPOSIT_AMOUNT = BigDecimal.valueOf(10);
     public static final BigDecimal MAXIMUM_DEPOSIT_AMOUNT = BigDecimal.valueOf(10000);
 
@@ -26,16 +40,40 @@ public class WalletService {
     // and reasonable for most currencies.
     public static final BigDecimal MINIMUM_WITHDRAWAL_AMOUNT = new BigDecimal("0.01");
     public static final BigDecimal MAXIMUM_WITHDRAWAL_AMOUNT = BigDecimal.valueOf(5000);
+    public static final int MAXIMUM_AMOUNT_SCALE = 2;
     // Arbitrarily set to 3 seconds to facilitate testing but might be longer in reality (or maybe not)
     public static final int DOUBLE_SUBMIT_GUARD_PERIOD_SECONDS = 3;
     public static final int DEFAULT_PAGE_SIZE = 10;
+    // Upper bound on wallets in one bulk lookup, and number of ids per IN query.
+    public static final int MAXIMUM_BULK_WALLETS = 5000;
+    public static final int BULK_QUERY_CHUNK_SIZE = 500;
+    // Retries if cold storage compaction or retention changes the tiers while a transaction page is being read.
+    private static final int MAXIMUM_PAGE_ATTEMPTS = 3;
 
     private final WalletRepository walletRepository;
     private final WalletTransactionRepository walletTransactionRepository;
+    private final ColdTransactionStore coldTransactionStore;
+    private final WalletContentionProfiler contentionProfiler;
+    private final ValidationRules validationRules;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxEventRepository outboxEventRepository;
+    private final VelocityLimits velocityLimits;
+    private final BalanceHistory balanceHistory;
 
-    public WalletService(WalletRepository walletRepository, WalletTransactionRepository walletTransactionRepository) {
+    public WalletService(WalletRepository walletRepository, WalletTransactionRepository walletTransactionRepository,
+                         ColdTransactionStore coldTransactionStore, WalletContentionProfiler contentionProfiler,
+                         ValidationRules validationRules, ApplicationEventPublisher eventPublisher,
+                         OutboxEventRepository outboxEventRepository, VelocityLimits velocityLimits,
+                         BalanceHistory balanceHistory) {
         this.walletRepository = walletRepository;
         this.walletTransactionRepository = walletTransactionRepository;
+        this.coldTransactionStore = coldTransactionStore;
+        this.contentionProfiler = contentionProfiler;
+        this.validationRules = validationRules;
+        this.eventPublisher = eventPublisher;
+        this.outboxEventRepository = outboxEventRepository;
+        this.velocityLimits = velocityLimits;
+        this.balanceHistory = balanceHistory;
     }
 
     // Implemented to support test that embedded database initialised correctly.
@@ -50,95 +88,264 @@ public class WalletService {
      * @return wallet or {@code null} if no wallet found with specified id.
      */
     public Wallet getWallet(Long walletId) {
-        return walletRepository.findById(walletId).orElse(null);
+        Wallet wallet = walletRepository.findReadOnlyById(walletId).orElse(null);
+        RequestTimings.mark("find-wallet");
+
+        return wallet;
+    }
+
+    /**
+     * Gets the version of a wallet, which changes with every change to its balance or transaction history (and with
+     * nothing else) and never returns to an earlier value, so it identifies both the balance and the history.
+     *
+     * @param walletId id of wallet (for demo - same as customer id).
+     * @return version or {@code null} if no wallet found with specified id.
+     */
+    public Long getWalletVersion(Long walletId) {
+        Long version = walletRepository.findVersionById(walletId);
+        RequestTimings.mark("version-query");
+
+        return version;
+    }
+
+    /**
+     * Gets wallets with specified ids, using chunked {@code IN} queries (one round trip per
+     * {@value #BULK_QUERY_CHUNK_SIZE} ids) within a single read-only transaction.
+     *
+     * @param walletIds ids of wallets to get (duplicates are ignored).
+     * @return wallets keyed by id, in the order first requested - ids with no wallet are absent.
+     * @throws ValidationException if more than {@value #MAXIMUM_BULK_WALLETS} distinct ids are requested.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Wallet> getWallets(Collection<Long> walletIds) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(walletIds));
+
+        if (distinctIds.size() > MAXIMUM_BULK_WALLETS) {
+            throw new ValidationException("No more than " + MAXIMUM_BULK_WALLETS + " wallets may be requested at once");
+        }
+
+        Map<Long, Wallet> found = new HashMap<>(distinctIds.size() * 2);
+
+        for (int start = 0; start < distinctIds.size(); start += BULK_QUERY_CHUNK_SIZE) {
+            List<Long> chunk = distinctIds.subList(start, Math.min(start + BULK_QUERY_CHUNK_SIZE, distinctIds.size()));
+
+            for (Wallet wallet : walletRepository.findAllById(chunk)) {
+                found.put(wallet.getId(), wallet);
+            }
+        }
+
+        RequestTimings.mark("find-wallets");
+
+        // Re-order to match the request (IN query results come back in no particular order).
+        Map<Long, Wallet> wallets = new LinkedHashMap<>(found.size() * 2);
+
+        for (Long walletId : distinctIds) {
+            Wallet wallet = found.get(walletId);
+
+            if (wallet != null) {
+                wallets.put(walletId, wallet);
+            }
+        }
+
+        return wallets;
+    }
+
+    /**
+     * Validates a deposit amount without touching the database (or starting a transaction), against the loosest
+     * limits of any wallet tier. Lets callers reject most invalid requests cheaply - {@link #addFunds} still applies
+     * the wallet's own tier limits.
+     *
+     * @param amount amount of funds to add.
+     * @return the rejection, or {@code null} if the amount may be valid.
+     */
+    public ValidationException validateDeposit(BigDecimal amount) {
+        return validationRules.current().precheck(FundsOperation.DEPOSIT, amount);
+    }
+
+    /**
+     * Validates a withdrawal amount without touching the database (or starting a transaction) - see
+     * {@link #validateDeposit}.
+     *
+     * @param amount amount of funds to withdraw (defined as a positive number).
+     * @return the rejection, or {@code null} if the amount may be valid.
+     */
+    public ValidationException validateWithdrawal(BigDecimal amount) {
+        return validationRules.current().precheck(FundsOperation.WITHDRAWAL, amount);
     }
 
     /**
-     * Adds funds to customer wallet. Validates that amount being deposited is not less than a minimum amount and not
-     * more than a maximum amount.
+     * Adds funds to customer wallet. Validates that amount being deposited is not less than a minimum amount, not
+     * more than a maximum amount and has no more than the allowed number of decimal places (limits depend on the
+     * wallet's tier).
      *
      * @param walletId id of wallet to add funds to (for demo - same as customer id).
      * @param amount amount of funds to add.
      * @return the customer's wallet after the transaction has been committed, or {@code null} if no wallet exists
      * with specified id.
      */
-    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Wallet addFunds(Long walletId, BigDecimal amount) {
+        // Connection acquisition and transaction begin happen in the transaction interceptor, before this method.
+        RequestTimings.mark("transaction-begin");
+
         // Amount validation
-        // As the amount constraints are operation-dependant, validating in service layer is not unreasonable but in
-        // Production, it would probably be better to use Javax Validation annotations (possibly custom validators)
-        // at entity level.
-        if (amount.compareTo(MINIMUM_DEPOSIT_AMOUNT) < 0) {
-            throw new ValidationException("Deposit amount must be at least " + MINIMUM_DEPOSIT_AMOUNT);
-        } else if (amount.compareTo(MAXIMUM_DEPOSIT_AMOUNT) > 0) {
-            throw new ValidationException("Deposit amount must not exceed " + MAXIMUM_DEPOSIT_AMOUNT);
+        // Rules are compiled from external config (see ValidationRules) - take one snapshot so the whole operation is
+        // validated against a consistent rule set. Tier-specific limits are checked once the wallet is loaded.
+        ValidationRuleSet rules = validationRules.current();
+        ValidationException rejection = rules.precheck(FundsOperation.DEPOSIT, amount);
+
+        if (rejection != null) {
+            throw rejection;
         }
 
-        return processTransaction(walletId, amount);
+        RequestTimings.mark("validation");
+
+        return processTransaction(walletId, FundsOperation.DEPOSIT, amount, rules);
     }
 
     /**
-     * Withdraws funds from customer wallet. Validates that amount being withdrawn is greater than zero and less than
-     * a maximum amount.
+     * Withdraws funds from customer wallet. Validates that amount being withdrawn is not less than a minimum amount,
+     * not more than a maximum amount and has no more than the allowed number of decimal places (limits depend on the
+     * wallet's tier), and that the wallet's recent withdrawals plus this one are within its velocity limits (see
+     * {@link VelocityLimits}).
      *
      * @param walletId id of wallet to withdraw funds from (for demo - same as customer id).
      * @param amount amount of funds to withdraw (defined as a positive number).
      * @return the customer's wallet after the transaction has been committed, or {@code null} if no wallet exists
      * with specified id.
      */
-    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Wallet withdrawFunds(Long walletId, BigDecimal amount) {
-        // Amount validation
-        // As the amount constraints are operation-dependant, validating in service layer is not unreasonable but in
-        // Production, it would probably be better to use Javax Validation annotations (possibly custom validators)
-        // at entity level.
-        if (amount.compareTo(MINIMUM_WITHDRAWAL_AMOUNT) < 0) {
-            throw new ValidationException("Withdrawal amount must be at least " + MINIMUM_WITHDRAWAL_AMOUNT);
-        } else if (amount.compareTo(MAXIMUM_WITHDRAWAL_AMOUNT) > 0) {
-            throw new ValidationException("Withdrawal amount must not exceed " + MAXIMUM_WITHDRAWAL_AMOUNT);
+        RequestTimings.mark("transaction-begin");
+
+        // Amount validation (see addFunds)
+        ValidationRuleSet rules = validationRules.current();
+        ValidationException rejection = rules.precheck(FundsOperation.WITHDRAWAL, amount);
+
+        if (rejection != null) {
+            throw rejection;
         }
 
-        return processTransaction(walletId, amount.negate());
+        RequestTimings.mark("validation");
+
+        return processTransaction(walletId, FundsOperation.WITHDRAWAL, amount, rules);
     }
 
     /**
-     * Retrieves page of wallet transactions in descending order of timestamp.
+     * Retrieves page of wallet transactions in descending order of timestamp. Pages transparently across the hot
+     * {@code wallet_transaction} table and cold storage (which holds every transaction before the cold watermark).
+     * The page total is taken from the wallet's transaction counter - no count query is needed. Transactions are
+     * read-only projections (their wallet is not set), and the wallet is loaded read-only.
      *
      * @param walletId id of wallet to list transactions for (for demo - same as customer id).
      * @param pageNumber page number (first page is page number zero)
      * @param pageSize number of results per page
-     * @return list of {@code WalletTransaction} or {@code null} if no wallet exists with specified id.
+     * @return page of {@code WalletTransaction} or {@code null} if no wallet exists with specified id.
      */
-    public List<WalletTransaction> pageWalletTransactions(Long walletId, int pageNumber, int pageSize) {
+    public Page<WalletTransaction> pageWalletTransactions(Long walletId, int pageNumber, int pageSize) {
         // Fail fast if no wallet exists for specified id.
-        Optional<Wallet> walletOpt = walletRepository.findById(walletId);
+        Optional<Wallet> walletOpt = walletRepository.findReadOnlyById(walletId);
+        RequestTimings.mark("find-wallet");
 
         if (!walletOpt.isPresent()) {
             return null;
         }
 
         Wallet wallet = walletOpt.get();
+        PageRequest pageRequest = PageRequest.of(pageNumber, pageSize);
 
-        return walletTransactionRepository.findAllByWalletOrderByTimestampDesc(wallet, PageRequest.of(pageNumber, pageSize));
+        // As in balance history - if compaction advanced the watermark (or retention dropped a segment) between the hot
+        // and cold reads, the page could repeat or skip transactions, so read it again.
+        for (int attempt = 0; attempt < MAXIMUM_PAGE_ATTEMPTS; attempt++) {
+            long dropSequence = coldTransactionStore.getDropSequence();
+            LocalDateTime watermark = coldTransactionStore.getWatermark();
+            List<WalletTransaction> transactions = readTransactionPage(wallet, watermark, pageNumber, pageSize);
+
+            if (Objects.equals(watermark, coldTransactionStore.getWatermark()) && dropSequence % 2 == 0
+                    && dropSequence == coldTransactionStore.getDropSequence()) {
+                return new PageImpl<>(transactions, pageRequest, wallet.getTransactionCount());
+            }
+        }
+
+        throw new IllegalStateException("Cold storage kept changing while paging transactions of wallet " + walletId);
     }
 
-    // Performs common fund transaction processing - including double-submit guard
-    private Wallet processTransaction(Long walletId, BigDecimal amount) {
-        // Fail fast if no wallet exists for specified id.
-        Optional<Wallet> walletOpt = walletRepository.findById(walletId);
+    // Reads a page from the hot table (transactions at or after the watermark), continuing into cold storage if needed.
+    private List<WalletTransaction> readTransactionPage(Wallet wallet, LocalDateTime watermark, int pageNumber,
+                                                        int pageSize) {
+        PageRequest pageRequest = PageRequest.of(pageNumber, pageSize);
+
+        // Nothing archived yet - hot table holds the complete history.
+        if (watermark == null) {
+            List<WalletTransaction> transactions = walletTransactionRepository.findPageByWalletId(
+                    wallet.getId(), pageRequest);
+            RequestTimings.mark("hot-query");
+
+            return transactions;
+        }
+
+        List<WalletTransaction> transactions = new ArrayList<>(
+                walletTransactionRepository.findPageByWalletIdSince(wallet.getId(), watermark, pageRequest));
+        RequestTimings.mark("hot-query");
+
+        // Page filled from the hot tier alone (the common case for recent history).
+        if (transactions.size() == pageSize) {
+            return transactions;
+        }
+
+        // Page runs past the end of the hot tier - continue into cold storage. The hot count is only needed if the
+        // page starts beyond the hot rows (otherwise the page offset plus the rows found gives it for free).
+        long pageOffset = (long) pageNumber * pageSize;
+        long hotCount = transactions.isEmpty()
+                ? walletTransactionRepository.countByWalletAndTimestampGreaterThanEqual(wallet, watermark)
+                : pageOffset + transactions.size();
+
+        transactions.addAll(coldTransactionStore.page(
+                wallet, Math.max(0, pageOffset - hotCount), pageSize - transactions.size()));
+        RequestTimings.mark("cold-query");
+
+        return transactions;
+    }
+
+    // Performs common fund transaction processing - including tier validation and double-submit guard
+    // - amount is positive for both operations (withdrawals are negated here).
+    private Wallet processTransaction(Long walletId, FundsOperation operation, BigDecimal requestedAmount,
+                                      ValidationRuleSet rules) {
+        // Inserts and the balance update are only flushed at commit.
+        RequestTimings.markOnCompletion("flush-commit");
+
+        // Fail fast if no wallet exists for specified id. The wallet row is locked until commit - concurrent mutations
+        // of the wallet queue here (so lock wait shows up in this phase) and each reads the balance the previous one
+        // committed.
+        Optional<Wallet> walletOpt = contentionProfiler.track(walletId,
+                () -> walletRepository.findForUpdateById(walletId));
+        RequestTimings.mark("find-wallet");
 
         if (!walletOpt.isPresent()) {
             return null;
         }
 
-        // Double-Submit guard check
         Wallet wallet = walletOpt.get();
 
+        // Tier validation (no-op unless the wallet's tier has stricter limits than the precheck applied)
+        ValidationException rejection = rules.checkTier(operation, wallet.getTier(), requestedAmount);
+
+        if (rejection != null) {
+            throw rejection;
+        }
+
+        BigDecimal amount = operation == FundsOperation.DEPOSIT ? requestedAmount : requestedAmount.negate();
+
+        // Double-Submit guard check
+
         LocalDateTime currentTimestamp = LocalDateTime.now();
 
-        // Get the latest transaction for wallet (there might not be one)
+        // Get the latest transaction for wallet within the guard period (there might not be one) - bounding the
+        // timestamp keeps the lookup to the newest index entries. With the wallet locked, it is the latest committed.
         List<WalletTransaction> transactions =
-                walletTransactionRepository.findAllByWalletOrderByTimestampDesc(wallet, PageRequest.of(0, 1));
+                walletTransactionRepository.findPageByWalletIdSince(walletId,
+                        currentTimestamp.minusSeconds(DOUBLE_SUBMIT_GUARD_PERIOD_SECONDS), PageRequest.of(0, 1));
+        RequestTimings.mark("double-submit-query");
 
         if (!transactions.isEmpty()) {
             WalletTransaction latestTransaction = transactions.get(0);
@@ -149,6 +356,7 @@ public class WalletService {
             if ((latestTransaction.getAmount().compareTo(amount) == 0) &&
                     (Duration.between(latestTransaction.getTimestamp(), currentTimestamp).toMillis()
                             < (DOUBLE_SUBMIT_GUARD_PERIOD_SECONDS * 1000))) {
+                contentionProfiler.recordDoubleSubmit(walletId);
                 throw new ValidationException("Transaction rejected - possible double-submit");
             }
         }
@@ -160,10 +368,52 @@ public class WalletService {
             throw new ValidationException("Withdrawal amount exceeds available balance");
         }
 
+        // Velocity limits (in-memory counters - no query unless the wallet's counters need rebuilding). The amount is
+        // reserved here and released again if the transaction rolls back; a deposit keeps the counters current.
+        if (operation == FundsOperation.WITHDRAWAL) {
+            ValidationException velocityRejection =
+                    velocityLimits.reserveWithdrawal(walletId, wallet.getVersion(), requestedAmount);
+            RequestTimings.mark("velocity-check");
+
+            if (velocityRejection != null) {
+                throw velocityRejection;
+            }
+        } else {
+            velocityLimits.recordDeposit(walletId, wallet.getVersion());
+        }
+
         wallet.setBalance(wallet.getBalance().add(amount));
+        wallet.setTransactionCount(wallet.getTransactionCount() + 1);
+        wallet.setVersion(wallet.getVersion() + 1);
+
+        // A wallet's transactions are ordered by timestamp, then wallet version (see BalanceHistory) - never stamp one
+        // earlier than the latest, even if this instance's clock is behind the one which wrote it.
+        WalletTransaction newTransaction = new WalletTransaction(wallet, amount);
+        newTransaction.setWalletVersion(wallet.getVersion());
+
+        if (!transactions.isEmpty() && transactions.get(0).getTimestamp().isAfter(newTransaction.getTimestamp())) {
+            newTransaction.setTimestamp(transactions.get(0).getTimestamp());
+        }
+
+        WalletTransaction transaction = walletTransactionRepository.save(newTransaction);
+        RequestTimings.mark("insert-transaction");
+
+        Wallet saved = walletRepository.save(wallet);
+        RequestTimings.mark("update-wallet");
+
+        // Every Nth transaction also records the running balance (for balance as-of queries).
+        balanceHistory.recordTransaction(saved, transaction);
+
+        // Outbox event for downstream systems - committed (or rolled back) together with the transaction itself.
+        outboxEventRepository.save(new OutboxEvent(
+                operation == FundsOperation.DEPOSIT ? OutboxEvent.Type.DEPOSIT : OutboxEvent.Type.WITHDRAWAL,
+                walletId, transaction.getId(), amount, saved.getBalance()));
+        RequestTimings.mark("insert-outbox");
 
-        walletTransactionRepository.save(new WalletTransaction(wallet, amount));
+        // Delivered to @TransactionalEventListener listeners only once (and if) the transaction commits.
+        eventPublisher.publishEvent(new WalletTransactionCommittedEvent(walletId, transaction.getId(),
+                saved.getVersion(), amount, saved.getBalance(), transaction.getTimestamp()));
 
-        return walletRepository.save(wallet);
+        return saved;
     }
 }
@@ -0,0 +1,22 @@
+package com.example.demo.startup;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+// Times context refresh - from bean factory post-processing (the start of refresh proper) to the refreshed event
+// (after every singleton has been created and the web server started).
+@Component
+public class ContextRefreshTimer implements BeanFactoryPostProcessor, ApplicationListener<ContextRefreshedEvent> {
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        StartupPhases.start(StartupPhases.CONTEXT_REFRESH);
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        StartupPhases.end(StartupPhases.CONTEXT_REFRESH);
+    }
+}
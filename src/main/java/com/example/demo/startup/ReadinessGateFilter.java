@@ -0,0 +1,53 @@
+package com.example.demo.startup;
+
+import com.example.demo.api.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects wallet API requests with 503 (Service Unavailable) until the instance is ready to accept traffic - i.e.
+ * until startup, including warm-up, has finished. Load balancers should use {@code GET /api/admin/readiness} to hold
+ * traffic back in the first place; this is the backstop for requests which arrive anyway.
+ */
+@Component
+public class ReadinessGateFilter extends OncePerRequestFilter {
+    private final ApplicationAvailability applicationAvailability;
+    private final ObjectMapper objectMapper;
+
+    public ReadinessGateFilter(ApplicationAvailability applicationAvailability, ObjectMapper objectMapper) {
+        this.applicationAvailability = applicationAvailability;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/wallet");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (applicationAvailability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), "Service is starting up"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.startup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the duration of startup phases (context refresh, Hibernate schema creation, {@code import.sql} load,
+ * customer name index build and warm-up). Static, because some phases are marked by hooks which Hibernate instantiates
+ * itself. Phases may nest - schema creation, the {@code import.sql} load and the customer name index build all happen
+ * during context refresh.
+ */
+public final class StartupPhases {
+    public static final String CONTEXT_REFRESH = "context-refresh";
+    public static final String SCHEMA_CREATION = "hibernate-schema-creation";
+    public static final String IMPORT_SQL = "import-sql";
+    public static final String CUSTOMER_INDEX = "customer-index";
+    public static final String WARM_UP = "warm-up";
+
+    // Phase name to {start, end} nanos (end is zero while the phase is in progress), in start order.
+    private static final Map<String, long[]> PHASES = new LinkedHashMap<>();
+
+    private StartupPhases() {}
+
+    public static synchronized void start(String phase) {
+        // Re-started (e.g. by a second application context in the same JVM) - replace, keeping start order.
+        PHASES.remove(phase);
+        PHASES.put(phase, new long[]{System.nanoTime(), 0});
+    }
+
+    public static synchronized void end(String phase) {
+        long[] times = PHASES.get(phase);
+
+        if (times != null && times[1] == 0) {
+            times[1] = System.nanoTime();
+        }
+    }
+
+    public static synchronized boolean isInProgress(String phase) {
+        long[] times = PHASES.get(phase);
+
+        return times != null && times[1] == 0;
+    }
+
+    /**
+     * Gets the durations of all completed phases.
+     *
+     * @return phase name to duration in milliseconds, in the order the phases started.
+     */
+    public static synchronized Map<String, Double> completedMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+
+        PHASES.forEach((phase, times) -> {
+            if (times[1] != 0) {
+                result.put(phase, (times[1] - times[0]) / 1_000_000.0);
+            }
+        });
+
+        return result;
+    }
+}
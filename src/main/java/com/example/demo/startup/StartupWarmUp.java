@@ -0,0 +1,271 @@
+package com.example.demo.startup;
+
+import com.example.demo.api.WalletFundsRequest;
+import com.example.demo.cluster.ClusterMembership;
+import com.example.demo.controller.WalletController;
+import com.example.demo.metrics.WalletContentionProfiler;
+import com.example.demo.model.Customer;
+import com.example.demo.model.Wallet;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Warms up the wallet request paths before the instance is marked ready, so the first real requests after a deploy
+ * are not served by cold (interpreted) code.
+ * <p>
+ * Runs rounds of deposits, withdrawals, balance lookups and transaction pages through {@link WalletController} (and
+ * so {@code WalletService}), serializing every response body with the application's {@link ObjectMapper}, until the
+ * JIT compiler has settled - {@code hubpay.warm-up.settled-rounds} consecutive rounds in which JIT compilation time
+ * (summed over compiler threads) is no more than {@code hubpay.warm-up.settled-compile-ratio} of the round's elapsed
+ * time - or {@code hubpay.warm-up.max-duration} has elapsed.
+ * <p>
+ * Each round runs against synthetic wallets (negative ids), created for the round and deleted again at its end. Every
+ * operation commits in its own transaction, as a real request's does, so connection checkout, begin, flush and
+ * commit are warmed too. Nothing is left behind: the synthetic wallets' transactions, checkpoints and outbox events are
+ * deleted with them (the outbox is not dispatched until the instance is ready - see {@code OutboxDispatcher}), and
+ * the leaderboards ignore them.
+ * <p>
+ * In cluster mode synthetic wallets would be shared by every instance - one restarting instance's cleanup could delete
+ * another's wallets, and an instance already dispatching the outbox would send their events. So rounds only exercise
+ * the read paths (balance lookups and transaction pages), on existing wallets, and nothing is written.
+ * <p>
+ * Runs in an {@link ApplicationReadyEvent} listener. Spring Boot only publishes the ACCEPTING_TRAFFIC readiness state
+ * once every ready listener has returned, and {@link ReadinessGateFilter} rejects wallet requests until then.
+ */
+@Component
+public class StartupWarmUp {
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    // Synthetic wallets are opened with enough funds that warm-up withdrawals never run out.
+    private static final BigDecimal SYNTHETIC_OPENING_BALANCE = new BigDecimal("1000000.00");
+
+    // Rows of the synthetic wallets, deleted at the end of each round - their customers are removed through the entity
+    // manager, so that the customer name index follows.
+    private static final String[] DELETE_SYNTHETIC_ROWS_JPQL = {
+            "delete from WalletTransaction t where t.wallet.id < 0",
+            "delete from BalanceCheckpoint c where c.walletId < 0",
+            "delete from OutboxEvent e where e.walletId < 0",
+            "delete from Wallet w where w.id < 0"
+    };
+
+    private final WalletController walletController;
+    private final WalletContentionProfiler contentionProfiler;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean clustered;
+    private final boolean enabled;
+    private final int wallets;
+    private final int iterationsPerRound;
+    private final Duration maxDuration;
+    private final double settledCompileRatio;
+    private final int settledRounds;
+
+    private volatile int rounds;
+    private volatile long iterations;
+    private volatile long compileMillis;
+    private volatile boolean settled;
+
+    public StartupWarmUp(WalletController walletController, WalletContentionProfiler contentionProfiler,
+                         ObjectMapper objectMapper, EntityManager entityManager,
+                         TransactionTemplate transactionTemplate, ClusterMembership membership,
+                         @Value("${hubpay.warm-up.enabled:true}") boolean enabled,
+                         @Value("${hubpay.warm-up.wallets:16}") int wallets,
+                         @Value("${hubpay.warm-up.iterations-per-round:200}") int iterationsPerRound,
+                         @Value("${hubpay.warm-up.max-duration:PT30S}") Duration maxDuration,
+                         @Value("${hubpay.warm-up.settled-compile-ratio:0.05}") double settledCompileRatio,
+                         @Value("${hubpay.warm-up.settled-rounds:3}") int settledRounds) {
+        this.walletController = walletController;
+        this.contentionProfiler = contentionProfiler;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.clustered = membership.isEnabled();
+        this.enabled = enabled;
+        this.wallets = wallets;
+        this.iterationsPerRound = iterationsPerRound;
+        this.maxDuration = maxDuration;
+        this.settledCompileRatio = settledCompileRatio;
+        this.settledRounds = settledRounds;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        // Without compilation time monitoring, just run the minimum number of rounds.
+        boolean monitored = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        long deadlineNanos = System.nanoTime() + maxDuration.toNanos();
+        int quietRounds = 0;
+
+        StartupPhases.start(StartupPhases.WARM_UP);
+
+        try {
+            // Synthetic wallets left behind by an instance stopped mid-round.
+            if (!clustered) {
+                transactionTemplate.executeWithoutResult(status -> deleteSyntheticWallets());
+            }
+
+            while (quietRounds < settledRounds && System.nanoTime() < deadlineNanos) {
+                long compileBefore = monitored ? compiler.getTotalCompilationTime() : 0;
+                long roundStartNanos = System.nanoTime();
+
+                runRound();
+
+                double roundMillis = (System.nanoTime() - roundStartNanos) / 1_000_000.0;
+                long roundCompileMillis = monitored ? compiler.getTotalCompilationTime() - compileBefore : 0;
+                compileMillis += roundCompileMillis;
+                quietRounds = roundCompileMillis <= roundMillis * settledCompileRatio ? quietRounds + 1 : 0;
+                rounds++;
+            }
+
+            settled = quietRounds >= settledRounds;
+        } catch (RuntimeException ex) {
+            // Never fail startup over warm-up - the instance is merely slower for its first requests.
+            log.warn("Warm-up abandoned after {} rounds", rounds, ex);
+        } finally {
+            StartupPhases.end(StartupPhases.WARM_UP);
+
+            // Synthetic wallets are deleted, but the contention profiler has still seen them.
+            contentionProfiler.clear();
+        }
+
+        log.info("Warm-up {} after {} rounds ({} iterations, {}ms JIT compilation)",
+                settled ? "settled" : "stopped at time limit", rounds, iterations, compileMillis);
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getCompileMillis() {
+        return compileMillis;
+    }
+
+    public boolean isSettled() {
+        return settled;
+    }
+
+    // Each controller call runs (and commits) in its own transaction, as it would for a request.
+    private void runRound() {
+        if (clustered) {
+            runReadOnlyRound();
+            return;
+        }
+
+        List<Long> walletIds = transactionTemplate.execute(status -> createSyntheticWallets());
+
+        try {
+            for (int i = 0; i < iterationsPerRound; i++) {
+                Long walletId = walletIds.get(i % walletIds.size());
+                // Distinct amount per iteration, so the double-submit guard does not reject the mutations.
+                BigDecimal amount = BigDecimal.valueOf(1000 + i, 2);
+
+                serialize(walletController.deposit(walletId, fundsRequest(amount)));
+                serialize(walletController.withdraw(walletId, fundsRequest(amount.add(BigDecimal.ONE))));
+                serialize(walletController.balance(walletId, null));
+                serialize(walletController.transactions(walletId, 0, 10, null));
+
+                if (i % walletIds.size() == 0) {
+                    serialize(walletController.balances(walletIds));
+                }
+
+                iterations++;
+            }
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> deleteSyntheticWallets());
+        }
+    }
+
+    // Cluster mode - reads of existing wallets only.
+    private void runReadOnlyRound() {
+        List<Long> walletIds = entityManager.createQuery("select w.id from Wallet w where w.id > 0 order by w.id",
+                Long.class).setMaxResults(wallets).getResultList();
+
+        for (int i = 0; i < iterationsPerRound && !walletIds.isEmpty(); i++) {
+            Long walletId = walletIds.get(i % walletIds.size());
+
+            serialize(walletController.balance(walletId, null));
+            serialize(walletController.transactions(walletId, 0, 10, null));
+
+            if (i % walletIds.size() == 0) {
+                serialize(walletController.balances(walletIds));
+            }
+
+            iterations++;
+        }
+    }
+
+    private List<Long> createSyntheticWallets() {
+        List<Long> walletIds = new ArrayList<>(wallets);
+
+        for (long id = -1; id >= -wallets; id--) {
+            Customer customer = new Customer();
+            customer.setId(id);
+            customer.setName("Warm-up " + -id);
+            entityManager.persist(customer);
+
+            Wallet wallet = new Wallet();
+            wallet.setId(id);
+            wallet.setBalance(SYNTHETIC_OPENING_BALANCE);
+            wallet.setOpeningBalance(SYNTHETIC_OPENING_BALANCE);
+            entityManager.persist(wallet);
+
+            walletIds.add(id);
+        }
+
+        return Collections.unmodifiableList(walletIds);
+    }
+
+    private void deleteSyntheticWallets() {
+        for (String jpql : DELETE_SYNTHETIC_ROWS_JPQL) {
+            entityManager.createQuery(jpql).executeUpdate();
+        }
+
+        for (Customer customer : entityManager.createQuery("select c from Customer c where c.id < 0", Customer.class)
+                .getResultList()) {
+            entityManager.remove(customer);
+        }
+    }
+
+    // Deserializes the request as the message converter would.
+    private WalletFundsRequest fundsRequest(BigDecimal amount) {
+        try {
+            return objectMapper.readValue("{\"amount\":" + amount.toPlainString() + "}", WalletFundsRequest.class);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void serialize(ResponseEntity<?> response) {
+        try {
+            objectMapper.writeValueAsBytes(response.getBody());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.startup;
+
+import org.hibernate.tool.hbm2ddl.SingleLineSqlCommandExtractor;
+
+import java.io.Reader;
+
+/**
+ * Hibernate's default {@code import.sql} statement extractor, marking the end of DDL execution and the start of the
+ * {@code import.sql} load (see {@link TimedSchemaManagementTool}).
+ * <p>
+ * Configured by {@code spring.jpa.properties.hibernate.hbm2ddl.import_files_sql_extractor}.
+ */
+public class TimedImportSqlCommandExtractor extends SingleLineSqlCommandExtractor {
+    @Override
+    public String[] extractCommands(Reader reader) {
+        if (StartupPhases.isInProgress(StartupPhases.SCHEMA_CREATION)) {
+            StartupPhases.end(StartupPhases.SCHEMA_CREATION);
+            StartupPhases.start(StartupPhases.IMPORT_SQL);
+        }
+
+        return super.extractCommands(reader);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.demo.startup;
+
+import org.hibernate.tool.schema.internal.HibernateSchemaManagementTool;
+import org.hibernate.tool.schema.spi.SchemaCreator;
+
+import java.util.Map;
+
+/**
+ * Hibernate's schema management tool, timing schema creation. Hibernate loads {@code import.sql} as the last step of
+ * schema creation - {@link TimedImportSqlCommandExtractor} marks where that starts, splitting the two phases.
+ * <p>
+ * Configured by {@code spring.jpa.properties.hibernate.schema_management_tool}.
+ */
+public class TimedSchemaManagementTool extends HibernateSchemaManagementTool {
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SchemaCreator getSchemaCreator(Map options) {
+        SchemaCreator creator = super.getSchemaCreator(options);
+
+        return (metadata, executionOptions, sourceDescriptor, targetDescriptor) -> {
+            StartupPhases.start(StartupPhases.SCHEMA_CREATION);
+
+            try {
+                creator.doCreation(metadata, executionOptions, sourceDescriptor, targetDescriptor);
+            } finally {
+                StartupPhases.end(StartupPhases.SCHEMA_CREATION);
+                StartupPhases.end(StartupPhases.IMPORT_SQL);
+            }
+        };
+    }
+}
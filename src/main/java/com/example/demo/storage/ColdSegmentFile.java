@@ -0,0 +1,438 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.*;
+
+/**
+ * Reads and writes immutable cold storage segment files.
+ * <p>
+ * A segment holds archived wallet transactions sorted by wallet id (ascending) and then newest first, i.e. the same
+ * order in which they are paged. Records are grouped into blocks of at most {@code blockSize} records belonging to a
+ * single wallet and each block is deflated independently. A sparse index (one entry per block, not per record) is
+ * kept in the file footer and loaded into memory when the segment is opened, so a page of a wallet's history only
+ * needs the blocks that overlap it to be read and inflated.
+ * <p>
+ * File layout: {@code header | block* | index | footer}, where the footer records the index offset, entry count and
+ * CRC32 of the index, and each index entry records the CRC32 of its uncompressed block.
+ */
+public final class ColdSegmentFile {
+    private static final int MAGIC = 0x48504353; // "HPCS"
+    // Version 2 records carry the wallet version (the tie-break between transactions with the same timestamp).
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int FOOTER_LENGTH = 20;
+    private static final int INDEX_ENTRY_LENGTH = 32;
+
+    private final Path path;
+    private final long fileLength;
+
+    // Sparse index - one element per block (parallel arrays to keep the in-memory footprint small).
+    private final long[] walletIds;
+    private final int[] firstOrdinals;
+    private final int[] recordCounts;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] crcs;
+
+    private ColdSegmentFile(Path path, long fileLength, int entryCount) {
+        this.path = path;
+        this.fileLength = fileLength;
+        this.walletIds = new long[entryCount];
+        this.firstOrdinals = new int[entryCount];
+        this.recordCounts = new int[entryCount];
+        this.offsets = new long[entryCount];
+        this.lengths = new int[entryCount];
+        this.crcs = new int[entryCount];
+    }
+
+    /**
+     * Writes a new segment file. The file is written to a temporary sibling and atomically moved into place, so a
+     * partially written segment is never visible under its final name.
+     *
+     * @param path final path of the segment file (must not exist).
+     * @param transactions transactions sorted by wallet id ascending, then timestamp and wallet version descending.
+     * @param blockSize maximum number of records per compressed block.
+     * @return CRC32 of the complete file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static long write(Path path, List<WalletTransaction> transactions, int blockSize) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 fileCrc = new CRC32();
+
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempPath)), fileCrc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            long position = HEADER_LENGTH;
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            int entryCount = 0;
+
+            int start = 0;
+            while (start < transactions.size()) {
+                long walletId = transactions.get(start).getWallet().getId();
+
+                // Determine run of records for this wallet, then emit it as one or more blocks.
+                int end = start;
+                while (end < transactions.size() && transactions.get(end).getWallet().getId() == walletId) {
+                    end++;
+                }
+
+                for (int blockStart = start; blockStart < end; blockStart += blockSize) {
+                    int blockEnd = Math.min(blockStart + blockSize, end);
+                    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                    DataOutputStream rawOut = new DataOutputStream(raw);
+
+                    for (int i = blockStart; i < blockEnd; i++) {
+                        writeRecord(rawOut, transactions.get(i));
+                    }
+
+                    byte[] uncompressed = raw.toByteArray();
+                    byte[] compressed = deflate(uncompressed);
+                    CRC32 blockCrc = new CRC32();
+                    blockCrc.update(uncompressed);
+
+                    out.write(compressed);
+
+                    indexOut.writeLong(walletId);
+                    indexOut.writeInt(blockStart - start);
+                    indexOut.writeInt(blockEnd - blockStart);
+                    indexOut.writeLong(position);
+                    indexOut.writeInt(compressed.length);
+                    indexOut.writeInt((int) blockCrc.getValue());
+
+                    position += compressed.length;
+                    entryCount++;
+                }
+
+                start = end;
+            }
+
+            byte[] indexBytes = index.toByteArray();
+            CRC32 indexCrc = new CRC32();
+            indexCrc.update(indexBytes);
+
+            out.write(indexBytes);
+            out.writeLong(position);
+            out.writeInt(entryCount);
+            out.writeInt((int) indexCrc.getValue());
+            out.writeInt(MAGIC);
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        path.toFile().setReadOnly();
+
+        return fileCrc.getValue();
+    }
+
+    /**
+     * Opens a segment file and loads its sparse index. The footer and index checksum are validated, but blocks are
+     * not read - see {@link #verify(long)} for a full integrity check.
+     *
+     * @param path path of the segment file.
+     * @return the opened segment.
+     * @throws IOException if the file cannot be read or is not a valid segment.
+     */
+    public static ColdSegmentFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileLength = channel.size();
+
+            if (fileLength < HEADER_LENGTH + FOOTER_LENGTH) {
+                throw new IOException("Cold segment " + path + " is truncated");
+            }
+
+            ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Cold segment " + path + " has an invalid header");
+            }
+
+            ByteBuffer footer = readFully(channel, fileLength - FOOTER_LENGTH, FOOTER_LENGTH);
+            long indexOffset = footer.getLong();
+            int entryCount = footer.getInt();
+            int indexCrc = footer.getInt();
+
+            if (footer.getInt() != MAGIC
+                    || indexOffset + (long) entryCount * INDEX_ENTRY_LENGTH != fileLength - FOOTER_LENGTH) {
+                throw new IOException("Cold segment " + path + " has an invalid footer");
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, entryCount * INDEX_ENTRY_LENGTH);
+            CRC32 crc = new CRC32();
+            crc.update(index.array());
+
+            if ((int) crc.getValue() != indexCrc) {
+                throw new IOException("Cold segment " + path + " index checksum mismatch");
+            }
+
+            ColdSegmentFile segment = new ColdSegmentFile(path, fileLength, entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                segment.walletIds[i] = index.getLong();
+                segment.firstOrdinals[i] = index.getInt();
+                segment.recordCounts[i] = index.getInt();
+                segment.offsets[i] = index.getLong();
+                segment.lengths[i] = index.getInt();
+                segment.crcs[i] = index.getInt();
+            }
+
+            return segment;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Counts archived transactions for a wallet using only the in-memory index.
+     *
+     * @param walletId wallet id.
+     * @return number of transactions held in this segment for the wallet.
+     */
+    public int count(long walletId) {
+        int count = 0;
+
+        for (int i = firstEntry(walletId); i < walletIds.length && walletIds[i] == walletId; i++) {
+            count += recordCounts[i];
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the number of archived transactions for every wallet in the segment to per-wallet counts, using only the
+     * in-memory index.
+     *
+     * @param counts per-wallet counts to add to.
+     */
+    public void countAll(Map<Long, Long> counts) {
+        for (int i = 0; i < walletIds.length; i++) {
+            counts.merge(walletIds[i], (long) recordCounts[i], Long::sum);
+        }
+    }
+
+    /**
+     * Reads a page of a wallet's archived transactions (newest first), inflating only the blocks overlapping it.
+     *
+     * @param wallet wallet the transactions belong to (set on each returned transaction).
+     * @param skip number of the wallet's transactions in this segment to skip.
+     * @param limit maximum number of transactions to return.
+     * @return list of transactions, possibly empty.
+     * @throws IOException if the segment cannot be read or a block fails its checksum.
+     */
+    public List<WalletTransaction> read(Wallet wallet, int skip, int limit) throws IOException {
+        long walletId = wallet.getId();
+        int entry = firstEntry(walletId);
+
+        if (limit <= 0 || entry >= walletIds.length || walletIds[entry] != walletId) {
+            return Collections.emptyList();
+        }
+
+        List<WalletTransaction> result = new ArrayList<>(Math.min(limit, count(walletId)));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = entry; i < walletIds.length && walletIds[i] == walletId && result.size() < limit; i++) {
+                int blockEnd = firstOrdinals[i] + recordCounts[i];
+
+                if (blockEnd <= skip) {
+                    continue;
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBlock(channel, i)));
+
+                for (int ordinal = firstOrdinals[i]; ordinal < blockEnd && result.size() < limit; ordinal++) {
+                    WalletTransaction transaction = readRecord(in, wallet);
+
+                    if (ordinal >= skip) {
+                        result.add(transaction);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the amounts of every archived transaction for wallets in an id range to per-wallet totals (ledger
+     * reconciliation). Only the blocks for those wallets are read.
+     *
+     * @param fromWalletId first wallet id (inclusive).
+     * @param toWalletId last wallet id (inclusive).
+     * @param totals per-wallet totals to add to.
+     * @throws IOException if the segment cannot be read or a block fails its checksum.
+     */
+    public void sumAmounts(long fromWalletId, long toWalletId, Map<Long, BigDecimal> totals) throws IOException {
+        int entry = firstEntry(fromWalletId);
+
+        if (entry >= walletIds.length || walletIds[entry] > toWalletId) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = entry; i < walletIds.length && walletIds[i] <= toWalletId; i++) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBlock(channel, i)));
+                BigDecimal blockTotal = BigDecimal.ZERO;
+
+                for (int record = 0; record < recordCounts[i]; record++) {
+                    blockTotal = blockTotal.add(readRecord(in, null).getAmount());
+                }
+
+                totals.merge(walletIds[i], blockTotal, BigDecimal::add);
+            }
+        }
+    }
+
+    /**
+     * Full integrity check - validates the whole-file checksum against the catalogue and every block's checksum.
+     *
+     * @param expectedChecksum CRC32 recorded for the file when it was written.
+     * @throws IOException if the file cannot be read or any checksum does not match.
+     */
+    public void verify(long expectedChecksum) throws IOException {
+        CRC32 fileCrc = new CRC32();
+
+        try (InputStream in = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), fileCrc)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // Reading is enough - the checked stream accumulates the checksum.
+            }
+        }
+
+        if (fileCrc.getValue() != expectedChecksum) {
+            throw new IOException("Cold segment " + path + " checksum mismatch");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < walletIds.length; i++) {
+                readBlock(channel, i);
+            }
+        }
+    }
+
+    // Binary search for the first index entry for the wallet (or the insertion point if there is none).
+    private int firstEntry(long walletId) {
+        int low = 0;
+        int high = walletIds.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (walletIds[mid] < walletId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private byte[] readBlock(FileChannel channel, int entry) throws IOException {
+        if (offsets[entry] + lengths[entry] > fileLength) {
+            throw new IOException("Cold segment " + path + " block " + entry + " out of bounds");
+        }
+
+        byte[] compressed = readFully(channel, offsets[entry], lengths[entry]).array();
+        byte[] uncompressed = inflate(compressed);
+
+        CRC32 crc = new CRC32();
+        crc.update(uncompressed);
+
+        if ((int) crc.getValue() != crcs[entry]) {
+            throw new IOException("Cold segment " + path + " block " + entry + " checksum mismatch");
+        }
+
+        return uncompressed;
+    }
+
+    private static void writeRecord(DataOutputStream out, WalletTransaction transaction) throws IOException {
+        // LocalDateTime has no zone - UTC is used purely as a neutral mapping to epoch seconds.
+        LocalDateTime timestamp = transaction.getTimestamp();
+        byte[] unscaled = transaction.getAmount().unscaledValue().toByteArray();
+
+        out.writeLong(transaction.getId());
+        out.writeLong(transaction.getWalletVersion());
+        out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(timestamp.getNano());
+        out.writeInt(transaction.getAmount().scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static WalletTransaction readRecord(DataInputStream in, Wallet wallet) throws IOException {
+        long id = in.readLong();
+        long walletVersion = in.readLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedByte()];
+        in.readFully(unscaled);
+
+        WalletTransaction transaction = new WalletTransaction(wallet, new BigDecimal(new BigInteger(unscaled), scale));
+        transaction.setId(id);
+        transaction.setTimestamp(timestamp);
+        transaction.setWalletVersion(walletVersion);
+
+        return transaction;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater)) {
+            deflaterOut.write(data);
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        Inflater inflater = new Inflater();
+
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data), inflater)) {
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (ZipException ex) {
+            throw new IOException("Corrupt cold segment block", ex);
+        } finally {
+            inflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of cold segment");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+}
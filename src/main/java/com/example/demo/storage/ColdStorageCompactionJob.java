@@ -0,0 +1,272 @@
+package com.example.demo.storage;
+
+import com.example.demo.cluster.ClusterMembership;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.ColdSegmentRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Background job which moves wallet transactions older than a configurable age out of the hot
+ * {@code wallet_transaction} table into cold storage segments, and periodically verifies segment integrity.
+ * <p>
+ * Segments are cut at calendar month boundaries, so each month of history is held in its own segments (a monthly
+ * partition). When a retention period is configured, months older than it are dropped whole - catalogue entries and
+ * files are deleted, and each affected wallet's archived total and count are folded into its opening balance and
+ * transaction count, so no rows are read or deleted.
+ * <p>
+ * Scheduled compaction and retention are disabled in cluster mode: every instance holds the segment catalogue in memory,
+ * loaded at startup, so a segment written or dropped by one instance would be invisible to (or still read by) the
+ * others. Segments archived before the switch to cluster mode remain readable.
+ */
+@Component
+public class ColdStorageCompactionJob {
+    private static final Logger log = LoggerFactory.getLogger(ColdStorageCompactionJob.class);
+
+    // Segment record order - same as the paging order (wallet, then newest first).
+    private static final Comparator<WalletTransaction> SEGMENT_ORDER =
+            Comparator.<WalletTransaction, Long>comparing(tx -> tx.getWallet().getId())
+                    .thenComparing(WalletTransaction::getTimestamp, Comparator.reverseOrder())
+                    .thenComparing(WalletTransaction::getWalletVersion, Comparator.reverseOrder());
+
+    // Dropped months' totals move into the wallet's opening balance (the wallet id column is customer_id). The history
+    // changed, so the version moves on (the transaction count goes down, and could return to a value a client has seen).
+    private static final String FOLD_DROPPED_SQL = "update wallet set opening_balance = opening_balance + ?, "
+            + "transaction_count = transaction_count - ?, version = version + 1, history_start = ? "
+            + "where customer_id = ?";
+
+    // Balance checkpoints before dropped history can no longer be rolled forward (see BalanceCheckpoint).
+    private static final String DELETE_CHECKPOINTS_SQL = "delete from balance_checkpoint where timestamp < ?";
+
+    private final WalletTransactionRepository walletTransactionRepository;
+    private final ColdSegmentRepository coldSegmentRepository;
+    private final ColdTransactionStore coldTransactionStore;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Duration maxHotAge;
+    private final Period retention;
+    private final int maxSegmentRows;
+    private final int blockSize;
+
+    public ColdStorageCompactionJob(WalletTransactionRepository walletTransactionRepository,
+                                    ColdSegmentRepository coldSegmentRepository,
+                                    ColdTransactionStore coldTransactionStore,
+                                    TransactionTemplate transactionTemplate,
+                                    JdbcTemplate jdbcTemplate,
+                                    ClusterMembership membership,
+                                    @Value("${hubpay.cold-storage.enabled:true}") boolean enabled,
+                                    @Value("${hubpay.cold-storage.max-hot-age:P90D}") Duration maxHotAge,
+                                    @Value("${hubpay.cold-storage.retention:}") String retention,
+                                    @Value("${hubpay.cold-storage.max-segment-rows:100000}") int maxSegmentRows,
+                                    @Value("${hubpay.cold-storage.block-size:256}") int blockSize) {
+        this.walletTransactionRepository = walletTransactionRepository;
+        this.coldSegmentRepository = coldSegmentRepository;
+        this.coldTransactionStore = coldTransactionStore;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled && !membership.isEnabled();
+        this.maxHotAge = maxHotAge;
+        this.retention = retention.trim().isEmpty() ? null : Period.parse(retention.trim());
+        this.maxSegmentRows = maxSegmentRows;
+        this.blockSize = blockSize;
+
+        if (enabled && membership.isEnabled()) {
+            log.warn("Cold storage compaction and retention disabled - not supported in cluster mode");
+        }
+    }
+
+    @Scheduled(initialDelayString = "${hubpay.cold-storage.compaction-interval:PT1H}",
+            fixedDelayString = "${hubpay.cold-storage.compaction-interval:PT1H}")
+    public void compactScheduled() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minus(maxHotAge);
+
+        // Keep writing (bounded, single month) segments until everything older than the cutoff has been moved.
+        while (compact(cutoff) > 0) {
+            log.debug("Cold storage compaction continuing - segment row limit or month boundary reached");
+        }
+
+        if (retention != null) {
+            dropExpired(monthStart(now.minus(retention)));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${hubpay.cold-storage.verify-interval:PT24H}",
+            fixedDelayString = "${hubpay.cold-storage.verify-interval:PT24H}")
+    public void verifyScheduled() {
+        List<String> failures = coldTransactionStore.verifyAll();
+
+        if (!failures.isEmpty()) {
+            log.error("Cold storage integrity check failed for {} segment(s): {}", failures.size(), failures);
+        }
+    }
+
+    /**
+     * Moves up to one segment's worth of transactions with a timestamp before the specified cutoff into cold
+     * storage. The segment is written and verified first, then the catalogue entry is saved and the archived rows
+     * deleted from the hot table in a single database transaction.
+     *
+     * @param targetCutoff transactions before this timestamp are eligible for archiving.
+     * @return number of transactions moved to cold storage.
+     */
+    public synchronized int compact(LocalDateTime targetCutoff) {
+        LocalDateTime watermark = coldTransactionStore.getWatermark();
+
+        if (watermark != null && !targetCutoff.isAfter(watermark)) {
+            return 0;
+        }
+
+        List<WalletTransaction> candidates = walletTransactionRepository.findAllByTimestampBeforeOrderByTimestampAsc(
+                targetCutoff, PageRequest.of(0, maxSegmentRows + 1));
+
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime cutoff = targetCutoff;
+
+        // Never span a month boundary - cut at the end of the oldest candidate's month, so each segment belongs to a
+        // single month and retention can drop whole months.
+        LocalDateTime monthEnd = monthStart(candidates.get(0).getTimestamp()).plusMonths(1);
+
+        if (monthEnd.isBefore(cutoff)) {
+            cutoff = monthEnd;
+            candidates = candidates.stream()
+                    .filter(tx -> tx.getTimestamp().isBefore(monthEnd))
+                    .collect(Collectors.toList());
+        }
+
+        // More candidates than fit in one segment - lower the cutoff to the first row that does not fit, so that the
+        // segment holds every row before its cutoff (rows sharing that timestamp wait for the next segment).
+        if (candidates.size() > maxSegmentRows) {
+            LocalDateTime segmentCutoff = candidates.get(maxSegmentRows).getTimestamp();
+
+            cutoff = segmentCutoff;
+            candidates = candidates.subList(0, maxSegmentRows).stream()
+                    .filter(tx -> tx.getTimestamp().isBefore(segmentCutoff))
+                    .collect(Collectors.toList());
+
+            if (candidates.isEmpty()) {
+                log.warn("Cold storage compaction skipped - more than {} transactions share timestamp {}",
+                        maxSegmentRows, segmentCutoff);
+                return 0;
+            }
+        }
+
+        List<WalletTransaction> sorted = new ArrayList<>(candidates);
+        sorted.sort(SEGMENT_ORDER);
+
+        ColdTransactionStore.PublishedSegment segment;
+        try {
+            segment = coldTransactionStore.writeSegment(sorted, cutoff, blockSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        // Publish before deleting - readers switch to the new watermark and stop reading the archived hot rows.
+        coldTransactionStore.publish(segment);
+
+        LocalDateTime deleteBefore = cutoff;
+        int expected = sorted.size();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                coldSegmentRepository.save(segment.segment);
+
+                int deleted = walletTransactionRepository.deleteAllByTimestampBefore(deleteBefore);
+
+                if (deleted != expected) {
+                    throw new IllegalStateException(
+                            "Cold storage compaction expected to delete " + expected + " rows but found " + deleted);
+                }
+            });
+        } catch (RuntimeException ex) {
+            coldTransactionStore.unpublish(segment);
+            throw ex;
+        }
+
+        log.info("Moved {} wallet transactions before {} to cold segment {}", expected, cutoff,
+                segment.segment.getFileName());
+
+        return expected;
+    }
+
+    /**
+     * Drops cold segments with a cutoff at or before the specified boundary (a month start, so whole months are
+     * dropped). For each segment, the archived total and count of every wallet in it are folded into the wallet's
+     * opening balance and transaction count (with the segment cutoff as the start of its retained history), and the
+     * catalogue entry and older balance checkpoints deleted, in a single database transaction - then the segment is
+     * withdrawn from readers and its file deleted.
+     *
+     * @param boundary segments holding only transactions before this timestamp are dropped.
+     * @return number of segments dropped.
+     */
+    public synchronized int dropExpired(LocalDateTime boundary) {
+        List<ColdTransactionStore.PublishedSegment> expired = coldTransactionStore.segmentsBefore(boundary);
+
+        for (ColdTransactionStore.PublishedSegment published : expired) {
+            Map<Long, BigDecimal> totals = new HashMap<>();
+            Map<Long, Long> counts = new HashMap<>();
+
+            try {
+                published.file.sumAmounts(Long.MIN_VALUE, Long.MAX_VALUE, totals);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            published.file.countAll(counts);
+
+            List<Object[]> walletUpdates = new ArrayList<>(counts.size());
+
+            for (Map.Entry<Long, Long> count : counts.entrySet()) {
+                walletUpdates.add(new Object[]{totals.get(count.getKey()), count.getValue(),
+                        published.segment.getCutoff(), count.getKey()});
+            }
+
+            coldTransactionStore.beginDrop();
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(FOLD_DROPPED_SQL, walletUpdates);
+                    jdbcTemplate.update(DELETE_CHECKPOINTS_SQL, published.segment.getCutoff());
+                    coldSegmentRepository.deleteById(published.segment.getId());
+                });
+
+                coldTransactionStore.unpublish(published);
+            } finally {
+                coldTransactionStore.endDrop();
+            }
+
+            log.info("Dropped cold segment {} ({} wallet transactions before {}) - retention boundary {}",
+                    published.segment.getFileName(), published.segment.getRowCount(), published.segment.getCutoff(),
+                    boundary);
+        }
+
+        return expired.size();
+    }
+
+    private static LocalDateTime monthStart(LocalDateTime timestamp) {
+        return timestamp.toLocalDate().withDayOfMonth(1).atStartOfDay();
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.ColdSegment;
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.ColdSegmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Cold tier for wallet transactions - a set of immutable, compressed segment files catalogued in the
+ * {@code cold_segment} table.
+ * <p>
+ * The cold tier holds every transaction with a timestamp before the <i>watermark</i> (the cutoff of the newest
+ * segment), so readers restrict hot-table queries to timestamps at or after the watermark. Because the watermark is
+ * advanced in memory before the archived rows are deleted from the hot table, readers never see a row twice or miss
+ * one while compaction is in progress.
+ * <p>
+ * Segments never span a calendar month, so the cold tier is in effect partitioned by month - retention drops whole
+ * months of segments (see {@link ColdStorageCompactionJob#dropExpired}).
+ */
+@Component
+public class ColdTransactionStore {
+    private static final Logger log = LoggerFactory.getLogger(ColdTransactionStore.class);
+
+    static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private final ColdSegmentRepository coldSegmentRepository;
+    private final Path directory;
+
+    // Published segments, newest first. Replaced wholesale (copy-on-write) so readers can page without locking.
+    private volatile List<PublishedSegment> segments = Collections.emptyList();
+
+    // Incremented before and after a segment is dropped (odd while a drop is in progress) - see getDropSequence.
+    private volatile long dropSequence;
+
+    public ColdTransactionStore(ColdSegmentRepository coldSegmentRepository,
+                                @Value("${hubpay.cold-storage.directory:./data/cold}") String directory) {
+        this.coldSegmentRepository = coldSegmentRepository;
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Opens all catalogued segments and removes orphan segment files (e.g. left behind by a failed compaction or by
+     * a re-created database). Fails startup if a catalogued segment is missing or has an invalid index.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+
+        List<PublishedSegment> opened = new ArrayList<>();
+        Set<Path> catalogued = new HashSet<>();
+
+        for (ColdSegment segment : coldSegmentRepository.findAllByOrderByCutoffAsc()) {
+            Path path = directory.resolve(segment.getFileName());
+
+            opened.add(0, new PublishedSegment(segment, ColdSegmentFile.open(path)));
+            catalogued.add(path);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!catalogued.contains(file)) {
+                    log.info("Removing orphan cold segment file {}", file);
+                    file.toFile().setWritable(true);
+                    Files.delete(file);
+                }
+            }
+        }
+
+        segments = Collections.unmodifiableList(opened);
+    }
+
+    /**
+     * Gets the cold storage watermark.
+     *
+     * @return cutoff of the newest segment, or {@code null} if the cold tier is empty.
+     */
+    public LocalDateTime getWatermark() {
+        List<PublishedSegment> current = segments;
+
+        return current.isEmpty() ? null : current.get(0).segment.getCutoff();
+    }
+
+    /**
+     * Gets the drop sequence, which changes whenever a segment is dropped by retention (and is odd while a drop is in
+     * progress). Readers which total archived transactions alongside wallet balances (ledger reconciliation) read it
+     * before and after, and read again if it was odd or changed.
+     *
+     * @return drop sequence.
+     */
+    public long getDropSequence() {
+        return dropSequence;
+    }
+
+    /**
+     * Counts a wallet's archived transactions (index lookups only - no segment blocks are read).
+     *
+     * @param walletId wallet id.
+     * @return number of archived transactions.
+     */
+    public long count(Long walletId) {
+        long count = 0;
+
+        for (PublishedSegment published : segments) {
+            count += published.file.count(walletId);
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads a page of a wallet's archived transactions, newest first, across all segments.
+     *
+     * @param wallet the wallet.
+     * @param skip number of archived transactions to skip.
+     * @param limit maximum number of transactions to return.
+     * @return list of transactions, possibly empty.
+     */
+    public List<WalletTransaction> page(Wallet wallet, long skip, int limit) {
+        List<WalletTransaction> result = new ArrayList<>();
+
+        try {
+            for (PublishedSegment published : segments) {
+                if (result.size() >= limit) {
+                    break;
+                }
+
+                int count = published.file.count(wallet.getId());
+
+                // Whole segment falls before the requested page - skip it using the index alone.
+                if (skip >= count) {
+                    skip -= count;
+                    continue;
+                }
+
+                result.addAll(published.file.read(wallet, (int) skip, limit - result.size()));
+                skip = 0;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return result;
+    }
+
+    /**
+     * Totals the amounts of archived transactions for wallets in an id range, across all segments.
+     *
+     * @param fromWalletId first wallet id (inclusive).
+     * @param toWalletId last wallet id (inclusive).
+     * @return map of wallet id to total (wallets without archived transactions are absent).
+     */
+    public Map<Long, BigDecimal> sumAmounts(long fromWalletId, long toWalletId) {
+        Map<Long, BigDecimal> totals = new HashMap<>();
+
+        try {
+            for (PublishedSegment published : segments) {
+                published.file.sumAmounts(fromWalletId, toWalletId, totals);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return totals;
+    }
+
+    /**
+     * Totals the amounts of a wallet's archived transactions in a time range (as-of balance queries). Only segments
+     * overlapping the range are read, and within them only the wallet's blocks.
+     *
+     * @param wallet the wallet.
+     * @param afterTimestamp transactions before this timestamp (or at it, with a wallet version no greater than
+     *                       afterVersion) are excluded - {@code null} to include every transaction up to the end of
+     *                       the range.
+     * @param afterVersion see afterTimestamp.
+     * @param to transactions after this timestamp are excluded.
+     * @param watermark segments with a later cutoff are excluded (their transactions are read from the hot table).
+     * @return total, zero if there are none.
+     */
+    public BigDecimal sumAmounts(Wallet wallet, LocalDateTime afterTimestamp, long afterVersion, LocalDateTime to,
+                                 LocalDateTime watermark) {
+        List<PublishedSegment> current = segments;
+        BigDecimal total = BigDecimal.ZERO;
+
+        try {
+            for (int i = 0; i < current.size(); i++) {
+                PublishedSegment published = current.get(i);
+                LocalDateTime cutoff = published.segment.getCutoff();
+
+                // A segment holds transactions from the next older segment's cutoff up to (not including) its own.
+                if (cutoff.isAfter(watermark)
+                        || (i + 1 < current.size() && current.get(i + 1).segment.getCutoff().isAfter(to))) {
+                    continue;
+                }
+
+                // This and every older segment lie wholly before the range.
+                if (afterTimestamp != null && !cutoff.isAfter(afterTimestamp)) {
+                    break;
+                }
+
+                int count = published.file.count(wallet.getId());
+
+                if (count == 0) {
+                    continue;
+                }
+
+                for (WalletTransaction transaction : published.file.read(wallet, 0, count)) {
+                    LocalDateTime timestamp = transaction.getTimestamp();
+
+                    if (!timestamp.isAfter(to) && (afterTimestamp == null || timestamp.isAfter(afterTimestamp)
+                            || (timestamp.isEqual(afterTimestamp) && transaction.getWalletVersion() > afterVersion))) {
+                        total = total.add(transaction.getAmount());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return total;
+    }
+
+    /**
+     * Writes a new segment file (not yet visible to readers).
+     *
+     * @param transactions transactions sorted by wallet id ascending, then timestamp and wallet version descending.
+     * @param blockSize maximum records per compressed block.
+     * @return the (unsaved) catalogue entry and the opened, fully verified segment file.
+     */
+    PublishedSegment writeSegment(List<WalletTransaction> transactions, LocalDateTime cutoff, int blockSize)
+            throws IOException {
+        String fileName = "segment-" + UUID.randomUUID() + SEGMENT_FILE_SUFFIX;
+        Path path = directory.resolve(fileName);
+
+        long checksum = ColdSegmentFile.write(path, transactions, blockSize);
+
+        try {
+            ColdSegmentFile file = ColdSegmentFile.open(path);
+
+            // Read back before anything references the segment - never delete hot rows on the strength of a bad file.
+            file.verify(checksum);
+
+            return new PublishedSegment(new ColdSegment(fileName, cutoff, transactions.size(), checksum), file);
+        } catch (IOException ex) {
+            discard(path);
+            throw ex;
+        }
+    }
+
+    // Makes a segment visible to readers (advancing the watermark).
+    synchronized void publish(PublishedSegment segment) {
+        List<PublishedSegment> updated = new ArrayList<>(segments);
+        updated.add(0, segment);
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    // Published segments with a cutoff at or before the specified time, oldest first.
+    List<PublishedSegment> segmentsBefore(LocalDateTime boundary) {
+        List<PublishedSegment> before = new ArrayList<>();
+
+        for (PublishedSegment published : segments) {
+            if (!published.segment.getCutoff().isAfter(boundary)) {
+                before.add(0, published);
+            }
+        }
+
+        return before;
+    }
+
+    // Brackets dropping a segment (catalogue and wallet updates, then unpublish).
+    synchronized void beginDrop() {
+        dropSequence++;
+    }
+
+    synchronized void endDrop() {
+        dropSequence++;
+    }
+
+    // Withdraws a segment (one that failed to be committed to the catalogue, or has been dropped) and deletes its file.
+    synchronized void unpublish(PublishedSegment segment) {
+        List<PublishedSegment> updated = new ArrayList<>(segments);
+        updated.remove(segment);
+        segments = Collections.unmodifiableList(updated);
+
+        discard(segment.file.getPath());
+    }
+
+    /**
+     * Full integrity check of every published segment (file checksum plus every block checksum).
+     *
+     * @return list of file names that failed verification (empty if all segments are intact).
+     */
+    public List<String> verifyAll() {
+        List<String> failures = new ArrayList<>();
+
+        for (PublishedSegment published : segments) {
+            try {
+                published.file.verify(published.segment.getChecksum());
+            } catch (IOException ex) {
+                log.error("Cold segment {} failed integrity check: {}", published.segment.getFileName(),
+                        ex.getMessage());
+                failures.add(published.segment.getFileName());
+            }
+        }
+
+        return failures;
+    }
+
+    private void discard(Path path) {
+        try {
+            path.toFile().setWritable(true);
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            // Left for orphan clean-up at next startup.
+            log.warn("Unable to delete cold segment file {}", path, ex);
+        }
+    }
+
+    // Catalogue entry paired with its opened segment file.
+    static final class PublishedSegment {
+        final ColdSegment segment;
+        final ColdSegmentFile file;
+
+        PublishedSegment(ColdSegment segment, ColdSegmentFile file) {
+            this.segment = segment;
+            this.file = file;
+        }
+    }
+}
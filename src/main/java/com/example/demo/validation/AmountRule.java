@@ -0,0 +1,75 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+
+import java.math.BigDecimal;
+
+/**
+ * Compiled amount rule for one operation (and tier) - bounds plus maximum number of decimal places. Rejection
+ * exceptions (and their messages) are built once at compile time, so rejecting a request allocates nothing.
+ */
+public final class AmountRule {
+    private final BigDecimal minimum;
+    private final BigDecimal maximum;
+    private final int maxScale;
+
+    private final ValidationException missing;
+    private final ValidationException tooLow;
+    private final ValidationException tooHigh;
+    private final ValidationException tooPrecise;
+
+    AmountRule(FundsOperation operation, BigDecimal minimum, BigDecimal maximum, int maxScale) {
+        if (minimum.signum() <= 0 || minimum.compareTo(maximum) > 0 || maxScale < 0) {
+            throw new IllegalArgumentException("Invalid " + operation.getKey() + " rule: minimum " + minimum
+                    + ", maximum " + maximum + ", max scale " + maxScale);
+        }
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.maxScale = maxScale;
+
+        String label = operation.getLabel();
+        this.missing = new ValidationException(label + " amount is required");
+        this.tooLow = new ValidationException(label + " amount must be at least " + minimum);
+        this.tooHigh = new ValidationException(label + " amount must not exceed " + maximum);
+        this.tooPrecise = new ValidationException(label + " amount must not have more than " + maxScale
+                + " decimal places");
+    }
+
+    /**
+     * Checks an amount against this rule.
+     *
+     * @param amount amount (a positive number for both deposits and withdrawals).
+     * @return the rejection, or {@code null} if the amount is valid.
+     */
+    public ValidationException check(BigDecimal amount) {
+        if (amount == null) {
+            return missing;
+        } else if (amount.compareTo(minimum) < 0) {
+            return tooLow;
+        } else if (amount.compareTo(maximum) > 0) {
+            return tooHigh;
+        } else if (amount.scale() > maxScale && amount.stripTrailingZeros().scale() > maxScale) {
+            return tooPrecise;
+        }
+
+        return null;
+    }
+
+    public BigDecimal getMinimum() {
+        return minimum;
+    }
+
+    public BigDecimal getMaximum() {
+        return maximum;
+    }
+
+    public int getMaxScale() {
+        return maxScale;
+    }
+
+    boolean sameLimits(AmountRule other) {
+        return minimum.compareTo(other.minimum) == 0 && maximum.compareTo(other.maximum) == 0
+                && maxScale == other.maxScale;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.demo.validation;
+
+// Wallet funds operations subject to amount validation rules.
+public enum FundsOperation {
+    DEPOSIT("deposit", "Deposit"),
+    WITHDRAWAL("withdrawal", "Withdrawal");
+
+    // Key prefix in the validation rules file (e.g. 'deposit.max').
+    private final String key;
+    // Label used in rejection messages.
+    private final String label;
+
+    FundsOperation(String key, String label) {
+        this.key = key;
+        this.label = label;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.validation;
+
+/**
+ * Bucketed sliding-window total (e.g. of one wallet's withdrawals over the past hour). The window is divided into a
+ * fixed number of buckets held in a ring along with a running total, so reading the total or adding to it is O(1)
+ * (amortised - expired buckets are cleared as time moves on, at most one pass over the ring) and allocates nothing.
+ * <p>
+ * One bucket more than the window needs is kept, so the total covers between one window and one window plus one
+ * bucket of history - a limit checked against it errs on the side of rejecting.
+ * <p>
+ * Not thread-safe - callers synchronize.
+ */
+final class SlidingWindowCounter {
+    private final long bucketMillis;
+    private final long[] buckets;
+
+    // Absolute index (epoch millis / bucket millis) of the newest bucket.
+    private long newestBucket;
+    private long total;
+
+    SlidingWindowCounter(long windowMillis, int bucketCount) {
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.buckets = new long[bucketCount + 1];
+    }
+
+    long total(long nowMillis) {
+        advance(nowMillis / bucketMillis);
+        return total;
+    }
+
+    /**
+     * Adds to the bucket for the specified time (ignored if the bucket has already left the window).
+     *
+     * @param timeMillis epoch millis of the amount (at or before now).
+     * @param nowMillis current epoch millis.
+     * @param amount amount to add (negative to remove a previously added amount).
+     */
+    void add(long timeMillis, long nowMillis, long amount) {
+        advance(nowMillis / bucketMillis);
+
+        long bucket = timeMillis / bucketMillis;
+
+        if (bucket > newestBucket - buckets.length && bucket <= newestBucket) {
+            buckets[(int) (bucket % buckets.length)] += amount;
+            total += amount;
+        }
+    }
+
+    private void advance(long bucket) {
+        if (bucket <= newestBucket) {
+            return;
+        }
+
+        // Clear buckets which have left the window (every bucket, if the counter has been idle for a whole window).
+        long steps = Math.min(bucket - newestBucket, buckets.length);
+
+        for (long i = 1; i <= steps; i++) {
+            int index = (int) ((newestBucket + i) % buckets.length);
+            total -= buckets[index];
+            buckets[index] = 0;
+        }
+
+        newestBucket = bucket;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Immutable, compiled set of funds validation rules - default rules per operation plus optional per-wallet-tier
+ * overrides.
+ * <p>
+ * Validation happens in two stages. {@link #precheck} needs no wallet and checks the <i>envelope</i> rule (the loosest
+ * limits across all tiers), so that most invalid requests are rejected before a transaction is begun or the wallet is
+ * loaded. {@link #checkTier} then applies the wallet's own tier rule, and is skipped entirely when that rule is the
+ * envelope itself (always the case when no tier overrides are configured).
+ * <p>
+ * Rules file format (properties - every key optional, falling back to the built-in defaults):
+ * <pre>
+ * deposit.min=10
+ * deposit.max=10000
+ * deposit.max-scale=2
+ * withdrawal.min=0.01
+ * withdrawal.max=5000
+ * withdrawal.max-scale=2
+ * tier.PREMIUM.deposit.max=50000
+ * </pre>
+ */
+public final class ValidationRuleSet {
+    private static final String TIER_PREFIX = "tier.";
+
+    private final Map<FundsOperation, AmountRule> defaultRules;
+    private final Map<FundsOperation, AmountRule> envelopeRules;
+    private final Map<String, Map<FundsOperation, AmountRule>> tierRules;
+
+    private ValidationRuleSet(Map<FundsOperation, AmountRule> defaultRules,
+                              Map<FundsOperation, AmountRule> envelopeRules,
+                              Map<String, Map<FundsOperation, AmountRule>> tierRules) {
+        this.defaultRules = defaultRules;
+        this.envelopeRules = envelopeRules;
+        this.tierRules = tierRules;
+    }
+
+    /**
+     * Compiles a rule set.
+     *
+     * @param rules configured rules (may be empty).
+     * @param defaults built-in defaults for each operation's {@code min}, {@code max} and {@code max-scale}.
+     * @return the compiled rule set.
+     * @throws IllegalArgumentException if the rules are invalid (e.g. unparseable or minimum above maximum).
+     */
+    public static ValidationRuleSet compile(Properties rules, Properties defaults) {
+        Map<FundsOperation, AmountRule> defaultRules = new EnumMap<>(FundsOperation.class);
+
+        for (FundsOperation operation : FundsOperation.values()) {
+            defaultRules.put(operation, compileRule(operation, "", rules, defaults));
+        }
+
+        // Collect tier names from keys of the form 'tier.<name>.<operation>.<limit>'.
+        Set<String> tiers = new TreeSet<>();
+        for (String key : rules.stringPropertyNames()) {
+            if (key.startsWith(TIER_PREFIX) && key.indexOf('.', TIER_PREFIX.length()) > 0) {
+                tiers.add(key.substring(TIER_PREFIX.length(), key.indexOf('.', TIER_PREFIX.length())));
+            }
+        }
+
+        Map<String, Map<FundsOperation, AmountRule>> tierRules = new HashMap<>();
+        Map<FundsOperation, AmountRule> envelopeRules = new EnumMap<>(FundsOperation.class);
+
+        for (FundsOperation operation : FundsOperation.values()) {
+            AmountRule defaultRule = defaultRules.get(operation);
+            BigDecimal minimum = defaultRule.getMinimum();
+            BigDecimal maximum = defaultRule.getMaximum();
+            int maxScale = defaultRule.getMaxScale();
+
+            for (String tier : tiers) {
+                // Tier rules inherit any limit they do not override from the default rule.
+                Properties tierDefaults = new Properties();
+                tierDefaults.setProperty(operation.getKey() + ".min", defaultRule.getMinimum().toPlainString());
+                tierDefaults.setProperty(operation.getKey() + ".max", defaultRule.getMaximum().toPlainString());
+                tierDefaults.setProperty(operation.getKey() + ".max-scale", String.valueOf(defaultRule.getMaxScale()));
+
+                AmountRule tierRule = compileRule(operation, TIER_PREFIX + tier + ".", rules, tierDefaults);
+                tierRules.computeIfAbsent(tier, name -> new EnumMap<>(FundsOperation.class)).put(operation, tierRule);
+
+                minimum = minimum.min(tierRule.getMinimum());
+                maximum = maximum.max(tierRule.getMaximum());
+                maxScale = Math.max(maxScale, tierRule.getMaxScale());
+            }
+
+            AmountRule envelope = new AmountRule(operation, minimum, maximum, maxScale);
+            envelopeRules.put(operation, envelope.sameLimits(defaultRule) ? defaultRule : envelope);
+        }
+
+        // Share envelope instances with any tier rule that has the same limits, so checkTier can skip them.
+        for (Map<FundsOperation, AmountRule> rulesForTier : tierRules.values()) {
+            for (FundsOperation operation : FundsOperation.values()) {
+                if (rulesForTier.get(operation).sameLimits(envelopeRules.get(operation))) {
+                    rulesForTier.put(operation, envelopeRules.get(operation));
+                }
+            }
+        }
+
+        return new ValidationRuleSet(defaultRules, envelopeRules, tierRules);
+    }
+
+    /**
+     * Checks an amount against the loosest limits of any tier - requires no wallet.
+     *
+     * @param operation funds operation.
+     * @param amount amount (positive for both deposits and withdrawals).
+     * @return the rejection, or {@code null} if the amount is valid for at least one tier.
+     */
+    public ValidationException precheck(FundsOperation operation, BigDecimal amount) {
+        return envelopeRules.get(operation).check(amount);
+    }
+
+    /**
+     * Checks an amount which has passed {@link #precheck} against the wallet's tier rule.
+     *
+     * @param operation funds operation.
+     * @param tier the wallet's tier ({@code null} or an unknown tier means the default rules apply).
+     * @param amount amount (positive for both deposits and withdrawals).
+     * @return the rejection, or {@code null} if the amount is valid for the tier.
+     */
+    public ValidationException checkTier(FundsOperation operation, String tier, BigDecimal amount) {
+        AmountRule rule = ruleFor(operation, tier);
+
+        return rule == envelopeRules.get(operation) ? null : rule.check(amount);
+    }
+
+    /**
+     * Gets the rule which applies to a wallet tier.
+     *
+     * @param operation funds operation.
+     * @param tier wallet tier ({@code null} for the default rules).
+     * @return the applicable rule.
+     */
+    public AmountRule ruleFor(FundsOperation operation, String tier) {
+        Map<FundsOperation, AmountRule> rulesForTier = tier == null ? null : tierRules.get(tier);
+
+        return rulesForTier == null ? defaultRules.get(operation) : rulesForTier.get(operation);
+    }
+
+    private static AmountRule compileRule(FundsOperation operation, String prefix, Properties rules,
+                                          Properties defaults) {
+        String key = operation.getKey();
+
+        try {
+            BigDecimal minimum = new BigDecimal(
+                    rules.getProperty(prefix + key + ".min", defaults.getProperty(key + ".min")).trim());
+            BigDecimal maximum = new BigDecimal(
+                    rules.getProperty(prefix + key + ".max", defaults.getProperty(key + ".max")).trim());
+            int maxScale = Integer.parseInt(
+                    rules.getProperty(prefix + key + ".max-scale", defaults.getProperty(key + ".max-scale")).trim());
+
+            return new AmountRule(operation, minimum, maximum, maxScale);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value in " + prefix + key + " rule: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.validation;
+
+import com.example.demo.service.WalletService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+/**
+ * Holds the current {@link ValidationRuleSet}, compiled from an optional external rules file and reloaded when the
+ * file changes. Readers always see a complete, immutable rule set - a reload swaps the reference, and a rules file
+ * that fails to compile is logged and ignored (the previous rules stay in force).
+ */
+@Component
+public class ValidationRules {
+    private static final Logger log = LoggerFactory.getLogger(ValidationRules.class);
+
+    private final Path rulesFile;
+    private volatile ValidationRuleSet current;
+    // Modified time of the file version last loaded, or that failed to load - each version is only tried (and an
+    // invalid one reported) once.
+    private volatile FileTime loadedModifiedTime;
+
+    public ValidationRules(@Value("${hubpay.validation.rules-file:}") String rulesFile) throws IOException {
+        this.rulesFile = rulesFile.isEmpty() ? null : Paths.get(rulesFile);
+
+        // Fail fast at startup on an invalid rules file (but a missing one just means the defaults apply).
+        this.current = load();
+    }
+
+    /**
+     * Gets the current rule set. Callers should fetch it once per operation so that a request is validated against
+     * a single, consistent set of rules even if a reload happens concurrently.
+     *
+     * @return current rule set.
+     */
+    public ValidationRuleSet current() {
+        return current;
+    }
+
+    @Scheduled(initialDelayString = "${hubpay.validation.reload-interval:PT10S}",
+            fixedDelayString = "${hubpay.validation.reload-interval:PT10S}")
+    public void reloadIfChanged() {
+        FileTime modifiedTime = null;
+
+        try {
+            modifiedTime = rulesFile != null && Files.exists(rulesFile) ? Files.getLastModifiedTime(rulesFile) : null;
+
+            if (modifiedTime == null ? loadedModifiedTime != null : !modifiedTime.equals(loadedModifiedTime)) {
+                current = load();
+                log.info("Reloaded validation rules from {}", rulesFile);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // Not tried again until the file changes.
+            if (modifiedTime != null) {
+                loadedModifiedTime = modifiedTime;
+            }
+            log.error("Unable to reload validation rules from {} - keeping previous rules: {}", rulesFile,
+                    ex.getMessage());
+        }
+    }
+
+    private ValidationRuleSet load() throws IOException {
+        Properties rules = new Properties();
+        FileTime modifiedTime = null;
+
+        if (rulesFile != null && Files.exists(rulesFile)) {
+            modifiedTime = Files.getLastModifiedTime(rulesFile);
+
+            try (InputStream in = Files.newInputStream(rulesFile)) {
+                rules.load(in);
+            }
+        }
+
+        ValidationRuleSet ruleSet = ValidationRuleSet.compile(rules, defaults());
+        loadedModifiedTime = modifiedTime;
+
+        return ruleSet;
+    }
+
+    // Built-in defaults - used for any limit not set in the rules file.
+    private static Properties defaults() {
+        Properties defaults = new Properties();
+
+        defaults.setProperty("deposit.min", WalletService.MINIMUM_DEPOSIT_AMOUNT.toPlainString());
+        defaults.setProperty("deposit.max", WalletService.MAXIMUM_DEPOSIT_AMOUNT.toPlainString());
+        defaults.setProperty("deposit.max-scale", String.valueOf(WalletService.MAXIMUM_AMOUNT_SCALE));
+        defaults.setProperty("withdrawal.min", WalletService.MINIMUM_WITHDRAWAL_AMOUNT.toPlainString());
+        defaults.setProperty("withdrawal.max", WalletService.MAXIMUM_WITHDRAWAL_AMOUNT.toPlainString());
+        defaults.setProperty("withdrawal.max-scale", String.valueOf(WalletService.MAXIMUM_AMOUNT_SCALE));
+
+        return defaults;
+    }
+}
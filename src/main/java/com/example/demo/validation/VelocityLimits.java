@@ -0,0 +1,293 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+import com.example.demo.repository.WalletTransactionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-wallet withdrawal velocity limits - a maximum withdrawal total per sliding window (e.g. per hour and per 24
+ * hours), configured by {@code hubpay.velocity.withdrawal-limits} as comma-separated {@code window=maximum} pairs.
+ * <p>
+ * Each wallet's recent withdrawals are kept in memory as one {@link SlidingWindowCounter} per limit, so checking a
+ * withdrawal needs no database query. The counters record the wallet version they are current for (see
+ * {@code Wallet.version}) - every transaction of the wallet on this instance moves it on, so a different version means
+ * the wallet was changed elsewhere (by another cluster member, a bulk adjustment or a retention drop). Counters are
+ * rebuilt from {@code wallet_transaction} (one indexed range query over the longest window) when they are not in
+ * memory or are stale. Callers hold the wallet's row lock, so every earlier transaction of the wallet has completed
+ * and a rebuild sees all of its withdrawals.
+ * <p>
+ * A withdrawal's amount is reserved when it passes the check and released again if its transaction rolls back. At
+ * most {@code hubpay.velocity.max-wallets} wallets are held - wallets with a transaction in flight are never evicted.
+ * Amounts are counted in cents, rounded up.
+ */
+@Component
+public class VelocityLimits {
+    private final WalletTransactionRepository walletTransactionRepository;
+    private final List<Limit> limits;
+    private final int bucketCount;
+    private final int maxWallets;
+    private final Duration longestWindow;
+
+    private final ConcurrentHashMap<Long, WalletCounters> wallets = new ConcurrentHashMap<>();
+
+    public VelocityLimits(WalletTransactionRepository walletTransactionRepository,
+                          @Value("${hubpay.velocity.withdrawal-limits:}") String withdrawalLimits,
+                          @Value("${hubpay.velocity.buckets:60}") int bucketCount,
+                          @Value("${hubpay.velocity.max-wallets:100000}") int maxWallets) {
+        this.walletTransactionRepository = walletTransactionRepository;
+        this.limits = parse(withdrawalLimits);
+        this.bucketCount = bucketCount;
+        this.maxWallets = maxWallets;
+        this.longestWindow = limits.stream().map(limit -> limit.window).max(Duration::compareTo).orElse(Duration.ZERO);
+    }
+
+    /**
+     * Checks a withdrawal against every velocity limit and, if it is within them, reserves its amount. Must be called
+     * within the withdrawal's transaction, holding the wallet's row lock - the reservation is released if the
+     * transaction rolls back.
+     *
+     * @param walletId id of the wallet.
+     * @param walletVersion version of the wallet before the withdrawal.
+     * @param amount amount of the withdrawal (a positive number).
+     * @return the rejection, or {@code null} if the withdrawal is within all limits (and has been reserved).
+     */
+    public ValidationException reserveWithdrawal(Long walletId, long walletVersion, BigDecimal amount) {
+        if (limits.isEmpty()) {
+            return null;
+        }
+
+        long cents = toCents(amount);
+        long nowMillis = System.currentTimeMillis();
+        WalletCounters counters = counters(walletId, walletVersion, nowMillis);
+
+        synchronized (counters) {
+            for (int i = 0; i < limits.size(); i++) {
+                if (counters.windows[i].total(nowMillis) + cents > limits.get(i).maximumCents) {
+                    return limits.get(i).rejection;
+                }
+            }
+
+            for (SlidingWindowCounter window : counters.windows) {
+                window.add(nowMillis, nowMillis, cents);
+            }
+        }
+
+        advance(counters, walletVersion, nowMillis, cents);
+
+        return null;
+    }
+
+    /**
+     * Keeps a wallet's counters current through a deposit (which changes the wallet version, but not the counters).
+     * Must be called within the deposit's transaction, holding the wallet's row lock.
+     *
+     * @param walletId id of the wallet.
+     * @param walletVersion version of the wallet before the deposit.
+     */
+    public void recordDeposit(Long walletId, long walletVersion) {
+        WalletCounters counters = wallets.get(walletId);
+
+        if (counters != null) {
+            advance(counters, walletVersion, 0, 0);
+        }
+    }
+
+    // Number of wallets currently held in memory.
+    int size() {
+        return wallets.size();
+    }
+
+    // Counters current for the wallet version - the caller's row lock keeps other threads from changing the wallet
+    // meanwhile (completions of earlier transactions only release their reservations).
+    private WalletCounters counters(Long walletId, long walletVersion, long nowMillis) {
+        WalletCounters counters = wallets.get(walletId);
+
+        if (counters != null) {
+            synchronized (counters) {
+                if (counters.version == walletVersion) {
+                    return counters;
+                }
+            }
+        }
+
+        // Built outside the map so the query does not block other wallets.
+        WalletCounters built = rebuild(walletId, walletVersion, nowMillis);
+        wallets.put(walletId, built);
+        evictIfFull();
+
+        return built;
+    }
+
+    // Moves the counters on to the version the caller's transaction commits - until it completes, the wallet is not
+    // evicted. On rollback, the reservation (if any) is released and the version put back.
+    private void advance(WalletCounters counters, long walletVersion, long reservedMillis, long cents) {
+        boolean synchronizing = TransactionSynchronizationManager.isSynchronizationActive();
+
+        synchronized (counters) {
+            // Stale counters (left behind by a rebuild) are never used again.
+            if (counters.version != walletVersion) {
+                return;
+            }
+
+            counters.version = walletVersion + 1;
+
+            if (synchronizing) {
+                counters.inFlight++;
+            }
+        }
+
+        if (synchronizing) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    complete(counters, walletVersion, reservedMillis, cents, status == STATUS_COMMITTED);
+                }
+            });
+        }
+    }
+
+    private static void complete(WalletCounters counters, long walletVersion, long reservedMillis, long cents,
+                                 boolean committed) {
+        long nowMillis = System.currentTimeMillis();
+
+        synchronized (counters) {
+            counters.inFlight--;
+
+            if (committed) {
+                return;
+            }
+
+            for (SlidingWindowCounter window : counters.windows) {
+                window.add(reservedMillis, nowMillis, -cents);
+            }
+
+            if (counters.version == walletVersion + 1) {
+                counters.version = walletVersion;
+            }
+        }
+    }
+
+    private WalletCounters rebuild(Long walletId, long walletVersion, long nowMillis) {
+        WalletCounters counters = new WalletCounters(limits, bucketCount, walletVersion);
+        LocalDateTime since = LocalDateTime.now().minus(longestWindow);
+        ZoneId zone = ZoneId.systemDefault();
+
+        for (Object[] withdrawal : walletTransactionRepository.findWithdrawalsSince(walletId, since)) {
+            long timeMillis = ((LocalDateTime) withdrawal[0]).atZone(zone).toInstant().toEpochMilli();
+            long cents = toCents(((BigDecimal) withdrawal[1]).negate());
+
+            for (SlidingWindowCounter window : counters.windows) {
+                window.add(timeMillis, nowMillis, cents);
+            }
+        }
+
+        return counters;
+    }
+
+    // Arbitrary (not least recently used) eviction - an evicted wallet costs one range query on its next withdrawal.
+    // Wallets with a transaction in flight are skipped, so a reservation is never dropped before it commits.
+    private void evictIfFull() {
+        Iterator<Map.Entry<Long, WalletCounters>> entries = wallets.entrySet().iterator();
+
+        while (wallets.size() > maxWallets && entries.hasNext()) {
+            Map.Entry<Long, WalletCounters> entry = entries.next();
+            WalletCounters counters = entry.getValue();
+
+            synchronized (counters) {
+                if (counters.inFlight == 0) {
+                    wallets.remove(entry.getKey(), counters);
+                }
+            }
+        }
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.UP).unscaledValue().longValueExact();
+    }
+
+    private static List<Limit> parse(String withdrawalLimits) {
+        List<Limit> limits = new ArrayList<>();
+
+        for (String limit : StringUtils.commaDelimitedListToStringArray(withdrawalLimits)) {
+            String[] parts = limit.trim().split("=");
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid velocity limit '" + limit + "' - expected window=maximum");
+            }
+
+            limits.add(new Limit(Duration.parse(parts[0].trim()), new BigDecimal(parts[1].trim())));
+        }
+
+        return limits;
+    }
+
+    // Compiled limit - the rejection is built once, like AmountRule's.
+    private static final class Limit {
+        private final Duration window;
+        private final long maximumCents;
+        private final ValidationException rejection;
+
+        Limit(Duration window, BigDecimal maximum) {
+            if (window.isNegative() || window.isZero() || maximum.signum() <= 0) {
+                throw new IllegalArgumentException("Invalid velocity limit: " + maximum + " per " + window);
+            }
+
+            this.window = window;
+            this.maximumCents = toCents(maximum);
+            this.rejection = new ValidationException("Withdrawal rejected - withdrawals would exceed " + maximum
+                    + " per " + describe(window));
+        }
+
+        // In the largest unit the window is a whole number of, e.g. "hour", "90 minutes" or "30 seconds".
+        private static String describe(Duration window) {
+            if (window.toMillis() % 3_600_000 == 0) {
+                return describe(window.toHours(), "hour");
+            }
+            if (window.toMillis() % 60_000 == 0) {
+                return describe(window.toMinutes(), "minute");
+            }
+            if (window.toMillis() % 1000 == 0) {
+                return describe(window.getSeconds(), "second");
+            }
+
+            return describe(window.toMillis(), "millisecond");
+        }
+
+        private static String describe(long count, String unit) {
+            return count == 1 ? unit : count + " " + unit + "s";
+        }
+    }
+
+    // Guarded by its own monitor.
+    private static final class WalletCounters {
+        private final SlidingWindowCounter[] windows;
+        // Wallet version the counters are current for.
+        private long version;
+        // Transactions of the wallet which have moved the version on, but not yet completed.
+        private int inFlight;
+
+        WalletCounters(List<Limit> limits, int bucketCount, long version) {
+            this.windows = new SlidingWindowCounter[limits.size()];
+            this.version = version;
+
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = new SlidingWindowCounter(limits.get(i).window.toMillis(), bucketCount);
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
+alter table wallet add constraint fk_wallet_customer foreign key (customer_id) references customer;
+
 insert into customer (id, name) values (1, 'Joe Bloggs');
 insert into customer (id, name) values (2, 'John Smith');
 insert into customer (id, name) values (3, 'Fred Truman');
 
-insert into wallet (customer_id, balance) values (1, 200.00);
-insert into wallet (customer_id, balance) values (2, 3500.00);
-insert into wallet (customer_id, balance) values (3, 675.00);
+insert into wallet (customer_id, balance, opening_balance, transaction_count, version) values (1, 200.00, 200.00, 0, 0);
+insert into wallet (customer_id, balance, opening_balance, transaction_count, version) values (2, 3500.00, 3500.00, 0, 0);
+insert into wallet (customer_id, balance, opening_balance, transaction_count, version) values (3, 675.00, 675.00, 0, 0);
@@ -0,0 +1,134 @@
+package com.example.demo.adjustment;
+
+import com.example.demo.api.AdjustmentRunResponse;
+import com.example.demo.exception.ValidationException;
+import com.example.demo.model.AdjustmentRun;
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.model.Wallet;
+import com.example.demo.reconciliation.LedgerReconciliationJob;
+import com.example.demo.repository.AdjustmentRunRepository;
+import com.example.demo.repository.OutboxEventRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+
+// Separate (in-memory) database, as every wallet balance is adjusted. One wallet per chunk.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:adjustment-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/adjustment-test/cold",
+        "hubpay.reconciliation.report-directory=target/adjustment-test/reports",
+        "hubpay.adjustment.chunk-size=1",
+        "hubpay.outbox.enabled=false"
+})
+public class BulkAdjustmentJobTest {
+    @Autowired
+    private BulkAdjustmentJob adjustmentJob;
+
+    @Autowired
+    private AdjustmentRunRepository adjustmentRunRepository;
+
+    @Autowired
+    private LedgerReconciliationJob reconciliationJob;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Test
+    void appliesAdjustmentOncePerRunAndResumes() {
+        // Given wallets with balances 300.00, 3500.00 and 675.00
+        walletService.addFunds(1L, new BigDecimal("100.00"));
+
+        // When 1% interest applied
+        AdjustmentRunResponse interest = adjustmentJob.run("interest-test", AdjustmentRun.Type.PERCENTAGE,
+                new BigDecimal("1.00")).get();
+
+        // Then every wallet is adjusted, with a wallet transaction and an outbox event each
+        Assertions.assertThat(interest.getStatus()).isEqualTo("COMPLETED");
+        Assertions.assertThat(interest.getWalletsAdjusted()).isEqualTo(3);
+        Assertions.assertThat(interest.getCheckpointWalletId()).isEqualTo(3);
+        Assertions.assertThat(interest.getTotalAmount()).isEqualByComparingTo("44.75");
+
+        assertWallet(1L, "303.00", 2);
+        assertWallet(2L, "3535.00", 1);
+        assertWallet(3L, "681.75", 1);
+
+        Assertions.assertThat(walletService.pageWalletTransactions(3L, 0, 10).getContent())
+                .extracting(tx -> tx.getAmount().toPlainString(), tx -> tx.getAdjustmentRunId())
+                .containsExactly(Assertions.tuple("6.75", interest.getId()));
+        Assertions.assertThat(outboxEventRepository.findAll())
+                .filteredOn(event -> event.getType() == OutboxEvent.Type.ADJUSTMENT)
+                .hasSize(3);
+
+        // And requesting the same run again applies nothing
+        AdjustmentRunResponse repeated = adjustmentJob.run("interest-test", AdjustmentRun.Type.PERCENTAGE,
+                new BigDecimal("1.00")).get();
+
+        Assertions.assertThat(repeated.getId()).isEqualTo(interest.getId());
+        assertWallet(3L, "681.75", 1);
+
+        Assertions.assertThatThrownBy(() -> adjustmentJob.run("interest-test", AdjustmentRun.Type.FLAT,
+                new BigDecimal("1.00"))).isInstanceOf(ValidationException.class);
+
+        // And given a fee run which failed after wallet 1, with wallet 2's chunk committed beyond the checkpoint
+        AdjustmentRun failed = new AdjustmentRun("fee-test", AdjustmentRun.Type.FLAT, new BigDecimal("-700.00"), 3);
+        failed.setStatus(AdjustmentRun.Status.FAILED);
+        failed.setCheckpointWalletId(1);
+        failed = adjustmentRunRepository.save(failed);
+
+        Wallet wallet2 = walletRepository.findById(2L).get();
+        wallet2.setLastAdjustmentRunId(failed.getId());
+        walletRepository.save(wallet2);
+
+        // Then no other run may start until it has completed
+        Assertions.assertThatThrownBy(() -> adjustmentJob.run("other-test", AdjustmentRun.Type.FLAT,
+                new BigDecimal("-1.00"))).isInstanceOf(ValidationException.class);
+
+        // And when resumed, only wallet 3 is adjusted (a fee never takes a balance below zero)
+        AdjustmentRunResponse resumed = adjustmentJob.run("fee-test", AdjustmentRun.Type.FLAT,
+                new BigDecimal("-700.00")).get();
+
+        Assertions.assertThat(resumed.getId()).isEqualTo(failed.getId());
+        Assertions.assertThat(resumed.getStatus()).isEqualTo("COMPLETED");
+        Assertions.assertThat(resumed.getWalletsAdjusted()).isEqualTo(1);
+        Assertions.assertThat(resumed.getTotalAmount()).isEqualByComparingTo("-681.75");
+
+        assertWallet(1L, "303.00", 2);
+        assertWallet(2L, "3535.00", 1);
+        assertWallet(3L, "0.00", 2);
+
+        // And every wallet still reconciles against its transactions
+        Assertions.assertThat(reconciliationJob.run().get().getDiscrepancies()).isZero();
+    }
+
+    @Test
+    void adjustmentAmounts() {
+        BigDecimal balance = new BigDecimal("123.45");
+
+        Assertions.assertThat(BulkAdjustmentJob.adjustmentAmount(AdjustmentRun.Type.PERCENTAGE,
+                new BigDecimal("0.5"), balance)).isEqualTo(new BigDecimal("0.62"));
+        Assertions.assertThat(BulkAdjustmentJob.adjustmentAmount(AdjustmentRun.Type.PERCENTAGE,
+                new BigDecimal("-1.5"), balance)).isEqualTo(new BigDecimal("-1.85"));
+        Assertions.assertThat(BulkAdjustmentJob.adjustmentAmount(AdjustmentRun.Type.FLAT,
+                new BigDecimal("-2.50"), balance)).isEqualTo(new BigDecimal("-2.50"));
+        Assertions.assertThat(BulkAdjustmentJob.adjustmentAmount(AdjustmentRun.Type.FLAT,
+                new BigDecimal("-2.50"), new BigDecimal("1.00"))).isEqualTo(new BigDecimal("-1.00"));
+    }
+
+    private void assertWallet(Long walletId, String balance, long transactionCount) {
+        Wallet wallet = walletRepository.findById(walletId).get();
+
+        Assertions.assertThat(wallet.getBalance()).isEqualByComparingTo(balance);
+        Assertions.assertThat(wallet.getTransactionCount()).isEqualTo(transactionCount);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.cluster;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.api.WalletFundsRequest;
+import com.example.demo.api.WalletResponse;
+import com.example.demo.api.WalletVolumeRankResponse;
+import com.example.demo.leaderboard.WalletLeaderboards;
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.outbox.InMemoryOutboxSink;
+import com.example.demo.outbox.OutboxDispatcher;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Two instances sharing one in-memory database, both owning every wallet (no membership file) - as during a membership
+// file rollout, a handoff, or a fallback while the owner is unreachable. Only the database serializes their mutations.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:concurrent-owners-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/concurrent-owners-test/a/cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.outbox.sink=memory",
+        "hubpay.cluster.node-id=a"
+})
+public class ConcurrentOwnersTest {
+    private static final int DEPOSITS_PER_NODE = 20;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private OutboxDispatcher outboxDispatcher;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void concurrentDepositsOnBothNodesAreAllApplied() throws Exception {
+        // Given node 'b' (see WalletRoutingFilterTest)
+        ConfigurableApplicationContext nodeB = new SpringApplicationBuilder(DemoApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:concurrent-owners-test;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--hubpay.cold-storage.directory=target/concurrent-owners-test/b/cold",
+                "--hubpay.outbox.enabled=false",
+                "--hubpay.outbox.sink=memory",
+                "--hubpay.leaderboard.cluster-cache-ttl=PT1M",
+                "--hubpay.cluster.node-id=b");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            String[] nodeUrls = {"http://localhost:" + port,
+                    "http://localhost:" + ((WebServerApplicationContext) nodeB).getWebServer().getPort()};
+            BigDecimal before = restTemplate.getForObject("/api/wallet/3", WalletResponse.class).getBalance();
+
+            // When both nodes take deposits for one wallet at the same time (amounts differ, so none is rejected as a
+            // double-submit)
+            List<Future<ResponseEntity<WalletResponse>>> deposits = new ArrayList<>();
+            BigDecimal total = BigDecimal.ZERO;
+
+            for (int i = 0; i < DEPOSITS_PER_NODE * 2; i++) {
+                WalletFundsRequest request = new WalletFundsRequest();
+                request.setAmount(BigDecimal.valueOf(1000 + i, 2));
+                String url = nodeUrls[i % 2] + "/api/wallet/3/deposit";
+
+                total = total.add(request.getAmount());
+                deposits.add(executor.submit(() -> restTemplate.postForEntity(url, request, WalletResponse.class)));
+            }
+
+            for (Future<ResponseEntity<WalletResponse>> deposit : deposits) {
+                Assertions.assertThat(deposit.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+            }
+
+            // Then every deposit is reflected in the balance
+            BigDecimal after = before.add(total);
+
+            Assertions.assertThat(restTemplate.getForObject("/api/wallet/3", WalletResponse.class).getBalance())
+                    .isEqualByComparingTo(after);
+
+            // And each node's leaderboards include the deposits taken by the other
+            BigDecimal volume = nodeB.getBean(WalletLeaderboards.class).topVolumes(10).stream()
+                    .filter(rank -> rank.getWalletId() == 3).map(WalletVolumeRankResponse::getVolume)
+                    .findFirst().orElse(BigDecimal.ZERO);
+
+            Assertions.assertThat(volume).isGreaterThanOrEqualTo(total);
+            Assertions.assertThat(nodeB.getBean(WalletLeaderboards.class).topBalances(10))
+                    .anySatisfy(rank -> {
+                        Assertions.assertThat(rank.getWalletId()).isEqualTo(3);
+                        Assertions.assertThat(rank.getBalance()).isEqualByComparingTo(after);
+                    });
+
+            // And the outbox is dispatched by one node (holding the lease) only, in commit order
+            Assertions.assertThat(nodeB.getBean(OutboxDispatcher.class).dispatch()).isEqualTo(DEPOSITS_PER_NODE * 2);
+            Assertions.assertThat(outboxDispatcher.dispatch()).isZero();
+
+            List<OutboxEvent> events = nodeB.getBean(InMemoryOutboxSink.class).getEvents();
+
+            Assertions.assertThat(events).hasSize(DEPOSITS_PER_NODE * 2);
+            Assertions.assertThat(events).isSortedAccordingTo(Comparator.comparing(OutboxEvent::getId));
+
+            // And leaderboard answers are reused until they expire (one minute for node 'b')
+            WalletFundsRequest request = new WalletFundsRequest();
+            request.setAmount(new BigDecimal("50.00"));
+            restTemplate.postForEntity("/api/wallet/3/deposit", request, WalletResponse.class);
+
+            Assertions.assertThat(nodeB.getBean(WalletLeaderboards.class).topBalances(10))
+                    .anySatisfy(rank -> Assertions.assertThat(rank.getBalance()).isEqualByComparingTo(after));
+        } finally {
+            executor.shutdownNow();
+            nodeB.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.cluster;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConsistentHashRingTest {
+    @Test
+    void walletsSpreadEvenlyAndOnlyNewMembersArcsMove() {
+        // Given a ring of three members
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+
+        for (long walletId = 1; walletId <= 30_000; walletId++) {
+            owned.merge(ring.ownerOf(walletId), 1, Integer::sum);
+        }
+
+        // Then sequential wallet ids are spread roughly evenly
+        Assertions.assertThat(owned.values()).allSatisfy(count -> Assertions.assertThat(count).isBetween(8_000, 12_000));
+
+        // And when a fourth member joins, then wallets only move to it (about a quarter of them)
+        ConsistentHashRing grown = new ConsistentHashRing(Arrays.asList("c", "b", "a", "d"), 128);
+        int moved = 0;
+
+        for (long walletId = 1; walletId <= 30_000; walletId++) {
+            String before = ring.ownerOf(walletId);
+            String after = grown.ownerOf(walletId);
+
+            if (!before.equals(after)) {
+                Assertions.assertThat(after).isEqualTo("d");
+                moved++;
+            }
+        }
+
+        Assertions.assertThat(moved).isBetween(5_000, 10_000);
+    }
+}
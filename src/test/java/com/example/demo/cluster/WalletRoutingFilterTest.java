@@ -0,0 +1,159 @@
+package com.example.demo.cluster;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.api.WalletFundsRequest;
+import com.example.demo.api.WalletResponse;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Two instances (this test's context is node 'a', node 'b' is started by the test) sharing one in-memory database,
+// with a static membership file written once both ports are known.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:cluster-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/cluster-test/a/cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.cluster.node-id=a",
+        "hubpay.cluster.membership-file=target/cluster-test/members.properties",
+        "hubpay.cluster.secret=cluster-test-secret"
+})
+public class WalletRoutingFilterTest {
+    private static final Path MEMBERSHIP_FILE = Paths.get("target/cluster-test/members.properties");
+
+    @Autowired
+    private ClusterMembership membership;
+
+    @Autowired
+    private WalletRoutingFilter routingFilter;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeAll
+    static void removeMembershipFile() throws IOException {
+        Files.createDirectories(MEMBERSHIP_FILE.getParent());
+        Files.deleteIfExists(MEMBERSHIP_FILE);
+    }
+
+    @Test
+    void requestsRoutedToWalletOwner() throws Exception {
+        // Given node 'b' (no schema creation or import - the database is node 'a's). Command line arguments, as they
+        // must override application.properties
+        ConfigurableApplicationContext nodeB = new SpringApplicationBuilder(DemoApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:cluster-test;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--hubpay.cold-storage.directory=target/cluster-test/b/cold",
+                "--hubpay.outbox.enabled=false",
+                "--hubpay.cluster.node-id=b",
+                "--hubpay.cluster.membership-file=" + MEMBERSHIP_FILE,
+                "--hubpay.cluster.secret=cluster-test-secret");
+
+        try {
+            int portB = ((WebServerApplicationContext) nodeB).getWebServer().getPort();
+
+            // And a membership file listing both nodes
+            Files.write(MEMBERSHIP_FILE, ("a=http://localhost:" + port + "\nb=http://localhost:" + portB + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            membership.reloadIfChanged();
+            nodeB.getBean(ClusterMembership.class).reloadIfChanged();
+
+            Long ownedByA = null;
+            Long ownedByB = null;
+
+            for (long walletId = 1; walletId <= 3; walletId++) {
+                if (membership.ownerUrl(walletId) == null) {
+                    ownedByA = walletId;
+                } else {
+                    ownedByB = walletId;
+                }
+            }
+
+            Assertions.assertThat(ownedByA).isNotNull();
+            Assertions.assertThat(ownedByB).isNotNull();
+            Assertions.assertThat(nodeB.getBean(ClusterMembership.class).ownerUrl(ownedByB)).isNull();
+
+            // When a deposit for a wallet owned by 'b' arrives at 'a', then 'b' handles it
+            WalletResponse before = restTemplate.getForObject("/api/wallet/" + ownedByB, WalletResponse.class);
+            WalletFundsRequest request = new WalletFundsRequest();
+            request.setAmount(new BigDecimal("25.00"));
+
+            ResponseEntity<WalletResponse> deposit = restTemplate.postForEntity(
+                    "/api/wallet/" + ownedByB + "/deposit", request, WalletResponse.class);
+
+            Assertions.assertThat(deposit.getStatusCode()).isEqualTo(HttpStatus.OK);
+            Assertions.assertThat(deposit.getHeaders().getFirst(WalletRoutingFilter.NODE_HEADER)).isEqualTo("b");
+            Assertions.assertThat(deposit.getBody().getBalance())
+                    .isEqualByComparingTo(before.getBalance().add(new BigDecimal("25.00")));
+
+            // And reads too, while 'a' handles its own wallets
+            Assertions.assertThat(nodeHandling("/api/wallet/" + ownedByB, null)).isEqualTo("b");
+            Assertions.assertThat(nodeHandling("/api/wallet/" + ownedByA, null)).isEqualTo("a");
+
+            // And a request already forwarded is handled where it lands (never forwarded again)
+            String walletUrl = "/api/wallet/" + ownedByB;
+            String signed = nodeB.getBean(WalletRoutingFilter.class).forwardedHeader("GET", walletUrl);
+
+            Assertions.assertThat(nodeHandling(walletUrl, signed)).isEqualTo("a");
+
+            // But a forwarded header which does not verify (e.g. from a client) is ignored
+            Assertions.assertThat(nodeHandling(walletUrl, "b")).isEqualTo("b");
+            Assertions.assertThat(nodeHandling(walletUrl, signed.replace(" ", " x")))
+                    .isEqualTo("b");
+            Assertions.assertThat(nodeHandling(walletUrl,
+                    routingFilter.forwardedHeader("GET", walletUrl + "/transactions"))).isEqualTo("b");
+
+            // And event streams are redirected to the owner
+            HttpURLConnection events = (HttpURLConnection) new URL(
+                    "http://localhost:" + port + "/api/wallet/" + ownedByB + "/events").openConnection();
+            events.setInstanceFollowRedirects(false);
+
+            Assertions.assertThat(events.getResponseCode()).isEqualTo(HttpStatus.TEMPORARY_REDIRECT.value());
+            Assertions.assertThat(events.getHeaderField(HttpHeaders.LOCATION))
+                    .isEqualTo("http://localhost:" + portB + "/api/wallet/" + ownedByB + "/events");
+            events.disconnect();
+
+            // When 'b' is down, then 'a' handles its wallets itself
+            nodeB.close();
+
+            Assertions.assertThat(nodeHandling("/api/wallet/" + ownedByB, null)).isEqualTo("a");
+        } finally {
+            nodeB.close();
+        }
+    }
+
+    private String nodeHandling(String url, String forwardedBy) {
+        HttpHeaders headers = new HttpHeaders();
+
+        if (forwardedBy != null) {
+            headers.set(WalletRoutingFilter.FORWARDED_HEADER, forwardedBy);
+        }
+
+        ResponseEntity<WalletResponse> response =
+                restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), WalletResponse.class);
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        return response.getHeaders().getFirst(WalletRoutingFilter.NODE_HEADER);
+    }
+}
@@ -1,8 +1,13 @@
 package com.example.demo.controller;
 
 import com.example.demo.api.ErrorResponse;
+import com.example.demo.api.SlowRequestResponse;
+import com.example.demo.api.WalletBalancesResponse;
 import com.example.demo.api.WalletResponse;
 import com.example.demo.api.WalletTransactionsPageResponse;
+import com.example.demo.event.WalletEventBroadcaster;
+import com.example.demo.event.WalletTransactionCommittedEvent;
+import com.example.demo.repository.WalletRepository;
 import com.example.demo.service.WalletService;
 import org.assertj.core.api.Assertions;
 import org.json.JSONObject;
@@ -14,10 +19,18 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.*;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Slow request threshold of zero so that every request is captured by the slow request log.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "hubpay.slow-request.threshold=PT0S")
 class WalletControllerTest {
     @LocalServerPort
     private int port;
@@ -25,6 +38,12 @@ class WalletControllerTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private WalletEventBroadcaster walletEventBroadcaster;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
     private static HttpHeaders headers;
 
     @BeforeAll
@@ -54,6 +73,54 @@ class WalletControllerTest {
         Assertions.assertThat(response.getBody().getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
     }
 
+    @Test
+    public void balanceAndTransactionsConditionalGet() throws Exception {
+        Long walletId = 1L;
+
+        // Given the current ETags for a wallet's balance and transactions
+        ResponseEntity<WalletResponse> balance = restTemplate.getForEntity(
+                getBalanceUrl(), WalletResponse.class, walletId);
+        ResponseEntity<WalletTransactionsPageResponse> transactions = restTemplate.getForEntity(
+                getTransactionsUrl(), WalletTransactionsPageResponse.class, walletId);
+
+        String balanceETag = balance.getHeaders().getETag();
+        String transactionsETag = transactions.getHeaders().getETag();
+        Assertions.assertThat(balanceETag).isNotNull().startsWith("\"");
+        Assertions.assertThat(transactionsETag).isNotNull();
+
+        // When requested again with If-None-Match, then 304 Not Modified with no body
+        Assertions.assertThat(conditionalGet(getBalanceUrl(), balanceETag, walletId).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        ResponseEntity<String> notModified = conditionalGet(getTransactionsUrl(), "W/" + transactionsETag, walletId);
+        Assertions.assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        Assertions.assertThat(notModified.getBody()).isNull();
+        Assertions.assertThat(notModified.getHeaders().getETag()).isEqualTo(transactionsETag);
+
+        // And once the balance changes, full responses with new ETags are returned
+        addFunds(walletId, WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(37)));
+
+        ResponseEntity<String> modified = conditionalGet(getBalanceUrl(), balanceETag, walletId);
+        Assertions.assertThat(modified.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(modified.getHeaders().getETag()).isNotEqualTo(balanceETag);
+
+        modified = conditionalGet(getTransactionsUrl(), transactionsETag, walletId);
+        Assertions.assertThat(modified.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(modified.getHeaders().getETag()).isNotEqualTo(transactionsETag);
+    }
+
+    @Test
+    public void balancesBulk() throws Exception {
+        ResponseEntity<WalletBalancesResponse> response = restTemplate.getForEntity(
+                getBalancesUrl(), WalletBalancesResponse.class, "1,2,-1");
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody()).isNotNull();
+        Assertions.assertThat(response.getBody().getBalances()).containsOnlyKeys(1L, 2L);
+        Assertions.assertThat(response.getBody().getBalances().get(1L)).isEqualTo(getWalletBalance(1L));
+        Assertions.assertThat(response.getBody().getNotFound()).containsExactly(-1L);
+    }
+
     @Test
     public void depositWalletNotExists() throws Exception {
         HttpEntity<String> request = new HttpEntity<>(
@@ -261,6 +328,12 @@ class WalletControllerTest {
         Assertions.assertThat(response.getBody().getPageNumber()).isEqualTo(0);
         Assertions.assertThat(response.getBody().getPageSize()).isEqualTo(pageSize);
         Assertions.assertThat(response.getBody().getTransactions()).hasSizeGreaterThanOrEqualTo(4);
+        Assertions.assertThat(response.getBody().getTotalElements())
+                .isEqualTo(response.getBody().getTransactions().size());
+        Assertions.assertThat(response.getBody().getTotalPages()).isEqualTo(1);
+        Assertions.assertThat(response.getBody().isHasNext()).isFalse();
+
+        long totalElements = response.getBody().getTotalElements();
 
         // Get id of 3rd transaction in list
         Long transaction3Id = response.getBody().getTransactions().get(2).getId();
@@ -276,12 +349,116 @@ class WalletControllerTest {
         Assertions.assertThat(response.getBody().getPageSize()).isEqualTo(2);
         Assertions.assertThat(response.getBody().getTransactions()).hasSize(2);
         Assertions.assertThat(response.getBody().getTransactions().get(0).getId()).isEqualTo(transaction3Id);
+        Assertions.assertThat(response.getBody().getTotalElements()).isEqualTo(totalElements);
+        Assertions.assertThat(response.getBody().getTotalPages()).isEqualTo((int) ((totalElements + 1) / 2));
+        Assertions.assertThat(response.getBody().isHasNext()).isEqualTo(totalElements > 4);
+    }
+
+    @Test
+    public void eventsWalletNotFound() throws Exception {
+        ResponseEntity<ErrorResponse> response = restTemplate.getForEntity(
+                getEventsUrl(), ErrorResponse.class, -1);
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        Assertions.assertThat(response.getBody()).isNotNull();
+        Assertions.assertThat(response.getBody().getMessage()).isEqualTo("Wallet does not exist");
+    }
+
+    @Test
+    public void eventsStreamsBalanceAndCommittedTransactions() throws Exception {
+        Long walletId = 1L;
+        BigDecimal amount = WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(6));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                getEventsUrl().replace("{id}", walletId.toString())).openConnection();
+        connection.setReadTimeout(5000);
+
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            Assertions.assertThat(connection.getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+
+            // Given the initial balance event has been received
+            Assertions.assertThat(readEventData(events, "balance")).contains("\"balance\"");
+
+            // When funds are deposited
+            addFunds(walletId, amount);
+
+            // Then a transaction event is pushed with the amount and new balance
+            JSONObject transaction = new JSONObject(readEventData(events, "transaction"));
+
+            Assertions.assertThat(new BigDecimal(transaction.get("amount").toString())).isEqualByComparingTo(amount);
+            Assertions.assertThat(new BigDecimal(transaction.get("balance").toString()))
+                    .isEqualByComparingTo(getWalletBalance(walletId));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void eventsStreamSkipsTransactionReportedAfterLaterOne() throws Exception {
+        Long walletId = 2L;
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                getEventsUrl().replace("{id}", walletId.toString())).openConnection();
+        connection.setReadTimeout(5000);
+
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            // Given a subscriber (registered once the balance event arrives)
+            readEventData(events, "balance");
+            long version = walletRepository.findVersionById(walletId);
+
+            // When two commits report in reverse order, followed by a third
+            walletEventBroadcaster.onTransactionCommitted(committedEvent(walletId, 902L, version + 2));
+            walletEventBroadcaster.onTransactionCommitted(committedEvent(walletId, 901L, version + 1));
+            walletEventBroadcaster.onTransactionCommitted(committedEvent(walletId, 903L, version + 3));
+
+            // Then the one reported late is not sent after the later one
+            Assertions.assertThat(new JSONObject(readEventData(events, "transaction")).getLong("transactionId"))
+                    .isEqualTo(902L);
+            Assertions.assertThat(new JSONObject(readEventData(events, "transaction")).getLong("transactionId"))
+                    .isEqualTo(903L);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void slowRequestsRecordsPhaseBreakdown() throws Exception {
+        // Given a deposit (every request is "slow" with a zero threshold)
+        Long walletId = 1L;
+
+        addFunds(walletId, WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(5)));
+
+        // When slow requests retrieved
+        ResponseEntity<SlowRequestResponse[]> response = restTemplate.getForEntity(
+                getSlowRequestsUrl(), SlowRequestResponse[].class);
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody()).isNotEmpty();
+
+        // Then most recent deposit is listed with each phase of the request
+        SlowRequestResponse deposit = Arrays.stream(response.getBody())
+                .filter(slowRequest -> slowRequest.getUri().equals("/api/wallet/" + walletId + "/deposit"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+
+        Assertions.assertThat(deposit.getMethod()).isEqualTo("POST");
+        Assertions.assertThat(deposit.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(deposit.getPhaseMillis()).containsKeys("deserialization", "transaction-begin",
+                "validation", "find-wallet", "double-submit-query", "insert-transaction", "update-wallet",
+                "flush-commit", "serialization");
+        Assertions.assertThat(deposit.getTotalMillis())
+                .isGreaterThanOrEqualTo(deposit.getPhaseMillis().get("flush-commit"));
     }
 
     private String getBalanceUrl() throws Exception {
         return new URL("http://localhost:" + port + "/api/wallet/{id}").toString();
     }
 
+    private String getBalancesUrl() throws Exception {
+        return new URL("http://localhost:" + port + "/api/wallet?ids={ids}").toString();
+    }
+
     private String getTransactionsUrl() throws Exception {
         return new URL("http://localhost:" + port + "/api/wallet/{id}/transactions").toString();
     }
@@ -290,6 +467,10 @@ class WalletControllerTest {
         return new URL("http://localhost:" + port + "/api/wallet/{id}/transactions?pageNumber={pageNumber}&pageSize={pageSize}").toString();
     }
 
+    private String getEventsUrl() throws Exception {
+        return new URL("http://localhost:" + port + "/api/wallet/{id}/events").toString();
+    }
+
     private String getDepositUrl() throws Exception {
         return new URL("http://localhost:" + port + "/api/wallet/{id}/deposit").toString();
     }
@@ -298,6 +479,10 @@ class WalletControllerTest {
         return new URL("http://localhost:" + port + "/api/wallet/{id}/withdraw").toString();
     }
 
+    private String getSlowRequestsUrl() throws Exception {
+        return new URL("http://localhost:" + port + "/api/admin/slow-requests").toString();
+    }
+
     private String getWalletFundsRequestJSON(BigDecimal amount) throws Exception {
         JSONObject request = new JSONObject();
 
@@ -306,6 +491,27 @@ class WalletControllerTest {
         return request.toString();
     }
 
+    // Reads server-sent events until one with the specified name arrives, and returns its data
+    private static WalletTransactionCommittedEvent committedEvent(Long walletId, Long transactionId, long version) {
+        return new WalletTransactionCommittedEvent(walletId, transactionId, version, BigDecimal.TEN,
+                BigDecimal.valueOf(transactionId), LocalDateTime.now());
+    }
+
+    private String readEventData(BufferedReader events, String name) throws Exception {
+        String eventName = null;
+        String line;
+
+        while ((line = events.readLine()) != null) {
+            if (line.startsWith("event:")) {
+                eventName = line.substring("event:".length()).trim();
+            } else if (line.startsWith("data:") && name.equals(eventName)) {
+                return line.substring("data:".length());
+            }
+        }
+
+        throw new AssertionError("Event stream ended before '" + name + "' event");
+    }
+
     // Convenience method to get wallet balance for use in test case
     private BigDecimal getWalletBalance(Long id) throws Exception {
         ResponseEntity<WalletResponse> response = restTemplate.getForEntity(
@@ -315,6 +521,13 @@ class WalletControllerTest {
     }
 
     // Convenience method to add funds to a wallet (to facilitate a particular test scenario)
+    private ResponseEntity<String> conditionalGet(String url, String ifNoneMatch, Object... uriVariables) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(ifNoneMatch);
+
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class, uriVariables);
+    }
+
     private void addFunds(Long id, BigDecimal amount) throws Exception {
         HttpEntity<String> request = new HttpEntity<>(getWalletFundsRequestJSON(amount), headers);
 
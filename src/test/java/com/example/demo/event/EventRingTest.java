@@ -0,0 +1,30 @@
+package com.example.demo.event;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EventRingTest {
+    @Test
+    void slowConsumerLosesOldestEvents() {
+        // Given a ring with room for 3 events
+        EventRing<Integer> ring = new EventRing<>(3);
+
+        // When 5 events are offered before any are consumed
+        for (int i = 1; i <= 5; i++) {
+            ring.offer(i);
+        }
+
+        // Then the 2 oldest are dropped (and counted once), and the rest are consumed in order
+        Assertions.assertThat(ring.takeDropped()).isEqualTo(2);
+        Assertions.assertThat(ring.takeDropped()).isZero();
+        Assertions.assertThat(ring.poll()).isEqualTo(3);
+        Assertions.assertThat(ring.poll()).isEqualTo(4);
+
+        ring.offer(6);
+
+        Assertions.assertThat(ring.poll()).isEqualTo(5);
+        Assertions.assertThat(ring.poll()).isEqualTo(6);
+        Assertions.assertThat(ring.poll()).isNull();
+        Assertions.assertThat(ring.isEmpty()).isTrue();
+    }
+}
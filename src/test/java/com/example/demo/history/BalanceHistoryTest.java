@@ -0,0 +1,138 @@
+package com.example.demo.history;
+
+import com.example.demo.exception.ValidationException;
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.BalanceCheckpointRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.service.WalletService;
+import com.example.demo.storage.ColdStorageCompactionJob;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+// Separate (in-memory) database, with a checkpoint every third transaction.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:balance-history-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/balance-history-test/cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.balance-history.checkpoint-interval=3"
+})
+public class BalanceHistoryTest {
+    @Autowired
+    private BalanceHistory balanceHistory;
+
+    @Autowired
+    private BalanceCheckpointRepository balanceCheckpointRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private ColdStorageCompactionJob compactionJob;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Test
+    void balanceAsOfAcrossCheckpointsAndTiers() throws Exception {
+        // Given wallet 1 (opening balance 200.00) and seven deposits (different amounts to pass double-submit check),
+        // noting the time and balance after each
+        Long walletId = 1L;
+        LocalDateTime beforeAll = LocalDateTime.now();
+        List<LocalDateTime> times = new ArrayList<>();
+        List<BigDecimal> balances = new ArrayList<>();
+
+        Thread.sleep(5);
+
+        for (int i = 1; i <= 7; i++) {
+            balances.add(walletService.addFunds(walletId, BigDecimal.valueOf(10 * i).setScale(2)).getBalance());
+            Thread.sleep(5);
+            // (Millisecond precision - the database rounds timestamps to microseconds.)
+            times.add(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+            Thread.sleep(5);
+        }
+
+        // Then a checkpoint was recorded with the third and sixth
+        Assertions.assertThat(balanceCheckpointRepository.count()).isEqualTo(2);
+
+        // And balance as of any time is the balance after the last transaction at or before it
+        assertBalances(walletId, beforeAll, times, balances);
+        Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, LocalDateTime.now()))
+                .isEqualByComparingTo("480.00");
+
+        // And is unchanged once the first five transactions have been moved to cold storage
+        while (compactionJob.compact(times.get(4)) > 0) {
+            Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, times.get(6))).isEqualByComparingTo("480.00");
+        }
+
+        assertBalances(walletId, beforeAll, times, balances);
+
+        // And once those months are dropped by retention, earlier balances are rejected but later ones unchanged
+        compactionJob.dropExpired(times.get(4));
+
+        Assertions.assertThatThrownBy(() -> balanceHistory.getBalanceAsOf(walletId, times.get(3)))
+                .isInstanceOf(ValidationException.class);
+
+        for (int i = 4; i < times.size(); i++) {
+            Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, times.get(i)))
+                    .isEqualByComparingTo(balances.get(i));
+        }
+
+        // And a missing wallet has no balance
+        Assertions.assertThat(balanceHistory.getBalanceAsOf(99L, LocalDateTime.now())).isNull();
+    }
+
+    @Test
+    void transactionsWithOneTimestampOrderedByWalletVersion() {
+        // Given wallet 2 (opening balance 3500.00) whose latest transaction was stamped by a clock an hour ahead
+        Long walletId = 2L;
+        LocalDateTime ahead = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MILLIS);
+        Wallet wallet = walletRepository.findById(walletId).get();
+
+        wallet.setBalance(wallet.getBalance().add(new BigDecimal("100.00")));
+        wallet.setTransactionCount(wallet.getTransactionCount() + 1);
+        wallet.setVersion(wallet.getVersion() + 1);
+
+        WalletTransaction transaction = new WalletTransaction(wallet, new BigDecimal("100.00"));
+        transaction.setTimestamp(ahead);
+        transaction.setWalletVersion(wallet.getVersion());
+        walletTransactionRepository.save(transaction);
+        walletRepository.save(wallet);
+
+        // When three more deposits are made (the second records a checkpoint)
+        walletService.addFunds(walletId, new BigDecimal("10.00"));
+        walletService.addFunds(walletId, new BigDecimal("20.00"));
+        walletService.addFunds(walletId, new BigDecimal("30.00"));
+
+        // Then none is stamped earlier than the wallet's latest transaction
+        Assertions.assertThat(walletService.pageWalletTransactions(walletId, 0, 10).getContent())
+                .extracting(WalletTransaction::getTimestamp).containsOnly(ahead);
+
+        // And the balance as of that time includes the deposit after the checkpoint (same timestamp, later version)
+        Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, ahead)).isEqualByComparingTo("3660.00");
+        Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, ahead.minusNanos(1000)))
+                .isEqualByComparingTo("3500.00");
+    }
+
+    private void assertBalances(Long walletId, LocalDateTime beforeAll, List<LocalDateTime> times,
+                                List<BigDecimal> balances) {
+        Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, beforeAll)).isEqualByComparingTo("200.00");
+
+        for (int i = 0; i < times.size(); i++) {
+            Assertions.assertThat(balanceHistory.getBalanceAsOf(walletId, times.get(i)))
+                    .isEqualByComparingTo(balances.get(i));
+        }
+    }
+}
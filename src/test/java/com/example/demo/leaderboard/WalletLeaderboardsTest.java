@@ -0,0 +1,136 @@
+package com.example.demo.leaderboard;
+
+import com.example.demo.api.WalletBalanceRankResponse;
+import com.example.demo.api.WalletVolumeRankResponse;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+// Separate (in-memory) database, with room for only two wallets in the balance leaderboard.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:leaderboard-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/leaderboard-test-cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.leaderboard.balance-capacity=2"
+})
+public class WalletLeaderboardsTest {
+    @Autowired
+    private WalletLeaderboards leaderboards;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Test
+    void leaderboardsFollowCommittedTransactions() {
+        // Given the imported wallets (1: 200.00, 2: 3500.00, 3: 675.00), the balance leaderboard loads the top two
+        Assertions.assertThat(leaderboards.topBalances(10)).containsExactly(
+                new WalletBalanceRankResponse(2, new BigDecimal("3500.00")),
+                new WalletBalanceRankResponse(3, new BigDecimal("675.00")));
+
+        // When wallet 1 rises above the leaders' floor, then it displaces the lowest
+        walletService.addFunds(1L, new BigDecimal("1000.00"));
+
+        Assertions.assertThat(leaderboards.topBalances(2)).containsExactly(
+                new WalletBalanceRankResponse(2, new BigDecimal("3500.00")),
+                new WalletBalanceRankResponse(1, new BigDecimal("1200.00")));
+
+        // And when a leader falls below the floor, then it leaves and the leaderboard is reloaded
+        walletService.withdrawFunds(2L, new BigDecimal("3000.00"));
+
+        Assertions.assertThat(leaderboards.topBalances(2)).containsExactly(
+                new WalletBalanceRankResponse(1, new BigDecimal("1200.00")),
+                new WalletBalanceRankResponse(3, new BigDecimal("675.00")));
+
+        // And volume counts deposits and withdrawals alike
+        Assertions.assertThat(leaderboards.topVolumes(2)).containsExactly(
+                new WalletVolumeRankResponse(2, new BigDecimal("3000.00"), new BigDecimal("0.00")),
+                new WalletVolumeRankResponse(1, new BigDecimal("1000.00"), new BigDecimal("0.00")));
+    }
+
+    @Test
+    void volumeSketchEvictsSmallestAndSlides() {
+        // Given a one minute window of six panes, with two counters per pane
+        WindowedTopVolumes volumes = new WindowedTopVolumes(60_000, 6, 2);
+        long start = 1_200_000;
+
+        volumes.add(1, 500, start);
+        volumes.add(2, 100, start);
+        volumes.add(1, 200, start + 10_000);
+
+        // When a third wallet arrives in a full pane, then it replaces the smallest and inherits its count as error
+        volumes.add(3, 50, start);
+
+        WindowedTopVolumes.Total third = volumes.top(3, start + 10_000).get(1);
+        Assertions.assertThat(third.walletId).isEqualTo(3);
+        Assertions.assertThat(third.volume).isEqualTo(150);
+        Assertions.assertThat(third.error).isEqualTo(100);
+
+        Assertions.assertThat(volumes.top(3, start + 10_000).get(0).volume).isEqualTo(700);
+
+        // And once the first pane leaves the window, only the later volume counts
+        Assertions.assertThat(volumes.top(3, start + 60_000)).hasSize(1);
+        Assertions.assertThat(volumes.top(3, start + 60_000).get(0).volume).isEqualTo(200);
+        Assertions.assertThat(volumes.top(3, start + 70_000)).isEmpty();
+    }
+
+    @Test
+    void balanceFloorExcludesWalletsWhichMayBeOutranked() {
+        // Given a snapshot of the top two of more wallets (floor 50)
+        TopBalances balances = new TopBalances(2);
+        balances.load(Arrays.asList(new Object[]{1L, new BigDecimal("100"), 1L},
+                new Object[]{2L, new BigDecimal("50"), 1L}));
+
+        // When a listed wallet falls below the floor, then the leaderboard no longer covers two wallets
+        balances.update(2L, new BigDecimal("10"), 2);
+
+        Assertions.assertThat(balances.covers(1)).isTrue();
+        Assertions.assertThat(balances.covers(2)).isFalse();
+
+        // And balances committed while a snapshot is read are re-applied over it
+        balances.beginLoad();
+        balances.update(3L, new BigDecimal("70"), 5);
+        balances.load(Arrays.asList(new Object[]{1L, new BigDecimal("100"), 1L},
+                new Object[]{3L, new BigDecimal("60"), 4L}));
+
+        Assertions.assertThat(balances.top(2)).extracting(entry -> entry.balance)
+                .containsExactly(new BigDecimal("100"), new BigDecimal("70"));
+
+        // And with every wallet in the snapshot, there is no floor
+        balances.load(Collections.singletonList(new Object[]{1L, new BigDecimal("100"), 1L}));
+        balances.update(1L, new BigDecimal("1"), 2);
+        balances.update(4L, new BigDecimal("2"), 1);
+
+        Assertions.assertThat(balances.covers(2)).isTrue();
+        Assertions.assertThat(balances.top(2)).extracting(entry -> entry.walletId).containsExactly(4L, 1L);
+    }
+
+    @Test
+    void balanceOlderThanTheAppliedOneIsIgnored() {
+        // Given a loaded leaderboard
+        TopBalances balances = new TopBalances(3);
+        balances.load(Collections.singletonList(new Object[]{1L, new BigDecimal("100"), 3L}));
+
+        // When callbacks of one wallet's commits arrive out of order, or predate the snapshot
+        balances.update(2L, new BigDecimal("80"), 7);
+        balances.update(2L, new BigDecimal("90"), 6);
+        balances.update(1L, new BigDecimal("5"), 3);
+
+        // Then only the latest balance of each wallet is listed
+        Assertions.assertThat(balances.top(3)).extracting(entry -> entry.balance)
+                .containsExactly(new BigDecimal("100"), new BigDecimal("80"));
+
+        // And a balance committed during a reload, but older than the snapshot, does not replace it
+        balances.beginLoad();
+        balances.update(3L, new BigDecimal("200"), 2);
+        balances.load(Arrays.asList(new Object[]{1L, new BigDecimal("100"), 3L},
+                new Object[]{3L, new BigDecimal("20"), 4L}));
+
+        Assertions.assertThat(balances.top(3)).extracting(entry -> entry.walletId).containsExactly(1L, 3L);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.ConnectionPoolStatsResponse;
+import com.example.demo.api.OperationLatencyResponse;
+import com.example.demo.api.WalletFundsRequest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+
+// Sampled explicitly by the test (the scheduled interval never elapses), with adaptive sizing bounds below the default
+// pool size of 10.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:connection-pool-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/connection-pool-test-cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.connection-pool.sample-interval=PT1H",
+        "hubpay.connection-pool.adaptive.enabled=true",
+        "hubpay.connection-pool.adaptive.min-size=2",
+        "hubpay.connection-pool.adaptive.max-size=4",
+        "hubpay.connection-pool.adaptive.step=1"
+})
+public class ConnectionPoolMonitorTest {
+    @Autowired
+    private ConnectionPoolMonitor monitor;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void samplesCheckoutsNextToOperationLatencies() throws Exception {
+        // Given the pool sized within its adaptive bounds at startup
+        Assertions.assertThat(dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize()).isEqualTo(4);
+
+        // And a sample taken before the request (so only the request's checkouts are in the next interval)
+        monitor.sample();
+
+        // When a deposit is made and the pool sampled
+        WalletFundsRequest request = new WalletFundsRequest();
+        request.setAmount(new BigDecimal("15.00"));
+
+        Assertions.assertThat(restTemplate.postForEntity("/api/wallet/1/deposit", request, String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        monitor.sample();
+
+        // Then the deposit's checkout and latency are reported together
+        ResponseEntity<ConnectionPoolStatsResponse> response = restTemplate.getForEntity(
+                "/api/admin/connection-pool", ConnectionPoolStatsResponse.class);
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        ConnectionPoolStatsResponse stats = response.getBody();
+
+        Assertions.assertThat(stats.isAdaptive()).isTrue();
+        Assertions.assertThat(stats.getMaximumPoolSize()).isEqualTo(4);
+        Assertions.assertThat(stats.getAcquisitions()).isPositive();
+        Assertions.assertThat(stats.getThreadsAwaitingConnection()).isZero();
+        Assertions.assertThat(stats.getOperations())
+                .extracting(OperationLatencyResponse::getOperation, OperationLatencyResponse::getCount)
+                .containsExactly(Assertions.tuple("POST /api/wallet/{id}/deposit", 1L));
+        Assertions.assertThat(stats.getOperations().get(0).getPhaseMeanMillis())
+                .containsKeys("transaction-begin", "flush-commit");
+    }
+}
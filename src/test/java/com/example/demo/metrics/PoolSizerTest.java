@@ -0,0 +1,59 @@
+package com.example.demo.metrics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PoolSizerTest {
+    // Bounds 10 to 30 in steps of 5, 5ms target acquire wait, growth given back if usage rises by half, shrink after 3
+    // calm intervals.
+    private final PoolSizer sizer = new PoolSizer(10, 10, 30, 5, 5.0, 1.5, 3);
+
+    @Test
+    void growsWhileRequestsWaitUpToMaximum() {
+        // When requests keep waiting for connections (usage unchanged)
+        Assertions.assertThat(sizer.next(20.0, 8, 4.0, 0)).isEqualTo(15);
+        Assertions.assertThat(sizer.next(12.0, 3, 4.0, 0)).isEqualTo(20);
+        Assertions.assertThat(sizer.next(9.0, 0, 4.0, 0)).isEqualTo(25);
+        Assertions.assertThat(sizer.next(7.0, 0, 4.0, 0)).isEqualTo(30);
+
+        // Then the pool grows no further than its maximum
+        Assertions.assertThat(sizer.next(7.0, 2, 4.0, 0)).isEqualTo(30);
+        Assertions.assertThat(sizer.getLastReason()).startsWith("25 -> 30: acquire wait 7.000ms");
+    }
+
+    @Test
+    void givesGrowthBackWhenDatabaseSaturates() {
+        // Given growth while requests wait
+        Assertions.assertThat(sizer.next(20.0, 8, 4.0, 0)).isEqualTo(15);
+        Assertions.assertThat(sizer.next(20.0, 8, 4.0, 0)).isEqualTo(20);
+
+        // When requests still wait, but connections became much slower to use
+        Assertions.assertThat(sizer.next(20.0, 8, 9.0, 0)).isEqualTo(15);
+        Assertions.assertThat(sizer.getLastReason()).contains("database saturated");
+
+        // Then the size is held for a while, however long requests wait
+        Assertions.assertThat(sizer.next(20.0, 8, 9.0, 0)).isEqualTo(15);
+        Assertions.assertThat(sizer.next(20.0, 8, 9.0, 0)).isEqualTo(15);
+        Assertions.assertThat(sizer.next(20.0, 8, 9.0, 0)).isEqualTo(20);
+    }
+
+    @Test
+    void shrinksAfterCalmIntervalsDownToMinimum() {
+        sizer.next(20.0, 8, 4.0, 0);
+        sizer.next(20.0, 8, 4.0, 0);
+
+        // When connections stay idle (an interval without enough idle connections restarts the count)
+        Assertions.assertThat(sizer.next(0.1, 0, 4.0, 12)).isEqualTo(20);
+        Assertions.assertThat(sizer.next(0.1, 0, 4.0, 2)).isEqualTo(20);
+        Assertions.assertThat(sizer.next(0.1, 0, 4.0, 12)).isEqualTo(20);
+        Assertions.assertThat(sizer.next(0.1, 0, 4.0, 12)).isEqualTo(20);
+        Assertions.assertThat(sizer.next(0.1, 0, 4.0, 12)).isEqualTo(15);
+
+        // Then the pool shrinks a step at a time, no further than its minimum
+        for (int i = 0; i < 10; i++) {
+            sizer.next(0.0, 0, 0.0, 10);
+        }
+
+        Assertions.assertThat(sizer.getSize()).isEqualTo(10);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.metrics;
+
+import com.example.demo.api.WalletContentionResponse;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class WalletContentionProfilerTest {
+    @Test
+    void heavyHittersSurviveInBoundedMemory() {
+        // Given a profiler with room for only 4 wallets
+        WalletContentionProfiler profiler = new WalletContentionProfiler(1, 4);
+
+        // When two hot wallets are interleaved with a long tail of lightly contended wallets
+        for (long walletId = 100; walletId < 1100; walletId++) {
+            profiler.recordCompletion(1L, 5_000_000, 3, true, false);
+            profiler.recordCompletion(2L, 2_000_000, 2, true, false);
+            profiler.recordCompletion(walletId, 1_000, 1, true, false);
+        }
+
+        profiler.recordCompletion(2L, 0, 1, false, true);
+        profiler.recordDoubleSubmit(1L);
+
+        // Then the hot wallets are reported first, with their statistics intact
+        List<WalletContentionResponse> top = profiler.topWallets(10);
+
+        Assertions.assertThat(top).hasSizeLessThanOrEqualTo(4);
+        Assertions.assertThat(top.stream().limit(2).map(WalletContentionResponse::getWalletId)
+                .collect(Collectors.toList())).containsExactly(1L, 2L);
+
+        WalletContentionResponse hottest = top.get(0);
+        Assertions.assertThat(hottest.getMutations()).isEqualTo(1000);
+        Assertions.assertThat(hottest.getMaxInFlight()).isEqualTo(3);
+        Assertions.assertThat(hottest.getLockWaitMillis()).isEqualTo(5000.0);
+        Assertions.assertThat(hottest.getDoubleSubmitRejections()).isEqualTo(1);
+        Assertions.assertThat(top.get(1).getConflictRejections()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.outbox;
+
+import com.example.demo.api.OutboxStatsResponse;
+import com.example.demo.exception.ValidationException;
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.repository.OutboxEventRepository;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Separate (in-memory) database, with the scheduled dispatcher disabled so the test drives dispatch directly.
+@SpringBootTest(properties = {
+        "hubpay.outbox.sink=memory",
+        "hubpay.outbox.enabled=false",
+        "hubpay.outbox.batch-size=2",
+        "spring.datasource.url=jdbc:h2:mem:outbox-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/outbox-test-cold"
+})
+public class OutboxDispatcherTest {
+    @Autowired
+    private OutboxDispatcher outboxDispatcher;
+
+    @Autowired
+    private InMemoryOutboxSink sink;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Test
+    void dispatchesCommittedMutationsInBatches() throws Exception {
+        // Given a few committed mutations (different amounts to pass double-submit check) and one rejected one
+        Long walletId = 1L;
+        walletService.addFunds(walletId, new BigDecimal("100.00"));
+        walletService.addFunds(walletId, new BigDecimal("101.00"));
+        walletService.withdrawFunds(walletId, new BigDecimal("20.00"));
+
+        Assertions.assertThatThrownBy(() -> walletService.withdrawFunds(walletId, new BigDecimal("4999.00")))
+                .isInstanceOf(ValidationException.class);
+
+        Assertions.assertThat(outboxEventRepository.count()).isEqualTo(3);
+
+        // When dispatched
+        int dispatched = outboxDispatcher.dispatch();
+
+        // Then only the committed mutations reach the sink, in commit order, and the outbox is drained
+        Assertions.assertThat(dispatched).isEqualTo(3);
+        Assertions.assertThat(outboxEventRepository.count()).isZero();
+
+        List<OutboxEvent> events = sink.getEvents();
+        Assertions.assertThat(events.stream().map(OutboxEvent::getType).collect(Collectors.toList()))
+                .containsExactly(OutboxEvent.Type.DEPOSIT, OutboxEvent.Type.DEPOSIT, OutboxEvent.Type.WITHDRAWAL);
+        Assertions.assertThat(events.get(2).getAmount()).isEqualByComparingTo("-20.00");
+        Assertions.assertThat(events.get(2).getBalance())
+                .isEqualByComparingTo(walletService.getWallet(walletId).getBalance());
+
+        // And batch metrics are recorded (batch size of 2 - so two batches)
+        OutboxStatsResponse stats = outboxDispatcher.getStats();
+        Assertions.assertThat(stats.getBatches()).isEqualTo(2);
+        Assertions.assertThat(stats.getEventsDispatched()).isEqualTo(3);
+        Assertions.assertThat(stats.getLastBatchSize()).isEqualTo(1);
+        Assertions.assertThat(stats.getPending()).isZero();
+        Assertions.assertThat(stats.getMaxLagMillis()).isGreaterThanOrEqualTo(stats.getLastLagMillis());
+
+        // And dispatching again is a no-op
+        Assertions.assertThat(outboxDispatcher.dispatch()).isZero();
+    }
+}
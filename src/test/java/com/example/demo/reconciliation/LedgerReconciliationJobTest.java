@@ -0,0 +1,103 @@
+package com.example.demo.reconciliation;
+
+import com.example.demo.api.ReconciliationRunResponse;
+import com.example.demo.model.ReconciliationRun;
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.ReconciliationRunRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.service.WalletService;
+import com.example.demo.storage.ColdStorageCompactionJob;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Separate (in-memory) database, as the test deliberately corrupts a wallet balance. One wallet per chunk.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reconciliation-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/reconciliation-test/cold",
+        "hubpay.reconciliation.report-directory=target/reconciliation-test/reports",
+        "hubpay.reconciliation.chunk-size=1",
+        "hubpay.reconciliation.max-chunks-per-second=0",
+        "hubpay.outbox.enabled=false"
+})
+public class LedgerReconciliationJobTest {
+    @Autowired
+    private LedgerReconciliationJob reconciliationJob;
+
+    @Autowired
+    private ReconciliationRunRepository reconciliationRunRepository;
+
+    @Autowired
+    private ColdStorageCompactionJob compactionJob;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Test
+    void reconcilesHotAndColdTransactionsReportsDiscrepanciesAndResumes() throws Exception {
+        // Given wallets with recent transactions...
+        walletService.addFunds(1L, new BigDecimal("100.00"));
+        walletService.withdrawFunds(1L, new BigDecimal("30.00"));
+        walletService.addFunds(2L, new BigDecimal("50.00"));
+
+        // And an old (balanced) transaction which has been moved to cold storage
+        Wallet wallet = walletRepository.findById(3L).get();
+        WalletTransaction old = new WalletTransaction(wallet, new BigDecimal("-75.00"));
+        old.setTimestamp(LocalDateTime.now().minusDays(400));
+        walletTransactionRepository.save(old);
+        wallet.setBalance(wallet.getBalance().add(old.getAmount()));
+        walletRepository.save(wallet);
+
+        Assertions.assertThat(compactionJob.compact(LocalDateTime.now().minusDays(1))).isEqualTo(1);
+
+        // When reconciled, then every wallet balances
+        ReconciliationRunResponse clean = reconciliationJob.run().get();
+
+        Assertions.assertThat(clean.getStatus()).isEqualTo("COMPLETED");
+        Assertions.assertThat(clean.getWalletsChecked()).isEqualTo(3);
+        Assertions.assertThat(clean.getCheckpointWalletId()).isEqualTo(3);
+        Assertions.assertThat(clean.getDiscrepancies()).isZero();
+
+        // And when a balance is changed without a wallet transaction, a new run reports it
+        Wallet tampered = walletRepository.findById(2L).get();
+        tampered.setBalance(tampered.getBalance().add(new BigDecimal("5.00")));
+        walletRepository.save(tampered);
+
+        ReconciliationRunResponse dirty = reconciliationJob.run().get();
+
+        Assertions.assertThat(dirty.getId()).isNotEqualTo(clean.getId());
+        Assertions.assertThat(dirty.getDiscrepancies()).isEqualTo(1);
+
+        List<String> report = Files.readAllLines(Paths.get(dirty.getReportFile()));
+        Assertions.assertThat(report).hasSize(1);
+        Assertions.assertThat(report.get(0)).contains("\"walletId\":2").contains("\"difference\":5.00");
+
+        // And a failed run resumes from its checkpoint (only wallet 3 left to check)
+        ReconciliationRun failed = new ReconciliationRun(3, dirty.getReportFile());
+        failed.setStatus(ReconciliationRun.Status.FAILED);
+        failed.setCheckpointWalletId(2);
+        failed = reconciliationRunRepository.save(failed);
+
+        ReconciliationRunResponse resumed = reconciliationJob.run().get();
+
+        Assertions.assertThat(resumed.getId()).isEqualTo(failed.getId());
+        Assertions.assertThat(resumed.getStatus()).isEqualTo("COMPLETED");
+        Assertions.assertThat(resumed.getWalletsChecked()).isEqualTo(1);
+        Assertions.assertThat(resumed.getDiscrepancies()).isZero();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo.search;
+
+import com.example.demo.api.CustomerSearchResponse;
+import com.example.demo.model.Customer;
+import com.example.demo.repository.CustomerRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+
+// Separate (in-memory) database, as customers are added and removed. Merges are triggered explicitly.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:customer-search-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/customer-search-test/cold",
+        "hubpay.customer-search.build-chunk-size=1",
+        "hubpay.customer-search.max-pending-changes=1000",
+        "hubpay.outbox.enabled=false"
+})
+public class CustomerNameIndexTest {
+    @Autowired
+    private CustomerNameIndex customerNameIndex;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void searchesIndexKeptInSyncWithCommittedChanges() {
+        // Given the index built at startup (one customer per build chunk)
+        Assertions.assertThat(customerNameIndex.size()).isEqualTo(3);
+        Assertions.assertThat(customerNameIndex.search("j", 10).values()).containsExactly("Joe Bloggs", "John Smith");
+
+        // When customers are added, renamed and removed, then searches see committed changes immediately
+        saveCustomer(4L, "Joanna Jones");
+        saveCustomer(5L, "Jolene Gone");
+        saveCustomer(2L, "Jack Smith");
+        customerRepository.deleteById(5L);
+
+        Assertions.assertThat(customerNameIndex.search("J", 10).values())
+                .containsExactly("Jack Smith", "Joanna Jones", "Joe Bloggs");
+
+        // But not rolled back ones
+        transactionTemplate.executeWithoutResult(status -> {
+            saveCustomer(6L, "Joanne Rollback");
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertThat(customerNameIndex.search("joanne", 10)).isEmpty();
+
+        // And merging the pending changes into the sorted names gives the same results
+        customerNameIndex.merge();
+
+        Assertions.assertThat(customerNameIndex.pendingChanges()).isZero();
+        Assertions.assertThat(customerNameIndex.size()).isEqualTo(4);
+        Assertions.assertThat(customerNameIndex.search("J", 10).keySet()).containsExactly(2L, 4L, 1L);
+        Assertions.assertThat(customerNameIndex.search("J", 1).keySet()).containsExactly(2L);
+    }
+
+    @Test
+    void searchEndpoint() {
+        // Given a customer with a wallet
+        ResponseEntity<CustomerSearchResponse> response = restTemplate.getForEntity(
+                "/api/customer/search?prefix=fred", CustomerSearchResponse.class);
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody().getCustomers()).hasSize(1);
+        Assertions.assertThat(response.getBody().getCustomers().get(0).getName()).isEqualTo("Fred Truman");
+        Assertions.assertThat(response.getBody().getCustomers().get(0).getWalletId()).isEqualTo(3L);
+        Assertions.assertThat(response.getBody().getCustomers().get(0).getBalance())
+                .isEqualByComparingTo(new BigDecimal("675.00"));
+
+        // And a prefix is required
+        Assertions.assertThat(restTemplate.getForEntity("/api/customer/search?prefix=", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        Assertions.assertThat(restTemplate.getForEntity("/api/customer/search?prefix=f&limit=1000", String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private void saveCustomer(Long id, String name) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setName(name);
+        customerRepository.save(customer);
+    }
+}
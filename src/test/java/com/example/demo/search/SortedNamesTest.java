@@ -0,0 +1,59 @@
+package com.example.demo.search;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SortedNamesTest {
+    @Test
+    void prefixSearchAcrossMergedAndChangedNames() {
+        // Given names sorted in two separate ranges, then merged
+        Map<Long, String> lower = new HashMap<>();
+        lower.put(1L, "Joe Bloggs");
+        lower.put(2L, "john smith");
+        lower.put(3L, "Fred Truman");
+
+        Map<Long, String> upper = new HashMap<>();
+        upper.put(10L, "JOHN SMITH");
+        upper.put(11L, "Jo");
+        upper.put(12L, "Zoe");
+
+        SortedNames names = SortedNames.merge(SortedNames.of(lower), SortedNames.of(upper));
+
+        // Then searches are case-insensitive, with equal names in id order
+        Assertions.assertThat(matches(names, "jo")).containsExactly(
+                "11:Jo", "1:Joe Bloggs", "2:john smith", "10:JOHN SMITH");
+        Assertions.assertThat(matches(names, "JOHN S")).containsExactly("2:john smith", "10:JOHN SMITH");
+        Assertions.assertThat(matches(names, "z")).containsExactly("12:Zoe");
+        Assertions.assertThat(names.firstMatch("Joan")).isEqualTo(-1);
+        Assertions.assertThat(names.firstMatch("zz")).isEqualTo(-1);
+
+        // And when changes are applied, renamed and removed customers move or disappear
+        Map<Long, String> changes = new HashMap<>();
+        changes.put(2L, "Jane Smith");
+        changes.put(11L, null);
+        changes.put(20L, "Johanna");
+
+        SortedNames changed = names.withChanges(changes);
+
+        Assertions.assertThat(changed.size()).isEqualTo(6);
+        Assertions.assertThat(matches(changed, "jo")).containsExactly("1:Joe Bloggs", "20:Johanna", "10:JOHN SMITH");
+        Assertions.assertThat(matches(changed, "ja")).containsExactly("2:Jane Smith");
+        Assertions.assertThat(matches(names, "jo")).hasSize(4);
+    }
+
+    private static List<String> matches(SortedNames names, String prefix) {
+        List<String> matches = new ArrayList<>();
+        int index = names.firstMatch(prefix);
+
+        for (; index >= 0 && index < names.size() && names.startsWith(index, prefix); index++) {
+            matches.add(names.id(index) + ":" + names.name(index));
+        }
+
+        return matches;
+    }
+}
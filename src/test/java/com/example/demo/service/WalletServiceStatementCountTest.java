@@ -0,0 +1,114 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Customer;
+import com.example.demo.model.WalletTransaction;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.math.BigDecimal;
+import java.util.List;
+
+// Statements issued per operation (Hibernate statistics count every JDBC statement prepared, including sequence calls)
+// - guards the persistence tuning against silent regressions.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statement-count-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/statement-count-test-cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.balance-history.checkpoint-interval=1000",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+public class WalletServiceStatementCountTest {
+    // Find wallet, double-submit guard query, outbox event id, insert transaction, insert outbox event, update wallet.
+    private static final int DEPOSIT_STATEMENTS = 6;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void clearStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void depositTakesTransactionIdsFromPooledBlocks() {
+        int deposits = WalletTransaction.ID_ALLOCATION_SIZE + 10;
+
+        // When more deposits are made than fit in one block of wallet transaction ids (amounts differ, so none is
+        // rejected as a double-submit)
+        for (int i = 0; i < deposits; i++) {
+            walletService.addFunds(2L, BigDecimal.valueOf(10 + i));
+        }
+
+        // Then each deposit costs a fixed number of statements, plus a sequence call per block (at most 3 here - the
+        // first block takes two calls)
+        Assertions.assertThat(statistics.getPrepareStatementCount())
+                .isBetween((long) DEPOSIT_STATEMENTS * deposits, (long) DEPOSIT_STATEMENTS * deposits + 3);
+
+        // And only the wallet itself is loaded (no customer)
+        Assertions.assertThat(statistics.getEntityLoadCount()).isEqualTo(deposits);
+    }
+
+    @Test
+    void pageReadsWalletAndProjectionOnly() {
+        // Given a wallet with transactions
+        for (int i = 0; i < 3; i++) {
+            walletService.addFunds(1L, BigDecimal.valueOf(20 + i));
+        }
+
+        statistics.clear();
+
+        // When a page of transactions is read
+        List<WalletTransaction> transactions = walletService.pageWalletTransactions(1L, 0, 10).getContent();
+
+        // Then two queries are issued, and only the wallet is loaded as an entity
+        Assertions.assertThat(transactions).extracting(tx -> tx.getAmount().toPlainString())
+                .containsExactly("22.00", "21.00", "20.00");
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        Assertions.assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+
+        // And a wallet read is a single query
+        statistics.clear();
+        walletService.getWallet(1L);
+
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void insertsAreBatched() {
+        // When several rows of one table are inserted in a transaction
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (long id = 1000; id < 1020; id++) {
+                Customer customer = new Customer();
+                customer.setId(id);
+                customer.setName("Batch " + id);
+                entityManager.persist(customer);
+            }
+        });
+
+        // Then one statement is prepared (and executed as a JDBC batch)
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
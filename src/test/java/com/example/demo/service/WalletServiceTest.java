@@ -1,21 +1,31 @@
 package com.example.demo.service;
 
+import com.example.demo.api.WalletContentionResponse;
 import com.example.demo.exception.ValidationException;
+import com.example.demo.metrics.WalletContentionProfiler;
 import com.example.demo.model.Wallet;
 import com.example.demo.model.WalletTransaction;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @SpringBootTest
 public class WalletServiceTest {
     @Autowired
     private WalletService walletService;
 
+    @Autowired
+    private WalletContentionProfiler contentionProfiler;
+
     @Test
     void list() {
         List<Wallet> wallets = walletService.listWallets();
@@ -23,6 +33,28 @@ public class WalletServiceTest {
         Assertions.assertThat(wallets).isNotEmpty();
     }
 
+    @Test
+    void getWalletsBulk() {
+        // Given a mix of existing, duplicate and unknown ids
+        List<Long> ids = Arrays.asList(3L, 1L, -1L, 3L, 2L);
+
+        // When wallets retrieved in bulk
+        Map<Long, Wallet> wallets = walletService.getWallets(ids);
+
+        // Then existing wallets are returned once each, in request order
+        Assertions.assertThat(wallets.keySet()).containsExactly(3L, 1L, 2L);
+        Assertions.assertThat(wallets.get(1L).getBalance()).isEqualTo(walletService.getWallet(1L).getBalance());
+    }
+
+    @Test
+    void getWalletsTooMany() {
+        List<Long> ids = LongStream.rangeClosed(1, WalletService.MAXIMUM_BULK_WALLETS + 1).boxed()
+                .collect(Collectors.toList());
+
+        Assertions.assertThatThrownBy(() -> walletService.getWallets(ids))
+                .isInstanceOf(ValidationException.class);
+    }
+
     @Test
     void addFundsDepositTooLow() {
         Assertions.assertThatThrownBy(
@@ -54,6 +86,14 @@ public class WalletServiceTest {
         Assertions.assertThat(after.getBalance()).isEqualTo(expectedBalance);
     }
 
+    @Test
+    void addFundsDepositTooManyDecimalPlaces() {
+        Assertions.assertThatThrownBy(
+                        () -> walletService.addFunds(1L, WalletService.MINIMUM_DEPOSIT_AMOUNT.add(new BigDecimal("0.001"))))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Deposit amount must not have more than 2 decimal places");
+    }
+
     @Test
     void withdrawFundsWithdrawalTooLow() {
         Assertions.assertThatThrownBy(
@@ -121,7 +161,7 @@ public class WalletServiceTest {
         Wallet before = walletService.getWallet(walletId);
 
         // With zero or more transactions...
-        List<WalletTransaction> transactions = walletService.pageWalletTransactions(walletId, 0, 50);
+        List<WalletTransaction> transactions = walletService.pageWalletTransactions(walletId, 0, 50).getContent();
 
         int originalTransactionCount = transactions.size();
 
@@ -134,11 +174,16 @@ public class WalletServiceTest {
         walletService.withdrawFunds(walletId, amount.multiply(BigDecimal.valueOf(3)));
 
         // When page of wallet transactions now retrieved
-        transactions = walletService.pageWalletTransactions(walletId, 0, 50);
+        Page<WalletTransaction> page = walletService.pageWalletTransactions(walletId, 0, 50);
+        transactions = page.getContent();
 
         // There should be N more transactions than there were originally...
         Assertions.assertThat(transactions).hasSize(originalTransactionCount + 3);
 
+        // And the total (from the wallet's transaction counter) should match...
+        Assertions.assertThat(page.getTotalElements()).isEqualTo(originalTransactionCount + 3);
+        Assertions.assertThat(page.hasNext()).isFalse();
+
         // And timestamp of first transaction in list should be later than that of second transaction...
         Assertions.assertThat(transactions.get(0).getTimestamp()).isAfter(transactions.get(1).getTimestamp());
 
@@ -201,4 +246,29 @@ public class WalletServiceTest {
 
         Assertions.assertThat(after.getBalance()).isEqualTo(expectedBalance);
     }
+
+    @Test
+    void contentionProfilerTracksMutationsAndDoubleSubmits() {
+        // Given a deposit followed by an immediate double-submit
+        Long walletId = 2L;
+        BigDecimal amount = WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(9));
+
+        walletService.addFunds(walletId, amount);
+        Assertions.assertThatThrownBy(() -> walletService.addFunds(walletId, amount))
+                .isInstanceOf(ValidationException.class);
+
+        // When most contended wallets retrieved
+        WalletContentionResponse stats = contentionProfiler.topWallets(100).stream()
+                .filter(wallet -> wallet.getWalletId() == walletId)
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+
+        // Then both the committed mutation and the rejection have been recorded, and nothing is left in flight
+        Assertions.assertThat(stats.getMutations()).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(stats.getDoubleSubmitRejections()).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(stats.getInFlight()).isZero();
+
+        // And a limit below one still lists the most contended wallet
+        Assertions.assertThat(contentionProfiler.topWallets(-1)).hasSize(1);
+    }
 }
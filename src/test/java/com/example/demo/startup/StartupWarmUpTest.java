@@ -0,0 +1,122 @@
+package com.example.demo.startup;
+
+import com.example.demo.api.ReadinessResponse;
+import com.example.demo.controller.AdminController;
+import com.example.demo.leaderboard.WalletLeaderboards;
+import com.example.demo.metrics.WalletContentionProfiler;
+import com.example.demo.repository.BalanceCheckpointRepository;
+import com.example.demo.repository.CustomerRepository;
+import com.example.demo.repository.OutboxEventRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+// Separate (in-memory) database, with a short warm-up enabled.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:warm-up-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/warm-up-test-cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.warm-up.enabled=true",
+        "hubpay.warm-up.wallets=4",
+        "hubpay.warm-up.iterations-per-round=20",
+        "hubpay.warm-up.max-duration=PT3S",
+        "hubpay.warm-up.settled-rounds=2"
+})
+public class StartupWarmUpTest {
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private AdminController adminController;
+
+    @Autowired
+    private ReadinessGateFilter readinessGateFilter;
+
+    @Autowired
+    private WalletContentionProfiler contentionProfiler;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private BalanceCheckpointRepository balanceCheckpointRepository;
+
+    @Autowired
+    private WalletLeaderboards leaderboards;
+
+    @Test
+    void warmsUpWithoutSideEffectsAndReportsStartupPhases() {
+        // Given the application has started (warm-up runs before it is marked ready)
+        ResponseEntity<ReadinessResponse> response = adminController.readiness();
+
+        // Then it is ready and reports where startup time went
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody().getReadinessState()).isEqualTo("ACCEPTING_TRAFFIC");
+        Assertions.assertThat(response.getBody().getStartupPhaseMillis()).containsKeys(
+                StartupPhases.CONTEXT_REFRESH, StartupPhases.SCHEMA_CREATION, StartupPhases.IMPORT_SQL,
+                StartupPhases.WARM_UP);
+        Assertions.assertThat(response.getBody().getWarmUpRounds()).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(response.getBody().getWarmUpIterations())
+                .isEqualTo(response.getBody().getWarmUpRounds() * 20L);
+
+        // And nothing done by the warm-up is left behind
+        Assertions.assertThat(customerRepository.count()).isEqualTo(3);
+        Assertions.assertThat(walletRepository.count()).isEqualTo(3);
+        Assertions.assertThat(walletTransactionRepository.count()).isZero();
+        Assertions.assertThat(balanceCheckpointRepository.count()).isZero();
+        Assertions.assertThat(outboxEventRepository.count()).isZero();
+        Assertions.assertThat(contentionProfiler.topWallets(10)).isEmpty();
+        Assertions.assertThat(leaderboards.topVolumes(10)).isEmpty();
+        Assertions.assertThat(leaderboards.topBalances(10)).allSatisfy(
+                rank -> Assertions.assertThat(rank.getWalletId()).isPositive());
+    }
+
+    @Test
+    void gatesWalletRequestsUntilReady() throws Exception {
+        // Given the instance is not (or no longer) ready
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+
+        try {
+            // Then wallet requests are rejected and the readiness probe fails
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            readinessGateFilter.doFilter(new MockHttpServletRequest("GET", "/api/wallet/1"), response, chain);
+
+            Assertions.assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+            Assertions.assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+            Assertions.assertThat(chain.getRequest()).isNull();
+
+            Assertions.assertThat(adminController.readiness().getStatusCode())
+                    .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        } finally {
+            AvailabilityChangeEvent.publish(context, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+
+        // And once ready, requests pass through
+        MockFilterChain chain = new MockFilterChain();
+        readinessGateFilter.doFilter(new MockHttpServletRequest("GET", "/api/wallet/1"),
+                new MockHttpServletResponse(), chain);
+
+        Assertions.assertThat(chain.getRequest()).isNotNull();
+    }
+}
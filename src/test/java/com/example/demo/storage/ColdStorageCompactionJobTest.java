@@ -0,0 +1,147 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBootTest
+public class ColdStorageCompactionJobTest {
+    @Autowired
+    private ColdStorageCompactionJob compactionJob;
+
+    @Autowired
+    private ColdTransactionStore coldTransactionStore;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Test
+    void compactMovesOldTransactionsAndPagesAcrossTiers() {
+        // Given a wallet with some old transactions...
+        Long walletId = 3L;
+        Wallet wallet = walletRepository.findById(walletId).get();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < 5; i++) {
+            WalletTransaction transaction = new WalletTransaction(wallet, BigDecimal.valueOf(10 + i).setScale(2));
+            transaction.setTimestamp(now.minusDays(400 + i));
+            walletTransactionRepository.save(transaction);
+        }
+
+        // And some recent ones (different amounts to pass double-submit check)
+        walletService.addFunds(walletId, WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(7)));
+        walletService.addFunds(walletId, WalletService.MINIMUM_DEPOSIT_AMOUNT.add(BigDecimal.valueOf(8)));
+
+        List<Long> before = transactionIds(walletService.pageWalletTransactions(walletId, 0, 1000).getContent());
+
+        // When old transactions compacted into cold storage (a segment per month they fall in)
+        int moved = 0;
+        for (int segment; (segment = compactionJob.compact(now.minusDays(1))) > 0; ) {
+            moved += segment;
+        }
+
+        // Then they are no longer in the hot table...
+        Assertions.assertThat(moved).isGreaterThanOrEqualTo(5);
+        Assertions.assertThat(walletTransactionRepository
+                .findAllByTimestampBeforeOrderByTimestampAsc(now.minusDays(1), PageRequest.of(0, 1))).isEmpty();
+
+        // But full history (and every page boundary across hot and cold tiers) is unchanged
+        Assertions.assertThat(transactionIds(walletService.pageWalletTransactions(walletId, 0, 1000).getContent()))
+                .isEqualTo(before);
+
+        List<Long> paged = new ArrayList<>();
+        for (int pageNumber = 0; paged.size() < before.size(); pageNumber++) {
+            List<WalletTransaction> page = walletService.pageWalletTransactions(walletId, pageNumber, 2).getContent();
+
+            Assertions.assertThat(page).isNotEmpty();
+            paged.addAll(transactionIds(page));
+        }
+
+        Assertions.assertThat(paged).isEqualTo(before);
+        Assertions.assertThat(walletService.pageWalletTransactions(walletId, before.size(), 1).getContent()).isEmpty();
+
+        // And segments pass a full integrity check
+        Assertions.assertThat(coldTransactionStore.verifyAll()).isEmpty();
+
+        // And compacting again with the same cutoff is a no-op
+        Assertions.assertThat(compactionJob.compact(now.minusDays(1))).isZero();
+    }
+
+    @Test
+    void segmentFileDetectsCorruption(@TempDir Path directory) throws Exception {
+        // Given a segment file holding transactions for two wallets
+        Wallet wallet1 = new Wallet();
+        wallet1.setId(1L);
+        Wallet wallet2 = new Wallet();
+        wallet2.setId(2L);
+
+        List<WalletTransaction> transactions = new ArrayList<>();
+        LocalDateTime timestamp = LocalDateTime.now();
+        long id = 100;
+
+        for (Wallet wallet : new Wallet[]{wallet1, wallet2}) {
+            for (int i = 0; i < 10; i++) {
+                WalletTransaction transaction =
+                        new WalletTransaction(wallet, new BigDecimal("-12.34").add(BigDecimal.valueOf(i)));
+                transaction.setId(id--);
+                transaction.setTimestamp(timestamp.minusMinutes(i));
+                transactions.add(transaction);
+            }
+        }
+
+        Path path = directory.resolve("test" + ColdTransactionStore.SEGMENT_FILE_SUFFIX);
+        long checksum = ColdSegmentFile.write(path, transactions, 4);
+
+        // When opened, index answers counts and pages read back the original records
+        ColdSegmentFile segment = ColdSegmentFile.open(path);
+
+        Assertions.assertThat(segment.count(1L)).isEqualTo(10);
+        Assertions.assertThat(segment.count(2L)).isEqualTo(10);
+        Assertions.assertThat(segment.count(3L)).isZero();
+
+        List<WalletTransaction> page = segment.read(wallet2, 3, 4);
+        Assertions.assertThat(transactionIds(page)).containsExactly(87L, 86L, 85L, 84L);
+        Assertions.assertThat(page.get(0).getAmount()).isEqualTo(new BigDecimal("-9.34"));
+        Assertions.assertThat(page.get(0).getTimestamp()).isEqualTo(timestamp.minusMinutes(3));
+
+        segment.verify(checksum);
+
+        // And when a byte in the first block is corrupted, integrity check fails
+        path.toFile().setWritable(true);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(10);
+            int value = file.read();
+            file.seek(10);
+            file.write(value ^ 0xFF);
+        }
+
+        Assertions.assertThatThrownBy(() -> segment.verify(checksum)).isInstanceOf(IOException.class);
+    }
+
+    private static List<Long> transactionIds(List<WalletTransaction> transactions) {
+        return transactions.stream().map(WalletTransaction::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.Wallet;
+import com.example.demo.model.WalletTransaction;
+import com.example.demo.reconciliation.LedgerReconciliationJob;
+import com.example.demo.repository.ColdSegmentRepository;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Separate (in-memory) database, as retention changes wallet opening balances and transaction counts.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:retention-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/retention-test/cold",
+        "hubpay.reconciliation.report-directory=target/retention-test/reports",
+        "hubpay.outbox.enabled=false"
+})
+public class ColdStorageRetentionTest {
+    @Autowired
+    private ColdStorageCompactionJob compactionJob;
+
+    @Autowired
+    private ColdSegmentRepository coldSegmentRepository;
+
+    @Autowired
+    private LedgerReconciliationJob reconciliationJob;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Test
+    void segmentsAreMonthlyAndExpiredMonthsDroppedWhole() throws Exception {
+        // Given a wallet with old transactions in two different months...
+        LocalDateTime monthStart = LocalDateTime.now().toLocalDate().withDayOfMonth(1).atStartOfDay();
+        LocalDateTime olderMonth = monthStart.minusMonths(14);
+        LocalDateTime oldMonth = monthStart.minusMonths(13);
+
+        saveOld(3L, "-75.00", olderMonth.plusDays(3));
+        saveOld(3L, "-25.00", olderMonth.plusDays(20));
+        saveOld(3L, "40.00", oldMonth.plusDays(1));
+
+        // And a recent one
+        walletService.addFunds(3L, new BigDecimal("10.00"));
+
+        // When compacted, then each month is written to its own segment
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(1);
+
+        Assertions.assertThat(compactionJob.compact(cutoff)).isEqualTo(2);
+        Assertions.assertThat(compactionJob.compact(cutoff)).isEqualTo(1);
+        Assertions.assertThat(compactionJob.compact(cutoff)).isZero();
+        Assertions.assertThat(coldSegmentRepository.findAllByOrderByCutoffAsc())
+                .extracting(segment -> segment.getCutoff())
+                .containsExactly(oldMonth, oldMonth.plusMonths(1));
+
+        String droppedFile = coldSegmentRepository.findAllByOrderByCutoffAsc().get(0).getFileName();
+        Long versionBeforeDrop = walletService.getWalletVersion(3L);
+
+        // And when the older month is past retention, then its segment alone is dropped
+        Assertions.assertThat(compactionJob.dropExpired(oldMonth)).isEqualTo(1);
+        Assertions.assertThat(compactionJob.dropExpired(oldMonth)).isZero();
+
+        Assertions.assertThat(coldSegmentRepository.count()).isEqualTo(1);
+        Assertions.assertThat(Files.exists(Paths.get("target/retention-test/cold", droppedFile))).isFalse();
+
+        // And its transactions are folded into the wallet's opening balance and transaction count
+        Wallet wallet = walletRepository.findById(3L).get();
+
+        Assertions.assertThat(wallet.getOpeningBalance()).isEqualByComparingTo("575.00");
+        Assertions.assertThat(wallet.getBalance()).isEqualByComparingTo("625.00");
+        Assertions.assertThat(wallet.getTransactionCount()).isEqualTo(2);
+
+        // And its version moves on, although its transaction count went down (so a client's ETag no longer matches)
+        Assertions.assertThat(wallet.getVersion()).isGreaterThan(versionBeforeDrop);
+
+        // And remaining history pages across both tiers with a consistent total
+        List<String> amounts = walletService.pageWalletTransactions(3L, 0, 10).getContent().stream()
+                .map(tx -> tx.getAmount().toPlainString())
+                .collect(Collectors.toList());
+
+        Assertions.assertThat(amounts).containsExactly("10.00", "40.00");
+        Assertions.assertThat(walletService.pageWalletTransactions(3L, 0, 10).getTotalElements()).isEqualTo(2);
+
+        // And every wallet still reconciles
+        Assertions.assertThat(reconciliationJob.run().get().getDiscrepancies()).isZero();
+    }
+
+    // Saves an old transaction, updating the wallet as WalletService would.
+    private void saveOld(Long walletId, String amount, LocalDateTime timestamp) {
+        Wallet wallet = walletRepository.findById(walletId).get();
+        WalletTransaction transaction = new WalletTransaction(wallet, new BigDecimal(amount));
+        transaction.setTimestamp(timestamp);
+        walletTransactionRepository.save(transaction);
+
+        wallet.setBalance(wallet.getBalance().add(transaction.getAmount()));
+        wallet.setTransactionCount(wallet.getTransactionCount() + 1);
+        walletRepository.save(wallet);
+    }
+}
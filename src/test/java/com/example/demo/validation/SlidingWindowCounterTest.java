@@ -0,0 +1,47 @@
+package com.example.demo.validation;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SlidingWindowCounterTest {
+    @Test
+    void totalsSlideWithTheWindow() {
+        // Given a 60 second window in 6 buckets of 10 seconds
+        SlidingWindowCounter counter = new SlidingWindowCounter(60_000, 6);
+        long start = 1_000_000;
+
+        counter.add(start, start, 100);
+        counter.add(start + 15_000, start + 15_000, 50);
+
+        // Then both amounts count while within the window...
+        Assertions.assertThat(counter.total(start + 59_000)).isEqualTo(150);
+
+        // And the first drops out once its bucket has left the window (window plus at most one bucket)
+        Assertions.assertThat(counter.total(start + 70_000)).isEqualTo(50);
+        Assertions.assertThat(counter.total(start + 85_000)).isZero();
+
+        // And an amount for a time already outside the window is ignored
+        counter.add(start, start + 85_000, 25);
+        Assertions.assertThat(counter.total(start + 85_000)).isZero();
+    }
+
+    @Test
+    void releasesAndIdleGaps() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60_000, 6);
+        long start = 1_000_000;
+
+        // Given a reserved amount which is then released
+        counter.add(start, start, 100);
+        counter.add(start, start + 5_000, -100);
+        counter.add(start + 5_000, start + 5_000, 40);
+
+        Assertions.assertThat(counter.total(start + 5_000)).isEqualTo(40);
+
+        // When idle for many windows, then everything has expired and new amounts count from zero
+        long later = start + 3_600_000;
+        Assertions.assertThat(counter.total(later)).isZero();
+
+        counter.add(later, later, 10);
+        Assertions.assertThat(counter.total(later + 1)).isEqualTo(10);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Rejection throughput of the compiled validation rules versus the previous approach (message built and exception with
+// a full stack trace thrown per rejection). Run with: mvn test -Pbenchmark -Dbenchmark=ValidationRejectionBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationRejectionBenchmark {
+    private static final BigDecimal MAXIMUM_DEPOSIT_AMOUNT = BigDecimal.valueOf(10000);
+
+    private ValidationRuleSet rules;
+    private BigDecimal tooHigh;
+
+    @Setup
+    public void setup() throws Exception {
+        rules = new ValidationRules("").current();
+        tooHigh = new BigDecimal("20000.00");
+    }
+
+    @Benchmark
+    public Object compiledRuleResult() {
+        return rules.precheck(FundsOperation.DEPOSIT, tooHigh);
+    }
+
+    @Benchmark
+    public Object compiledRuleThrown() {
+        try {
+            ValidationException rejection = rules.precheck(FundsOperation.DEPOSIT, tooHigh);
+
+            if (rejection != null) {
+                throw rejection;
+            }
+            return null;
+        } catch (ValidationException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object stackTraceExceptionThrown() {
+        try {
+            if (tooHigh.compareTo(MAXIMUM_DEPOSIT_AMOUNT) > 0) {
+                throw new IllegalArgumentException("Deposit amount must not exceed " + MAXIMUM_DEPOSIT_AMOUNT);
+            }
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+public class ValidationRulesTest {
+    @Test
+    void defaultsApplyWithoutRulesFile() throws Exception {
+        ValidationRuleSet rules = new ValidationRules("").current();
+
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, WalletService.MINIMUM_DEPOSIT_AMOUNT)).isNull();
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, new BigDecimal("9.99")))
+                .hasMessage("Deposit amount must be at least " + WalletService.MINIMUM_DEPOSIT_AMOUNT);
+        Assertions.assertThat(rules.precheck(FundsOperation.WITHDRAWAL, new BigDecimal("5000.01")))
+                .hasMessage("Withdrawal amount must not exceed " + WalletService.MAXIMUM_WITHDRAWAL_AMOUNT);
+        Assertions.assertThat(rules.precheck(FundsOperation.WITHDRAWAL, null))
+                .hasMessage("Withdrawal amount is required");
+
+        // Trailing zeros beyond the allowed scale are fine, significant digits are not
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, new BigDecimal("12.3400"))).isNull();
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, new BigDecimal("12.345")))
+                .hasMessage("Deposit amount must not have more than 2 decimal places");
+
+        // Rejections are pre-allocated and stackless
+        ValidationException rejection = rules.precheck(FundsOperation.DEPOSIT, BigDecimal.ONE);
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, BigDecimal.ZERO)).isSameAs(rejection);
+        Assertions.assertThat(rejection.getStackTrace()).isEmpty();
+
+        // No tier overrides - tier check is a no-op
+        Assertions.assertThat(rules.checkTier(FundsOperation.DEPOSIT, "UNKNOWN", new BigDecimal("9999"))).isNull();
+    }
+
+    @Test
+    void tierOverridesWidenPrecheckAndApplyPerTier(@TempDir Path directory) throws Exception {
+        Path rulesFile = directory.resolve("validation-rules.properties");
+        write(rulesFile, "deposit.max=1000", "tier.PREMIUM.deposit.max=50000", "tier.BASIC.deposit.min=50");
+
+        ValidationRuleSet rules = new ValidationRules(rulesFile.toString()).current();
+        BigDecimal large = new BigDecimal("20000");
+
+        // Precheck accepts anything valid for at least one tier...
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, large)).isNull();
+        Assertions.assertThat(rules.precheck(FundsOperation.DEPOSIT, new BigDecimal("50001")))
+                .hasMessage("Deposit amount must not exceed 50000");
+
+        // And tier check applies each wallet's own limits
+        Assertions.assertThat(rules.checkTier(FundsOperation.DEPOSIT, "PREMIUM", large)).isNull();
+        Assertions.assertThat(rules.checkTier(FundsOperation.DEPOSIT, null, large))
+                .hasMessage("Deposit amount must not exceed 1000");
+        Assertions.assertThat(rules.checkTier(FundsOperation.DEPOSIT, "BASIC", new BigDecimal("20")))
+                .hasMessage("Deposit amount must be at least 50");
+        Assertions.assertThat(rules.ruleFor(FundsOperation.WITHDRAWAL, "PREMIUM").getMaximum())
+                .isEqualByComparingTo(WalletService.MAXIMUM_WITHDRAWAL_AMOUNT);
+    }
+
+    @Test
+    void reloadSwapsRulesAndKeepsPreviousOnInvalidFile(@TempDir Path directory) throws Exception {
+        Path rulesFile = directory.resolve("validation-rules.properties");
+        write(rulesFile, "withdrawal.max=100");
+
+        ValidationRules validationRules = new ValidationRules(rulesFile.toString());
+        BigDecimal amount = new BigDecimal("150");
+
+        Assertions.assertThat(validationRules.current().precheck(FundsOperation.WITHDRAWAL, amount)).isNotNull();
+
+        // When file changed, new rules are compiled and swapped in
+        write(rulesFile, "withdrawal.max=200");
+        Files.setLastModifiedTime(rulesFile, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        validationRules.reloadIfChanged();
+
+        ValidationRuleSet reloaded = validationRules.current();
+        Assertions.assertThat(reloaded.precheck(FundsOperation.WITHDRAWAL, amount)).isNull();
+
+        // But an invalid file is ignored
+        write(rulesFile, "withdrawal.min=500", "withdrawal.max=200");
+        Files.setLastModifiedTime(rulesFile, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        validationRules.reloadIfChanged();
+
+        Assertions.assertThat(validationRules.current()).isSameAs(reloaded);
+
+        // And not tried again (or reported again) until the file changes
+        FileTime invalidModifiedTime = Files.getLastModifiedTime(rulesFile);
+        write(rulesFile, "withdrawal.max=300");
+        Files.setLastModifiedTime(rulesFile, invalidModifiedTime);
+        validationRules.reloadIfChanged();
+
+        Assertions.assertThat(validationRules.current()).isSameAs(reloaded);
+
+        Files.setLastModifiedTime(rulesFile, FileTime.fromMillis(System.currentTimeMillis() + 3000));
+        validationRules.reloadIfChanged();
+
+        Assertions.assertThat(validationRules.current().precheck(FundsOperation.WITHDRAWAL, new BigDecimal("250")))
+                .isNull();
+    }
+
+    private static void write(Path file, String... lines) throws Exception {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.ISO_8859_1);
+    }
+}
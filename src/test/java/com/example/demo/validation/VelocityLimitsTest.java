@@ -0,0 +1,151 @@
+package com.example.demo.validation;
+
+import com.example.demo.exception.ValidationException;
+import com.example.demo.repository.WalletRepository;
+import com.example.demo.repository.WalletTransactionRepository;
+import com.example.demo.service.WalletService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Separate (in-memory) database, with a low hourly withdrawal limit.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:velocity-test;DB_CLOSE_DELAY=-1",
+        "hubpay.cold-storage.directory=target/velocity-test-cold",
+        "hubpay.outbox.enabled=false",
+        "hubpay.velocity.withdrawal-limits=PT1H=100.00,PT24H=1000.00"
+})
+public class VelocityLimitsTest {
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private VelocityLimits velocityLimits;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void withdrawalsLimitedPerWindow() {
+        Long walletId = 2L;
+
+        // Given withdrawals within the hourly limit (different amounts to pass double-submit check)
+        walletService.withdrawFunds(walletId, new BigDecimal("60.00"));
+
+        // When a withdrawal would take the hour's total over the limit, then it is rejected
+        Assertions.assertThatThrownBy(() -> walletService.withdrawFunds(walletId, new BigDecimal("50.00")))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Withdrawal rejected - withdrawals would exceed 100.00 per hour");
+
+        // But one up to the limit is accepted
+        walletService.withdrawFunds(walletId, new BigDecimal("40.00"));
+
+        // And deposits are unaffected
+        walletService.addFunds(walletId, new BigDecimal("500.00"));
+
+        // And counters rebuilt from wallet_transaction (e.g. after a restart or eviction) agree
+        VelocityLimits rebuilt = new VelocityLimits(walletTransactionRepository, "PT1H=100.00", 60, 10);
+
+        Assertions.assertThat(rebuilt.reserveWithdrawal(walletId, walletRepository.findVersionById(walletId),
+                new BigDecimal("0.01"))).isNotNull();
+        Assertions.assertThat(rebuilt.reserveWithdrawal(1L, walletRepository.findVersionById(1L),
+                new BigDecimal("100.00"))).isNull();
+    }
+
+    @Test
+    void rejectionDescribesWindowExactly() {
+        // Given windows which are not a whole number of hours or minutes
+        VelocityLimits seconds = new VelocityLimits(walletTransactionRepository, "PT30S=5.00", 60, 10);
+        VelocityLimits minuteAndHalf = new VelocityLimits(walletTransactionRepository, "PT90S=20.00", 60, 10);
+        long version = walletRepository.findVersionById(1L);
+
+        // Then rejections give each in the largest unit it is a whole number of
+        Assertions.assertThat(seconds.reserveWithdrawal(1L, version, new BigDecimal("5.01")))
+                .hasMessage("Withdrawal rejected - withdrawals would exceed 5.00 per 30 seconds");
+        Assertions.assertThat(minuteAndHalf.reserveWithdrawal(1L, version, new BigDecimal("20.01")))
+                .hasMessage("Withdrawal rejected - withdrawals would exceed 20.00 per 90 seconds");
+    }
+
+    @Test
+    void reservationReleasedOnRollback() {
+        Long walletId = 3L;
+
+        // Given a withdrawal reserved in a transaction which rolls back
+        transactionTemplate.executeWithoutResult(status -> {
+            Assertions.assertThat(velocityLimits.reserveWithdrawal(walletId, walletRepository.findVersionById(walletId),
+                    new BigDecimal("100.00"))).isNull();
+            status.setRollbackOnly();
+        });
+
+        // Then the amount no longer counts towards the limit
+        Assertions.assertThat(walletService.withdrawFunds(walletId, new BigDecimal("100.00"))).isNotNull();
+    }
+
+    @Test
+    void countersRebuiltAfterWalletChangedElsewhere() {
+        Long walletId = 4L;
+        jdbcTemplate.update("insert into customer (id, name) values (?, 'Velocity Test')", walletId);
+        jdbcTemplate.update("insert into wallet (customer_id, balance, opening_balance, transaction_count, version) "
+                + "values (?, 1000.00, 1000.00, 0, 0)", walletId);
+
+        // Given counters held for a wallet
+        walletService.withdrawFunds(walletId, new BigDecimal("60.00"));
+
+        // When another cluster member takes a withdrawal from it
+        jdbcTemplate.update("update wallet set balance = balance - 30, transaction_count = transaction_count + 1, "
+                + "version = version + 1 where customer_id = ?", walletId);
+        jdbcTemplate.update("insert into wallet_transaction (id, wallet_id, amount, timestamp, wallet_version) "
+                + "values (?, ?, -30.00, ?, (select version from wallet where customer_id = ?))",
+                1_000_000L, walletId, LocalDateTime.now(), walletId);
+
+        // Then the counters here are rebuilt, and count it
+        Assertions.assertThatThrownBy(() -> walletService.withdrawFunds(walletId, new BigDecimal("20.00")))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Withdrawal rejected - withdrawals would exceed 100.00 per hour");
+
+        // But what is left of the limit can still be withdrawn, after a deposit here
+        walletService.addFunds(walletId, new BigDecimal("50.00"));
+
+        Assertions.assertThat(walletService.withdrawFunds(walletId, new BigDecimal("10.00"))).isNotNull();
+    }
+
+    @Test
+    void walletWithReservationInFlightNotEvicted() {
+        // Given room for one wallet, and a withdrawal from wallet 2 reserved but not yet committed
+        VelocityLimits limits = new VelocityLimits(walletTransactionRepository, "PT1H=1000.00", 60, 1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            long version = walletRepository.findVersionById(2L);
+
+            Assertions.assertThat(limits.reserveWithdrawal(2L, version, new BigDecimal("600.00"))).isNull();
+
+            // When another wallet's counters are loaded
+            Assertions.assertThat(limits.reserveWithdrawal(1L, walletRepository.findVersionById(1L),
+                    new BigDecimal("1.00"))).isNull();
+
+            // Then wallet 2 (and its reservation) is kept - its rows are not yet visible to a rebuild
+            Assertions.assertThat(limits.reserveWithdrawal(2L, version + 1, new BigDecimal("500.00"))).isNotNull();
+            status.setRollbackOnly();
+        });
+
+        // And is evictable once the transaction completes
+        Assertions.assertThat(limits.reserveWithdrawal(3L, walletRepository.findVersionById(3L),
+                new BigDecimal("1.00"))).isNull();
+        Assertions.assertThat(limits.size()).isEqualTo(1);
+    }
+}